@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.NodeId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computing the configuration ID from the full list of identifiers and endpoints, compared to reading
+ * the ID that a MembershipView maintains incrementally.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationIdBenchmark {
+    private static final int K = 10;
+
+    @Param({"100", "1000", "10000"})
+    public int numNodes;
+
+    private List<Endpoint> endpoints;
+    private List<NodeId> nodeIds;
+    private MembershipView view;
+
+    @Setup
+    public void setup() {
+        endpoints = new ArrayList<>(numNodes);
+        nodeIds = new ArrayList<>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            endpoints.add(Utils.hostFromParts("127.0.0.1", 1000 + i));
+            nodeIds.add(Utils.nodeIdFromUUID(UUID.randomUUID()));
+        }
+        view = new MembershipView(K, nodeIds, endpoints);
+    }
+
+    @Benchmark
+    public long fromScratch() {
+        return MembershipView.Configuration.getConfigurationId(nodeIds, endpoints);
+    }
+
+    @Benchmark
+    public long incremental() {
+        return view.getCurrentConfigurationId();
+    }
+}
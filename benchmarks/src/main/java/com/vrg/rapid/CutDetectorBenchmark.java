@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.AlertMessage;
+import com.vrg.rapid.pb.EdgeStatus;
+import com.vrg.rapid.pb.Endpoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation of the alerts raised by a mass failure of {@code numFailures} nodes, followed by
+ * link invalidation, by both cut detector implementations. Each invocation applies every alert
+ * once and then clears the detector for the next invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CutDetectorBenchmark {
+    private static final int K = 10;
+    private static final int H = 9;
+    private static final int L = 3;
+
+    @Param({"1000"})
+    public int numNodes;
+
+    @Param({"1", "10", "100"})
+    public int numFailures;
+
+    @Param({"false", "true"})
+    public boolean useDenseCutDetector;
+
+    private MembershipView view;
+    private ICutDetector cutDetector;
+    private List<AlertMessage> alerts;
+
+    @Setup
+    public void setup() {
+        view = new MembershipView(K);
+        final List<Endpoint> endpoints = new ArrayList<>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            final Endpoint node = Utils.hostFromParts("127.0.0.1", 1000 + i);
+            endpoints.add(node);
+            view.ringAdd(node, Utils.nodeIdFromUUID(UUID.randomUUID()));
+        }
+        cutDetector = useDenseCutDetector ? new DenseMultiNodeCutDetector(K, H, L, view)
+                                          : new MultiNodeCutDetector(K, H, L);
+
+        // Every observer of a failed node reports it, except for observers that failed themselves.
+        final Random random = new Random(0);
+        Collections.shuffle(endpoints, random);
+        final List<Endpoint> failedNodes = endpoints.subList(0, numFailures);
+        alerts = new ArrayList<>(numFailures * K);
+        for (final Endpoint failedNode : failedNodes) {
+            final List<Endpoint> observers = view.getObserversOf(failedNode);
+            for (int ringNumber = 0; ringNumber < K; ringNumber++) {
+                if (failedNodes.contains(observers.get(ringNumber))) {
+                    continue;
+                }
+                alerts.add(AlertMessage.newBuilder()
+                                       .setEdgeSrc(observers.get(ringNumber))
+                                       .setEdgeDst(failedNode)
+                                       .setEdgeStatus(EdgeStatus.DOWN)
+                                       .setConfigurationId(view.getCurrentConfigurationId())
+                                       .addRingNumber(ringNumber)
+                                       .build());
+            }
+        }
+        Collections.shuffle(alerts, random);
+    }
+
+    @Benchmark
+    public int aggregateMassFailure() {
+        int proposalSize = 0;
+        for (final AlertMessage alert : alerts) {
+            proposalSize += cutDetector.aggregateForProposal(alert).size();
+        }
+        proposalSize += cutDetector.invalidateFailingEdges(view).size();
+        cutDetector.clear();
+        return proposalSize;
+    }
+}
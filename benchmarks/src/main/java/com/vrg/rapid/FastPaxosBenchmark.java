@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.messaging.IBroadcaster;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.FastRoundPhase2bMessage;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vote counting in the fast round of FastPaxos. Each invocation creates a FastPaxos instance and
+ * delivers one identical vote from every member of the configuration, which decides the proposal
+ * once a fast quorum of votes has arrived. The votes use compact proposals if compact consensus
+ * messages are enabled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastPaxosBenchmark {
+    private static final long CONFIGURATION_ID = 1;
+    private static final int PROPOSAL_SIZE = 10;
+
+    @Param({"100", "1000", "10000"})
+    public int membershipSize;
+
+    @Param({"false", "true"})
+    public boolean useCompactConsensusMessages;
+
+    private final Endpoint myAddr = Utils.hostFromParts("127.0.0.1", 1000);
+    private final NoOpMessaging messaging = new NoOpMessaging();
+    private final Settings settings = new Settings();
+    private ScheduledExecutorService scheduledExecutorService;
+    private List<Endpoint> memberlist;
+    private List<RapidRequest> votes;
+
+    @Setup
+    public void setup() {
+        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        settings.setUseCompactConsensusMessages(useCompactConsensusMessages);
+        memberlist = new ArrayList<>(membershipSize);
+        for (int i = 0; i < membershipSize; i++) {
+            memberlist.add(Utils.hostFromParts("127.0.0.1", 1000 + i));
+        }
+        // Propose the removal of a few members, as after a failure
+        final List<Endpoint> proposal = memberlist.subList(membershipSize - PROPOSAL_SIZE, membershipSize);
+        final ProposalCodec proposalCodec = new ProposalCodec(memberlist, useCompactConsensusMessages);
+        votes = new ArrayList<>(membershipSize);
+        for (final Endpoint member : memberlist) {
+            final FastRoundPhase2bMessage.Builder vote = FastRoundPhase2bMessage.newBuilder()
+                                                                                .setSender(member)
+                                                                                .setConfigurationId(CONFIGURATION_ID);
+            proposalCodec.setProposal(vote, proposal);
+            votes.add(Utils.toRapidRequest(vote.build()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduledExecutorService.shutdownNow();
+    }
+
+    @Benchmark
+    public void fastRoundVotes(final Blackhole blackhole) {
+        final FastPaxos fastPaxos = new FastPaxos(myAddr, CONFIGURATION_ID, memberlist, messaging, messaging,
+                                                  scheduledExecutorService, blackhole::consume, settings);
+        for (final RapidRequest vote : votes) {
+            blackhole.consume(fastPaxos.handleMessages(vote));
+        }
+    }
+
+    /**
+     * Drops all outgoing messages, which FastPaxos only sends if it falls back to a classic round.
+     */
+    private static final class NoOpMessaging implements IMessagingClient, IBroadcaster {
+        @Override
+        public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
+            return Futures.immediateFuture(RapidResponse.getDefaultInstance());
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg) {
+            return Futures.immediateFuture(RapidResponse.getDefaultInstance());
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<ListenableFuture<RapidResponse>> broadcast(final RapidRequest rapidRequest) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void setMembership(final List<Endpoint> recipients) {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.NodeId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ring operations of a MembershipView, with both ring index implementations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembershipViewBenchmark {
+    private static final int K = 10;
+
+    @Param({"100", "1000", "10000"})
+    public int numNodes;
+
+    @Param({"false", "true"})
+    public boolean useSortedArrayRings;
+
+    private List<Endpoint> endpoints;
+    private List<NodeId> nodeIds;
+    private MembershipView view;
+    private Endpoint joiner;
+    private final Random random = new Random(0);
+
+    @Setup
+    public void setup() {
+        endpoints = new ArrayList<>(numNodes);
+        nodeIds = new ArrayList<>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            endpoints.add(Utils.hostFromParts("127.0.0.1", 1000 + i));
+            nodeIds.add(Utils.nodeIdFromUUID(UUID.randomUUID()));
+        }
+        view = new MembershipView(K, nodeIds, endpoints, () -> useSortedArrayRings);
+        joiner = Utils.hostFromParts("127.0.0.2", 1000);
+    }
+
+    @Benchmark
+    public List<Endpoint> getObserversOf() {
+        return view.getObserversOf(randomMember());
+    }
+
+    @Benchmark
+    public List<Endpoint> getSubjectsOf() {
+        return view.getSubjectsOf(randomMember());
+    }
+
+    @Benchmark
+    public List<Endpoint> getExpectedObserversOf() {
+        return view.getExpectedObserversOf(joiner);
+    }
+
+    @Benchmark
+    public boolean isHostPresent() {
+        return view.isHostPresent(randomMember());
+    }
+
+    /**
+     * Removes a member and adds it back, as a node that rejoins after a failure would. Every rejoin needs
+     * a new identifier, so the set of identifiers seen grows by one per invocation.
+     */
+    @Benchmark
+    public MembershipView ringDeleteAndAdd() {
+        final Endpoint node = randomMember();
+        view.ringDelete(node);
+        view.ringAdd(node, Utils.nodeIdFromUUID(new UUID(random.nextLong(), random.nextLong())));
+        return view;
+    }
+
+    @Benchmark
+    public MembershipView bootstrap() {
+        return new MembershipView(K, nodeIds, endpoints, () -> useSortedArrayRings);
+    }
+
+    private Endpoint randomMember() {
+        return endpoints.get(random.nextInt(numNodes));
+    }
+}
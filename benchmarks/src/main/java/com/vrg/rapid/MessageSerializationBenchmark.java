@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.vrg.rapid.pb.AlertMessage;
+import com.vrg.rapid.pb.BatchedAlertMessage;
+import com.vrg.rapid.pb.EdgeStatus;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.JoinResponse;
+import com.vrg.rapid.pb.JoinStatusCode;
+import com.vrg.rapid.pb.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protobuf encoding and decoding of the two messages whose size grows with the cluster: the JoinResponse
+ * that carries the full configuration to a joiner, and the BatchedAlertMessage that carries the alerts
+ * of a mass failure or join.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSerializationBenchmark {
+    private static final int K = 10;
+
+    @Param({"100", "1000", "10000"})
+    public int numNodes;
+
+    private JoinResponse joinResponse;
+    private byte[] joinResponseBytes;
+    private BatchedAlertMessage batchedAlertMessage;
+    private byte[] batchedAlertMessageBytes;
+
+    @Setup
+    public void setup() {
+        final Endpoint sender = Utils.hostFromParts("127.0.0.1", 1000);
+        final Metadata metadata = Metadata.newBuilder()
+                                          .putMetadata("role", ByteString.copyFromUtf8("worker"))
+                                          .build();
+        final JoinResponse.Builder joinResponseBuilder = JoinResponse.newBuilder()
+                                                                     .setSender(sender)
+                                                                     .setStatusCode(JoinStatusCode.SAFE_TO_JOIN)
+                                                                     .setConfigurationId(1);
+        final BatchedAlertMessage.Builder batchedAlertMessageBuilder = BatchedAlertMessage.newBuilder()
+                                                                                          .setSender(sender);
+        for (int i = 0; i < numNodes; i++) {
+            final Endpoint node = Utils.hostFromParts("127.0.0.1", 1000 + i);
+            joinResponseBuilder.addEndpoints(node)
+                               .addIdentifiers(Utils.nodeIdFromUUID(UUID.randomUUID()))
+                               .putClusterMetadata(node.getHostname() + ":" + node.getPort(), metadata);
+            batchedAlertMessageBuilder.addMessages(AlertMessage.newBuilder()
+                                                               .setEdgeSrc(sender)
+                                                               .setEdgeDst(node)
+                                                               .setEdgeStatus(EdgeStatus.DOWN)
+                                                               .setConfigurationId(1)
+                                                               .addRingNumber(i % K)
+                                                               .build());
+        }
+        joinResponse = joinResponseBuilder.build();
+        joinResponseBytes = joinResponse.toByteArray();
+        batchedAlertMessage = batchedAlertMessageBuilder.build();
+        batchedAlertMessageBytes = batchedAlertMessage.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeJoinResponse() {
+        return joinResponse.toByteArray();
+    }
+
+    @Benchmark
+    public JoinResponse decodeJoinResponse() throws InvalidProtocolBufferException {
+        return JoinResponse.parseFrom(joinResponseBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeBatchedAlertMessage() {
+        return batchedAlertMessage.toByteArray();
+    }
+
+    @Benchmark
+    public BatchedAlertMessage decodeBatchedAlertMessage() throws InvalidProtocolBufferException {
+        return BatchedAlertMessage.parseFrom(batchedAlertMessageBytes);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.AlertMessage;
+import com.vrg.rapid.pb.Endpoint;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Holds the alerts of the current configuration that a node piggybacks on the probes it sends and on its
+ * responses to the probes it receives.
+ *
+ * Every alert a node sends or receives is piggybacked a bounded number of times, a multiple of the logarithm
+ * of the membership size, after which it is dropped from the buffer. Alerts that have been piggybacked the
+ * fewest times go first. Alerts from other configurations are never buffered, and the buffer is emptied on
+ * every view change. Alerts that a node has already sent or received are not handed to it again when they
+ * arrive on a probe, since they are retransmitted many times over.
+ */
+final class AlertPiggyback {
+    private final int maxAlertsPerProbe;
+    private final int retransmitMultiplier;
+    // The alerts that were piggybacked i times so far are queued in transmissions.get(i)
+    @GuardedBy("this") private final List<Queue<AlertMessage>> transmissions = new ArrayList<>();
+    @GuardedBy("this") private final Set<AlertMessage> buffered = new HashSet<>();
+    @GuardedBy("this") private final Set<AlertMessage> received = new HashSet<>();
+    @GuardedBy("this") private long configurationId;
+    @GuardedBy("this") private int maxTransmissions;
+    @Nullable private volatile BiConsumer<Endpoint, List<AlertMessage>> receiver = null;
+
+    AlertPiggyback(final int maxAlertsPerProbe, final int retransmitMultiplier) {
+        this.maxAlertsPerProbe = maxAlertsPerProbe;
+        this.retransmitMultiplier = retransmitMultiplier;
+    }
+
+    /**
+     * Sets the handler for alerts piggybacked by other nodes, which is invoked with the node that sent them.
+     */
+    void setReceiver(final BiConsumer<Endpoint, List<AlertMessage>> receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Drops all buffered alerts and starts buffering the alerts of a new configuration.
+     */
+    synchronized void reset(final long configurationId, final int membershipSize) {
+        buffered.clear();
+        received.clear();
+        this.configurationId = configurationId;
+        final int log2 = 32 - Integer.numberOfLeadingZeros(Math.max(membershipSize, 1));
+        this.maxTransmissions = retransmitMultiplier * log2;
+        transmissions.clear();
+        for (int i = 0; i < maxTransmissions; i++) {
+            transmissions.add(new ArrayDeque<>());
+        }
+    }
+
+    synchronized long getConfigurationId() {
+        return configurationId;
+    }
+
+    /**
+     * Buffers an alert to be piggybacked, unless it was buffered before or belongs to another configuration. An
+     * alert that was dropped after its last transmission is not buffered again, or nodes would keep echoing it
+     * back to each other.
+     */
+    synchronized void add(final AlertMessage alert) {
+        if (alert.getConfigurationId() == configurationId && buffered.add(alert) && maxTransmissions > 0) {
+            transmissions.get(0).add(alert);
+        }
+    }
+
+    /**
+     * Picks the alerts to piggyback on a message to a node in the given configuration. Nodes in other
+     * configurations would discard them, so none are sent to them.
+     */
+    synchronized List<AlertMessage> take(final long peerConfigurationId) {
+        if (peerConfigurationId != configurationId) {
+            return Collections.emptyList();
+        }
+        final List<AlertMessage> alerts = new ArrayList<>();
+        final List<Integer> sentBefore = new ArrayList<>();
+        for (int sent = 0; sent < maxTransmissions && alerts.size() < maxAlertsPerProbe; sent++) {
+            final Queue<AlertMessage> queue = transmissions.get(sent);
+            while (!queue.isEmpty() && alerts.size() < maxAlertsPerProbe) {
+                alerts.add(queue.poll());
+                sentBefore.add(sent);
+            }
+        }
+        // Requeued only once all alerts are picked, so that no alert is picked twice for the same probe
+        for (int i = 0; i < alerts.size(); i++) {
+            final int sent = sentBefore.get(i) + 1;
+            if (sent < maxTransmissions) {
+                transmissions.get(sent).add(alerts.get(i));
+            }
+        }
+        return alerts;
+    }
+
+    /**
+     * Hands the alerts piggybacked by another node to the receiver, if they belong to the current configuration
+     * and were not seen before.
+     */
+    void receive(final Endpoint sender, final long senderConfigurationId, final List<AlertMessage> alerts) {
+        final BiConsumer<Endpoint, List<AlertMessage>> handler = receiver;
+        if (alerts.isEmpty() || handler == null) {
+            return;
+        }
+        final List<AlertMessage> unseen = filterUnseen(senderConfigurationId, alerts);
+        if (!unseen.isEmpty()) {
+            handler.accept(sender, unseen);
+        }
+    }
+
+    private synchronized List<AlertMessage> filterUnseen(final long senderConfigurationId,
+                                                         final List<AlertMessage> alerts) {
+        if (senderConfigurationId != configurationId) {
+            return Collections.emptyList();
+        }
+        final List<AlertMessage> unseen = new ArrayList<>(alerts.size());
+        for (final AlertMessage alert : alerts) {
+            if (!buffered.contains(alert) && received.add(alert)) {
+                unseen.add(alert);
+            }
+        }
+        return unseen;
+    }
+}
@@ -13,15 +13,21 @@
 
 package com.vrg.rapid;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.net.HostAndPort;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.ByteString;
+import com.vrg.rapid.messaging.IBroadcaster;
 import com.vrg.rapid.messaging.IMessagingClient;
 import com.vrg.rapid.messaging.IMessagingServer;
+import com.vrg.rapid.messaging.impl.CoalescingMessagingClient;
 import com.vrg.rapid.messaging.impl.GrpcClient;
 import com.vrg.rapid.messaging.impl.GrpcServer;
 import com.vrg.rapid.monitoring.IEdgeFailureDetectorFactory;
+import com.vrg.rapid.monitoring.impl.IndirectProbingFailureDetector;
+import com.vrg.rapid.monitoring.impl.PassiveFailureDetector;
+import com.vrg.rapid.monitoring.impl.PhiAccrualFailureDetector;
 import com.vrg.rapid.monitoring.impl.PingPongFailureDetector;
 import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.pb.JoinMessage;
@@ -97,6 +103,18 @@ public final class Cluster {
         return membershipService.getMembershipView();
     }
 
+    /**
+     * Returns the most recent snapshot of the membership. Snapshots are immutable, and reading one does not
+     * acquire any locks, which makes this suitable for polling on hot paths. Use
+     * {@link MembershipSnapshot#hasChangedSince(long)} to cheaply check whether the membership has changed.
+     *
+     * @return the current membership snapshot
+     */
+    @ExperimentalApi
+    public MembershipSnapshot getMembershipSnapshot() {
+        return membershipService.getMembershipSnapshot();
+    }
+
     /**
      * Returns the number of endpoints currently in the membership set.
      *
@@ -126,6 +144,16 @@ public final class Cluster {
         membershipService.registerSubscription(event, callback);
     }
 
+    @VisibleForTesting
+    SharedResources getSharedResources() {
+        return sharedResources;
+    }
+
+    @VisibleForTesting
+    List<Runnable> getEdgeFailureDetectors() {
+        return membershipService.getEdgeFailureDetectors();
+    }
+
     /**
      * Shutdown the RpcServer
      */
@@ -230,26 +258,27 @@ public final class Cluster {
          */
         public Cluster start() throws IOException {
             Objects.requireNonNull(listenAddress);
-            sharedResources = new SharedResources(listenAddress);
+            sharedResources = new SharedResources(listenAddress, settings);
             messagingServer = messagingServer != null
                             ? messagingServer
                             : new GrpcServer(listenAddress, sharedResources, settings.getUseInProcessTransport());
-            messagingClient = messagingClient != null
+            messagingClient = createMessagingClient(messagingClient != null
                                 ? messagingClient
-                                : new GrpcClient(listenAddress, sharedResources, settings);
+                                : new GrpcClient(listenAddress, sharedResources, settings), sharedResources);
             final NodeId currentIdentifier = Utils.nodeIdFromUUID(UUID.randomUUID());
             final MembershipView membershipView = new MembershipView(K, Collections.singletonList(currentIdentifier),
-                    Collections.singletonList(listenAddress));
-            final MultiNodeCutDetector cutDetector = new MultiNodeCutDetector(K, H, L);
+                    Collections.singletonList(listenAddress), settings);
+            final ICutDetector cutDetector = createCutDetector(membershipView);
+            final AlertPiggyback piggyback = createAlertPiggyback();
             edgeFailureDetector = edgeFailureDetector != null ? edgeFailureDetector
-                    : new PingPongFailureDetector.Factory(listenAddress, messagingClient);
+                    : createEdgeFailureDetector(messagingClient, piggyback, membershipView);
 
             final Map<Endpoint, Metadata> metadataMap = metadata.getMetadataCount() > 0
                                                     ? Collections.singletonMap(listenAddress, metadata)
                                                     : Collections.emptyMap();
             final MembershipService membershipService = new MembershipService(listenAddress,
-                    cutDetector, membershipView, sharedResources, settings,
-                                            messagingClient, edgeFailureDetector, metadataMap, subscriptions);
+                    cutDetector, membershipView, sharedResources, settings, messagingClient,
+                    createBroadcaster(membershipView), edgeFailureDetector, piggyback, metadataMap, subscriptions);
             messagingServer.setMembershipService(membershipService);
             messagingServer.start();
             return new Cluster(messagingServer, membershipService, sharedResources, listenAddress);
@@ -277,13 +306,13 @@ public final class Cluster {
          */
         Cluster join(final Endpoint seedAddress) throws IOException, InterruptedException {
             NodeId currentIdentifier = Utils.nodeIdFromUUID(UUID.randomUUID());
-            sharedResources = new SharedResources(listenAddress);
+            sharedResources = new SharedResources(listenAddress, settings);
             messagingServer = messagingServer != null
                     ? messagingServer
                     : new GrpcServer(listenAddress, sharedResources, settings.getUseInProcessTransport());
-            messagingClient = messagingClient != null
+            messagingClient = createMessagingClient(messagingClient != null
                     ? messagingClient
-                    : new GrpcClient(listenAddress, sharedResources, settings);
+                    : new GrpcClient(listenAddress, sharedResources, settings), sharedResources);
             messagingServer.start();
             for (int attempt = 0; attempt < RETRIES; attempt++) {
                 try {
@@ -429,13 +458,16 @@ public final class Cluster {
             assert !allEndpoints.isEmpty();
 
             final MembershipView membershipViewFinal =
-                    new MembershipView(K, identifiersSeen, allEndpoints);
-            final MultiNodeCutDetector cutDetector = new MultiNodeCutDetector(K, H, L);
+                    new MembershipView(K, identifiersSeen, allEndpoints, settings);
+            final ICutDetector cutDetector = createCutDetector(membershipViewFinal);
+            final AlertPiggyback piggyback = createAlertPiggyback();
             edgeFailureDetector = edgeFailureDetector != null ? edgeFailureDetector
-                                                  : new PingPongFailureDetector.Factory(listenAddress, messagingClient);
+                                                  : createEdgeFailureDetector(messagingClient, piggyback,
+                                                                              membershipViewFinal);
             final MembershipService membershipService =
                     new MembershipService(listenAddress, cutDetector, membershipViewFinal,
-                           sharedResources, settings, messagingClient, edgeFailureDetector, allMetadata, subscriptions);
+                           sharedResources, settings, messagingClient, createBroadcaster(membershipViewFinal),
+                           edgeFailureDetector, piggyback, allMetadata, subscriptions);
             messagingServer.setMembershipService(membershipService);
             if (LOG.isTraceEnabled()) {
                 LOG.trace("{} has observers {}", listenAddress,
@@ -445,6 +477,70 @@ public final class Cluster {
             }
             return new Cluster(messagingServer, membershipService, sharedResources, listenAddress);
         }
+
+        private ICutDetector createCutDetector(final MembershipView membershipView) {
+            return settings.getUseDenseCutDetector()
+                    ? new DenseMultiNodeCutDetector(K, H, L, membershipView)
+                    : new MultiNodeCutDetector(K, H, L);
+        }
+
+        private IMessagingClient createMessagingClient(final IMessagingClient client,
+                                                       final SharedResources resources) {
+            return settings.getUseMessageCoalescing()
+                    ? new CoalescingMessagingClient(client, resources.getScheduledTasksExecutor(), settings)
+                    : client;
+        }
+
+        @Nullable
+        private AlertPiggyback createAlertPiggyback() {
+            return settings.getUseProbePiggybacking()
+                    ? new AlertPiggyback(settings.getMaxPiggybackedAlertsPerProbe(),
+                                         settings.getPiggybackRetransmitMultiplier())
+                    : null;
+        }
+
+        /**
+         * Creates the default edge failure detector. If alerts are piggybacked on probes, its probes are sent
+         * through a client that does the piggybacking. The indirect probing detector takes precedence over the
+         * phi-accrual one if both are enabled. Passive failure detection is not used with the phi-accrual
+         * detector, which needs its probes to be answered at a regular rate.
+         */
+        private IEdgeFailureDetectorFactory createEdgeFailureDetector(final IMessagingClient client,
+                                                                      @Nullable final AlertPiggyback piggyback,
+                                                                      final MembershipView membershipView) {
+            final IMessagingClient probeClient = piggyback != null
+                    ? new PiggybackingMessagingClient(client, piggyback)
+                    : client;
+            if (settings.getUsePhiAccrualFailureDetector() && !settings.getUseIndirectProbingFailureDetector()) {
+                return new PhiAccrualFailureDetector.Factory(listenAddress, probeClient, settings);
+            }
+            final IEdgeFailureDetectorFactory activeDetector = settings.getUseIndirectProbingFailureDetector()
+                    ? new IndirectProbingFailureDetector.Factory(listenAddress, probeClient,
+                                                                 subject -> getObserversOf(membershipView, subject),
+                                                                 settings)
+                    : new PingPongFailureDetector.Factory(listenAddress, probeClient);
+            return settings.getUsePassiveFailureDetection()
+                    ? new PassiveFailureDetector.Factory(activeDetector, client, settings)
+                    : activeDetector;
+        }
+
+        /**
+         * The observers of a node, or none if the node has since been removed from the membership.
+         */
+        private static List<Endpoint> getObserversOf(final MembershipView membershipView, final Endpoint node) {
+            try {
+                return membershipView.getObserversOf(node);
+            } catch (final MembershipView.NodeNotInRingException e) {
+                return Collections.emptyList();
+            }
+        }
+
+        private IBroadcaster createBroadcaster(final MembershipView membershipView) {
+            return settings.getUseGossipBroadcaster()
+                    ? new GossipBroadcaster(listenAddress, messagingClient, membershipView,
+                                            settings.getGossipFanout(), settings.getGossipRedundancy())
+                    : new UnicastToAllBroadcaster(messagingClient);
+        }
     }
 
 
@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.collect.ImmutableList;
+import com.vrg.rapid.pb.AlertMessage;
+import com.vrg.rapid.pb.EdgeStatus;
+import com.vrg.rapid.pb.Endpoint;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A MultiNodeCutDetector that tracks reports in primitive arrays indexed by dense node slots.
+ *
+ * Every member of the current view is assigned a slot when the detector is created or cleared, and joiners
+ * are assigned one the first time they are reported. The reports about a subject are a K-bit mask of the
+ * rings they arrived on, so applying an alert only involves a hash table lookup and a few array updates,
+ * and does not allocate unless the alert completes a proposal.
+ */
+final class DenseMultiNodeCutDetector implements ICutDetector {
+    private static final int MAX_K = Long.SIZE;
+    private static final int INITIAL_CAPACITY = 16;
+    private final int K; // Number of observers per subject and vice versa
+    private final int H; // High watermark
+    private final int L; // Low watermark
+    private final MembershipView membershipView;
+    @GuardedBy("lock") private int proposalCount = 0;
+    @GuardedBy("lock") private int updatesInProgress = 0;
+    @GuardedBy("lock") private boolean seenLinkDownEvents = false;
+
+    // Slot assignment
+    @GuardedBy("lock") private final Map<Endpoint, Integer> slotOf = new HashMap<>();
+    @GuardedBy("lock") private Endpoint[] endpoints = new Endpoint[INITIAL_CAPACITY];
+    @GuardedBy("lock") private int numSlots = 0;
+
+    // Per-slot state
+    @GuardedBy("lock") private long[] reportMasks = new long[INITIAL_CAPACITY];    // bit k is set if reported on ring k
+    @GuardedBy("lock") private boolean[] inProposal = new boolean[INITIAL_CAPACITY];
+    @GuardedBy("lock") private int[] preProposalIndex = new int[INITIAL_CAPACITY];  // -1 if not in preProposal
+
+    // Nodes past the L and H thresholds respectively. Like in MultiNodeCutDetector, the preProposal is unordered.
+    @GuardedBy("lock") private int[] preProposal = new int[INITIAL_CAPACITY];
+    @GuardedBy("lock") private int preProposalSize = 0;
+    @GuardedBy("lock") private int[] proposal = new int[INITIAL_CAPACITY];
+    @GuardedBy("lock") private int proposalSize = 0;
+    @GuardedBy("lock") private int[] preProposalScratch = new int[INITIAL_CAPACITY];
+    private final Object lock = new Object();
+
+    DenseMultiNodeCutDetector(final int K, final int H, final int L, final MembershipView membershipView) {
+        if (H > K || L > H || K < MultiNodeCutDetector.K_MIN || L <= 0 || H <= 0) {
+            throw new IllegalArgumentException("Arguments do not satisfy K > H >= L >= 0:" +
+                                               " (K: " + K + ", H: " + H + ", L: " + L);
+        }
+        if (K > MAX_K) {
+            throw new IllegalArgumentException("K must be at most " + MAX_K + " (K: " + K + ")");
+        }
+        this.K = K;
+        this.H = H;
+        this.L = L;
+        this.membershipView = membershipView;
+        clear();
+    }
+
+    @Override
+    public int getNumProposals() {
+        synchronized (lock) {
+            return proposalCount;
+        }
+    }
+
+    /**
+     * Apply a AlertMessage against the cut detector. When an update moves a host
+     * past the H threshold of reports, and no other host has between H and L reports, the
+     * method returns a view change proposal.
+     *
+     * @param msg A AlertMessage to apply against the filter
+     * @return a list of endpoints about which a view change has been recorded. Empty list if there is no proposal.
+     */
+    @Override
+    public List<Endpoint> aggregateForProposal(final AlertMessage msg) {
+        Objects.requireNonNull(msg);
+        synchronized (lock) {
+            final int slot = getOrAssignSlot(msg.getEdgeDst());
+            List<Endpoint> proposals = Collections.emptyList();
+            for (int i = 0; i < msg.getRingNumberCount(); i++) {
+                final List<Endpoint> ret = aggregateForProposal(slot, msg.getEdgeStatus(), msg.getRingNumber(i));
+                if (!ret.isEmpty()) {
+                    proposals = proposals.isEmpty() ? ret : ImmutableList.<Endpoint>builder()
+                                                                         .addAll(proposals)
+                                                                         .addAll(ret)
+                                                                         .build();
+                }
+            }
+            return proposals;
+        }
+    }
+
+    @GuardedBy("lock")
+    private List<Endpoint> aggregateForProposal(final int slot, final EdgeStatus edgeStatus, final int ringNumber) {
+        assert ringNumber < K;
+        if (edgeStatus == EdgeStatus.DOWN) {
+            seenLinkDownEvents = true;
+        }
+
+        final long ringBit = 1L << ringNumber;
+        if ((reportMasks[slot] & ringBit) != 0) {
+            return Collections.emptyList();  // duplicate announcement, ignore.
+        }
+        reportMasks[slot] |= ringBit;
+        final int numReportsForHost = Long.bitCount(reportMasks[slot]);
+
+        if (numReportsForHost == L) {
+            updatesInProgress++;
+            addToPreProposal(slot);
+        }
+
+        if (numReportsForHost == H) {
+            // Enough reports about this slot have been received that it is safe to act upon,
+            // provided there are no other nodes with L < #reports < H.
+            removeFromPreProposal(slot);
+            inProposal[slot] = true;
+            proposal[proposalSize++] = slot;
+            updatesInProgress--;
+
+            if (updatesInProgress == 0) {
+                // No outstanding updates, so all nodes that have crossed the H threshold of reports are
+                // now part of a single proposal.
+                proposalCount++;
+                final ImmutableList.Builder<Endpoint> ret = ImmutableList.builder();
+                for (int i = 0; i < proposalSize; i++) {
+                    ret.add(endpoints[proposal[i]]);
+                    inProposal[proposal[i]] = false;
+                }
+                proposalSize = 0;
+                return ret.build();
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    /**
+     * Invalidates edges between nodes that are failing or have failed. This step may be skipped safely
+     * when there are no failing nodes.
+     *
+     * @param view MembershipView object required to find observer-subject relationships between failing nodes.
+     * @return A list of endpoints representing a view change proposal.
+     */
+    @Override
+    public List<Endpoint> invalidateFailingEdges(final MembershipView view) {
+        synchronized (lock) {
+            // Link invalidation is only required when we have failing nodes
+            if (!seenLinkDownEvents) {
+                return Collections.emptyList();
+            }
+
+            final ImmutableList.Builder<Endpoint> proposalsToReturn = ImmutableList.builder();
+            final int numNodesInFlux = preProposalSize;
+            System.arraycopy(preProposal, 0, preProposalScratch, 0, numNodesInFlux);
+            for (int i = 0; i < numNodesInFlux; i++) {
+                final int nodeInFlux = preProposalScratch[i];
+                final boolean isPresent = view.isHostPresent(endpoints[nodeInFlux]);
+                final List<Endpoint> observers = isPresent
+                                                    ? view.getObserversOf(endpoints[nodeInFlux])          // Failing
+                                                    : view.getExpectedObserversOf(endpoints[nodeInFlux]); // Joining
+                // Account for all edges between nodes that are past the L threshold
+                final EdgeStatus edgeStatus = isPresent ? EdgeStatus.DOWN : EdgeStatus.UP;
+                int ringNumber = 0;
+                for (final Endpoint observer : observers) {
+                    final Integer observerSlot = slotOf.get(observer);
+                    if (observerSlot != null
+                            && (inProposal[observerSlot] || preProposalIndex[observerSlot] >= 0)) {
+                        // Implicit detection of edges between observer and nodeInFlux
+                        proposalsToReturn.addAll(aggregateForProposal(nodeInFlux, edgeStatus, ringNumber));
+                    }
+                    ringNumber++;
+                }
+            }
+
+            return proposalsToReturn.build();
+        }
+    }
+
+    /**
+     * Clears all view change reports being tracked, and reassigns slots to the members of the current view.
+     * To be used right after a view change.
+     */
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            final List<Endpoint> members = membershipView.getRing(0);
+            slotOf.clear();
+            numSlots = 0;
+            ensureCapacity(members.size());
+            Arrays.fill(endpoints, null);
+            Arrays.fill(reportMasks, 0);
+            Arrays.fill(inProposal, false);
+            Arrays.fill(preProposalIndex, -1);
+            for (final Endpoint member : members) {
+                assignSlot(member);
+            }
+            proposalSize = 0;
+            preProposalSize = 0;
+            updatesInProgress = 0;
+            proposalCount = 0;
+            seenLinkDownEvents = false;
+        }
+    }
+
+    @GuardedBy("lock")
+    private int getOrAssignSlot(final Endpoint node) {
+        final Integer slot = slotOf.get(node);
+        return slot != null ? slot : assignSlot(node);
+    }
+
+    @GuardedBy("lock")
+    private int assignSlot(final Endpoint node) {
+        ensureCapacity(numSlots + 1);
+        final int slot = numSlots++;
+        endpoints[slot] = node;
+        slotOf.put(node, slot);
+        return slot;
+    }
+
+    @GuardedBy("lock")
+    private void addToPreProposal(final int slot) {
+        preProposalIndex[slot] = preProposalSize;
+        preProposal[preProposalSize++] = slot;
+    }
+
+    @GuardedBy("lock")
+    private void removeFromPreProposal(final int slot) {
+        final int index = preProposalIndex[slot];
+        if (index < 0) {
+            return;
+        }
+        // Move the last entry into the vacated position, since the preProposal is unordered
+        final int last = preProposal[--preProposalSize];
+        preProposal[index] = last;
+        preProposalIndex[last] = index;
+        preProposalIndex[slot] = -1;
+    }
+
+    @GuardedBy("lock")
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= endpoints.length) {
+            return;
+        }
+        final int oldCapacity = endpoints.length;
+        final int newCapacity = Math.max(capacity, oldCapacity * 2);
+        endpoints = Arrays.copyOf(endpoints, newCapacity);
+        reportMasks = Arrays.copyOf(reportMasks, newCapacity);
+        inProposal = Arrays.copyOf(inProposal, newCapacity);
+        preProposalIndex = Arrays.copyOf(preProposalIndex, newCapacity);
+        Arrays.fill(preProposalIndex, oldCapacity, newCapacity, -1);
+        preProposal = Arrays.copyOf(preProposal, newCapacity);
+        proposal = Arrays.copyOf(proposal, newCapacity);
+        preProposalScratch = new int[newCapacity];
+    }
+}
@@ -12,17 +12,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
@@ -31,27 +28,43 @@ import java.util.function.Consumer;
 class FastPaxos {
     private static final Logger LOG = LoggerFactory.getLogger(FastPaxos.class);
     private static final long BASE_DELAY = 1000;
+    private static final int INITIAL_PROPOSALS_CAPACITY = 4;
+    static final boolean DEFAULT_USE_COMPACT_CONSENSUS_MESSAGES = false;
     private final double jitterRate;
     private final Endpoint myAddr;
     private final long configurationId;
     private final long membershipSize;
     private final Consumer<List<Endpoint>> onDecidedWrapped;
     private final IBroadcaster broadcaster;
-    private final Map<List<Endpoint>, AtomicInteger> votesPerProposal = new HashMap<>();
-    private final Set<Endpoint> votesReceived = new HashSet<>(); // Should be a bitset
+    private final ProposalCodec proposalCodec;
+
+    // Voters are tracked by their index in the memberlist, and proposals by the digest that senders include
+    // in their votes. There are very few distinct proposals in a round, so their vote counts are kept in a
+    // small list that is searched by digest. Each entry keeps the first vote for its proposal, which later
+    // votes with the same digest are compared against so that a digest collision cannot merge two proposals.
+    private final BitSet votesReceived;
+    private int numVotesReceived = 0;
+    private final List<ProposalVotes> proposalVotes = new ArrayList<>(INITIAL_PROPOSALS_CAPACITY);
     private final Paxos paxos;
     private final ScheduledExecutorService scheduledExecutorService;
     private final Object paxosLock = new Object();
     private final AtomicBoolean decided = new AtomicBoolean(false);
     @Nullable private ScheduledFuture<?> scheduledClassicRoundTask = null;
 
-    FastPaxos(final Endpoint myAddr, final long configurationId, final int membershipSize,
+    /**
+     * @param memberlist the members of the configuration, whose positions in the list identify voters.
+     */
+    FastPaxos(final Endpoint myAddr, final long configurationId, final List<Endpoint> memberlist,
               final IMessagingClient client, final IBroadcaster broadcaster,
-              final ScheduledExecutorService scheduledExecutorService, final Consumer<List<Endpoint>> onDecide) {
+              final ScheduledExecutorService scheduledExecutorService, final Consumer<List<Endpoint>> onDecide,
+              final ISettings settings) {
+        final int membershipSize = memberlist.size();
         this.myAddr = myAddr;
         this.configurationId = configurationId;
         this.membershipSize = membershipSize;
         this.broadcaster = broadcaster;
+        this.proposalCodec = new ProposalCodec(memberlist, settings.getUseCompactConsensusMessages());
+        this.votesReceived = new BitSet(membershipSize);
 
         // The rate of a random expovariate variable, used to determine a jitter over a base delay to start classic
         // rounds. This determines how many classic rounds we want to start per second on average. Does not
@@ -67,7 +80,8 @@ class FastPaxos {
             }
             onDecide.accept(hosts);
         };
-        this.paxos = new Paxos(myAddr, configurationId, membershipSize, client, broadcaster, onDecidedWrapped);
+        this.paxos = new Paxos(myAddr, configurationId, membershipSize, client, broadcaster, proposalCodec,
+                               onDecidedWrapped);
     }
 
     /**
@@ -79,12 +93,11 @@ class FastPaxos {
         synchronized (paxosLock) {
             paxos.registerFastRoundVote(proposal);
         }
-        final FastRoundPhase2bMessage consensusMessage = FastRoundPhase2bMessage.newBuilder()
+        final FastRoundPhase2bMessage.Builder consensusMessage = FastRoundPhase2bMessage.newBuilder()
                 .setConfigurationId(configurationId)
-                .addAllEndpoints(proposal)
-                .setSender(myAddr)
-                .build();
-        final RapidRequest proposalMessage = Utils.toRapidRequest(consensusMessage);
+                .setSender(myAddr);
+        proposalCodec.setProposal(consensusMessage, proposal);
+        final RapidRequest proposalMessage = Utils.toRapidRequest(consensusMessage.build());
         broadcaster.broadcast(proposalMessage);
         LOG.trace("Scheduling classic round with delay: {}", recoveryDelayInMs);
         scheduledClassicRoundTask = scheduledExecutorService.schedule(this::startClassicPaxosRound, recoveryDelayInMs,
@@ -115,54 +128,95 @@ class FastPaxos {
             return;
         }
 
-        if (votesReceived.contains(proposalMessage.getSender())) {
+        final int voter = proposalCodec.indexOf(proposalMessage.getSender());
+        if (voter < 0) {
+            LOG.trace("Ignoring fast round vote from non-member: {}", proposalMessage.getSender());
+            return;
+        }
+
+        if (votesReceived.get(voter)) {
             return;
         }
 
         if (decided.get()) {
             return;
         }
-        votesReceived.add(proposalMessage.getSender());
-        final AtomicInteger proposalsReceived = votesPerProposal.computeIfAbsent(proposalMessage.getEndpointsList(),
-                k -> new AtomicInteger(0));
-        final int count = proposalsReceived.incrementAndGet();
+        final ProposalVotes votes = getProposalVotes(proposalMessage);
+        votesReceived.set(voter);
+        numVotesReceived++;
+        votes.count++;
         final int F = (int) Math.floor((membershipSize - 1) / 4.0); // Fast Paxos resiliency.
-        if (votesReceived.size() >= membershipSize - F) {
-            if (count >= membershipSize - F) {
-                LOG.trace("Decided on a view change: {}", proposalMessage.getEndpointsList());
+        if (numVotesReceived >= membershipSize - F) {
+            if (votes.count >= membershipSize - F) {
+                LOG.trace("Decided on a view change: {}", votes.proposal);
                 // We have a successful proposal. Consume it.
-                onDecidedWrapped.accept(proposalMessage.getEndpointsList());
+                onDecidedWrapped.accept(votes.proposal);
             } else {
                 // fallback protocol here
-                LOG.trace("Fast round may not succeed for proposal: {}", proposalMessage.getEndpointsList());
+                LOG.trace("Fast round may not succeed for proposal: {}", votes.proposal);
             }
         }
     }
 
+    /**
+     * Finds the entry that counts votes for the proposal in {@code proposalMessage}, adding one if this is the
+     * first vote for it. Only the first vote for a proposal is read in full.
+     */
+    private ProposalVotes getProposalVotes(final FastRoundPhase2bMessage proposalMessage) {
+        final long digest = proposalCodec.getProposalDigest(proposalMessage);
+        for (final ProposalVotes votes : proposalVotes) {
+            if (votes.digest == digest && proposalCodec.hasSameProposal(votes.firstVote, proposalMessage)) {
+                return votes;
+            }
+        }
+        final ProposalVotes votes = new ProposalVotes(digest, proposalMessage,
+                                                      proposalCodec.getProposal(proposalMessage));
+        proposalVotes.add(votes);
+        return votes;
+    }
+
+    /**
+     * A 64-bit digest of a proposal. Unlike the configuration ID, it depends on the order of the endpoints,
+     * just like the List equality that identified proposals before.
+     */
+    static long getProposalDigest(final List<Endpoint> proposal) {
+        long digest = 1;
+        for (final Endpoint endpoint : proposal) {
+            digest = digest * 37 + MembershipView.Configuration.hashEndpoint(endpoint);
+        }
+        return digest;
+    }
+
     /**
      * Invoked by the membership service when it receives a consensus proposal.
      *
      * @param request the membership change proposal towards a configuration change.
      */
     RapidResponse handleMessages(final RapidRequest request) {
-        switch (request.getContentCase()) {
-            case FASTROUNDPHASE2BMESSAGE:
-                handleFastRoundProposal(request.getFastRoundPhase2BMessage());
-                break;
-            case PHASE1AMESSAGE:
-                paxos.handlePhase1aMessage(request.getPhase1AMessage());
-                break;
-            case PHASE1BMESSAGE:
-                paxos.handlePhase1bMessage(request.getPhase1BMessage());
-                break;
-            case PHASE2AMESSAGE:
-                paxos.handlePhase2aMessage(request.getPhase2AMessage());
-                break;
-            case PHASE2BMESSAGE:
-                paxos.handlePhase2bMessage(request.getPhase2BMessage());
-                break;
-            default:
-                throw new IllegalArgumentException("Unexpected message case: " + request.getContentCase());
+        try {
+            switch (request.getContentCase()) {
+                case FASTROUNDPHASE2BMESSAGE:
+                    handleFastRoundProposal(request.getFastRoundPhase2BMessage());
+                    break;
+                case PHASE1AMESSAGE:
+                    paxos.handlePhase1aMessage(request.getPhase1AMessage());
+                    break;
+                case PHASE1BMESSAGE:
+                    paxos.handlePhase1bMessage(request.getPhase1BMessage());
+                    break;
+                case PHASE2AMESSAGE:
+                    paxos.handlePhase2aMessage(request.getPhase2AMessage());
+                    break;
+                case PHASE2BMESSAGE:
+                    paxos.handlePhase2bMessage(request.getPhase2BMessage());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected message case: " + request.getContentCase());
+            }
+        } catch (final ProposalCodec.InvalidProposalException e) {
+            // A proposal that cannot be read is dropped like a message from another configuration. The handlers
+            // read proposals before they change any state, so the message has had no effect.
+            LOG.warn("Dropping {} with an invalid proposal: {}", request.getContentCase(), e.getMessage());
         }
         return Utils.toRapidResponse(ConsensusResponse.getDefaultInstance());
     }
@@ -185,4 +239,25 @@ class FastPaxos {
         final long jitter = (long) (-1000 * Math.log(1 - ThreadLocalRandom.current().nextDouble()) / jitterRate);
         return jitter + BASE_DELAY;
     }
+
+    /**
+     * The votes received for one proposal in the fast round.
+     */
+    private static final class ProposalVotes {
+        private final long digest;
+        private final FastRoundPhase2bMessage firstVote;
+        private final List<Endpoint> proposal;
+        private int count = 0;
+
+        private ProposalVotes(final long digest, final FastRoundPhase2bMessage firstVote,
+                              final List<Endpoint> proposal) {
+            this.digest = digest;
+            this.firstVote = firstVote;
+            this.proposal = proposal;
+        }
+    }
+
+    interface ISettings {
+        boolean getUseCompactConsensusMessages();
+    }
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.vrg.rapid.messaging.IBroadcaster;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.GossipMessage;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A best-effort broadcaster that disseminates messages over trees derived from the K rings, instead of sending
+ * every message to every member directly.
+ *
+ * A broadcast by a node (the origin) travels down one tree per ring, for {@code redundancy} of the rings. On
+ * ring r, the tree is a {@code fanout}-ary tree rooted at the origin over the positions of the ring, counted
+ * from the origin: the node at distance p from the origin relays the message to the nodes at distances
+ * p * fanout + 1 to p * fanout + fanout. Every member can compute the trees from its view of the rings, so the
+ * only state in a message is the origin, the ring and the configuration it was sent in. Each node sends
+ * {@code fanout} messages per tree, and a message reaches every member within log_fanout(N) hops.
+ *
+ * Every hop is acknowledged. If a child fails to respond, or responds that it did not relay the message
+ * because its configuration differs from that of the origin, the parent sends the message to the child's
+ * children itself, and so on down the tree. A failed relay therefore only costs the message to itself, and
+ * not to its subtree. Recipients relay a message once per tree, and deliver it once.
+ */
+final class GossipBroadcaster implements IBroadcaster {
+    static final boolean DEFAULT_USE_GOSSIP_BROADCASTER = false;
+    static final int DEFAULT_GOSSIP_FANOUT = 4;
+    static final int DEFAULT_GOSSIP_REDUNDANCY = 2;
+    private static final Logger LOG = LoggerFactory.getLogger(GossipBroadcaster.class);
+    private static final int MAX_RECENT_MESSAGES = 10000;
+    private final Endpoint myAddr;
+    private final IMessagingClient messagingClient;
+    private final MembershipView membershipView;
+    private final int fanout;
+    private final int redundancy;
+    @GuardedBy("this") private long configurationId;
+    @GuardedBy("this") private List<List<Endpoint>> rings = Collections.emptyList();
+    @GuardedBy("this") private List<Map<Endpoint, Integer>> positions = Collections.emptyList();
+    @GuardedBy("this") private final Set<Long> deliveredMessages = newRecentMessagesSet();
+    @GuardedBy("this") private final List<Set<Long>> relayedMessages;
+
+    /**
+     * @param redundancy the number of rings to broadcast over, which must be at most K.
+     */
+    GossipBroadcaster(final Endpoint myAddr, final IMessagingClient messagingClient,
+                      final MembershipView membershipView, final int fanout, final int redundancy) {
+        if (fanout < 1 || redundancy < 1 || redundancy > membershipView.getNumberOfRings()) {
+            throw new IllegalArgumentException("Fanout must be positive and redundancy must be between 1 and K" +
+                                               " (fanout: " + fanout + ", redundancy: " + redundancy +
+                                               ", K: " + membershipView.getNumberOfRings() + ")");
+        }
+        this.myAddr = myAddr;
+        this.messagingClient = messagingClient;
+        this.membershipView = membershipView;
+        this.fanout = fanout;
+        this.redundancy = redundancy;
+        this.relayedMessages = new ArrayList<>(redundancy);
+        for (int i = 0; i < redundancy; i++) {
+            relayedMessages.add(newRecentMessagesSet());
+        }
+    }
+
+    /**
+     * Delivers {@code msg} to this node, and sends it down the trees rooted at this node.
+     */
+    @Override
+    @CanIgnoreReturnValue
+    public synchronized List<ListenableFuture<RapidResponse>> broadcast(final RapidRequest msg) {
+        final List<ListenableFuture<RapidResponse>> futures = new ArrayList<>(rings.size() * fanout + 1);
+        futures.add(messagingClient.sendMessageBestEffort(myAddr, msg));
+        final long messageId = ThreadLocalRandom.current().nextLong();
+        deliveredMessages.add(messageId);
+        for (int ringNumber = 0; ringNumber < rings.size(); ringNumber++) {
+            relayedMessages.get(ringNumber).add(messageId);
+            final GossipMessage gossipMessage = GossipMessage.newBuilder()
+                                                             .setOrigin(myAddr)
+                                                             .setConfigurationId(configurationId)
+                                                             .setRingNumber(ringNumber)
+                                                             .setMessageId(messageId)
+                                                             .setPayload(msg)
+                                                             .build();
+            sendToChildren(gossipMessage, 0, futures);
+        }
+        return futures;
+    }
+
+    /**
+     * Relays a message received from a parent in one of the trees to this node's children, unless it has
+     * already done so for that tree.
+     *
+     * @return true if the message was relayed, false if this node cannot place itself in the tree because
+     *         its configuration differs from that of the origin.
+     */
+    @Override
+    public synchronized boolean relay(final GossipMessage gossipMessage) {
+        final Integer distance = getDistanceFromOrigin(gossipMessage, myAddr);
+        if (distance == null) {
+            LOG.trace("Not relaying message from {} sent in configuration {}", gossipMessage.getOrigin(),
+                      gossipMessage.getConfigurationId());
+            return false;
+        }
+        if (relayedMessages.get(gossipMessage.getRingNumber()).add(gossipMessage.getMessageId())) {
+            sendToChildren(gossipMessage, distance, new ArrayList<>(fanout));
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the message has not been delivered before and should be delivered, false otherwise.
+     */
+    @Override
+    public synchronized boolean deliver(final GossipMessage gossipMessage) {
+        return deliveredMessages.add(gossipMessage.getMessageId());
+    }
+
+    /**
+     * Reads the rings of the current configuration from the membership view. The recipients are the members
+     * of that configuration.
+     */
+    @Override
+    public synchronized void setMembership(final List<Endpoint> recipients) {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("setMembership {}", Utils.loggable(recipients));
+        }
+        final int numRings = redundancy;
+        final List<List<Endpoint>> newRings = new ArrayList<>(numRings);
+        final List<Map<Endpoint, Integer>> newPositions = new ArrayList<>(numRings);
+        for (int k = 0; k < numRings; k++) {
+            final List<Endpoint> ring = membershipView.getRing(k);
+            final Map<Endpoint, Integer> positionsOnRing = new HashMap<>(ring.size() * 2);
+            for (int i = 0; i < ring.size(); i++) {
+                positionsOnRing.put(ring.get(i), i);
+            }
+            newRings.add(ring);
+            newPositions.add(positionsOnRing);
+        }
+        this.configurationId = membershipView.getCurrentConfigurationId();
+        this.rings = newRings;
+        this.positions = newPositions;
+    }
+
+    /**
+     * Returns the distance of {@code node} from the origin of a message on the message's ring, or null if the
+     * message was not sent in the current configuration or either node is not on the ring.
+     */
+    @GuardedBy("this")
+    @Nullable
+    private Integer getDistanceFromOrigin(final GossipMessage gossipMessage, final Endpoint node) {
+        final int ringNumber = gossipMessage.getRingNumber();
+        if (gossipMessage.getConfigurationId() != configurationId || ringNumber < 0 || ringNumber >= rings.size()) {
+            return null;
+        }
+        final Integer originPosition = positions.get(ringNumber).get(gossipMessage.getOrigin());
+        final Integer position = positions.get(ringNumber).get(node);
+        if (originPosition == null || position == null) {
+            return null;
+        }
+        return Math.floorMod(position - originPosition, rings.get(ringNumber).size());
+    }
+
+    /**
+     * Sends a message to the children of the node at {@code distance} from the origin. A child that does not
+     * relay the message has its own children sent to in turn.
+     */
+    @GuardedBy("this")
+    private void sendToChildren(final GossipMessage gossipMessage, final int distance,
+                                final List<ListenableFuture<RapidResponse>> futures) {
+        final int ringNumber = gossipMessage.getRingNumber();
+        final List<Endpoint> ring = rings.get(ringNumber);
+        final Integer originPosition = positions.get(ringNumber).get(gossipMessage.getOrigin());
+        if (originPosition == null) {
+            return;
+        }
+        final int size = ring.size();
+        final RapidRequest request = Utils.toRapidRequest(gossipMessage);
+        for (long child = (long) distance * fanout + 1; child <= (long) distance * fanout + fanout && child < size;
+             child++) {
+            final int childDistance = (int) child;
+            final Endpoint recipient = ring.get((originPosition + childDistance) % size);
+            final ListenableFuture<RapidResponse> future = messagingClient.sendMessageBestEffort(recipient, request);
+            Futures.addCallback(future, new FutureCallback<RapidResponse>() {
+                @Override
+                public void onSuccess(@Nullable final RapidResponse response) {
+                    if (response == null || !response.getGossipResponse().getRelayed()) {
+                        LOG.trace("{} did not relay message from {}", recipient, gossipMessage.getOrigin());
+                        sendInPlaceOf(gossipMessage, childDistance);
+                    }
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    LOG.trace("Relaying message from {} through {} failed", gossipMessage.getOrigin(), recipient);
+                    sendInPlaceOf(gossipMessage, childDistance);
+                }
+            }, MoreExecutors.directExecutor());
+            futures.add(future);
+        }
+    }
+
+    /**
+     * Sends a message to the children of a child that did not relay it, as long as the configuration that the
+     * message was sent in is still the current one.
+     */
+    private synchronized void sendInPlaceOf(final GossipMessage gossipMessage, final int childDistance) {
+        if (gossipMessage.getConfigurationId() == configurationId) {
+            sendToChildren(gossipMessage, childDistance, new ArrayList<>(fanout));
+        }
+    }
+
+    private static Set<Long> newRecentMessagesSet() {
+        return Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Boolean> eldest) {
+                return size() > MAX_RECENT_MESSAGES;
+            }
+        });
+    }
+
+    interface ISettings {
+        boolean getUseGossipBroadcaster();
+
+        int getGossipFanout();
+
+        int getGossipRedundancy();
+    }
+}
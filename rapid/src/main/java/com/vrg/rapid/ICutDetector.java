@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.AlertMessage;
+import com.vrg.rapid.pb.Endpoint;
+
+import java.util.List;
+
+/**
+ * A filter that aggregates AlertMessages into view change proposals. See MultiNodeCutDetector for the
+ * conditions under which a proposal is output.
+ */
+interface ICutDetector {
+    /**
+     * Returns the number of proposals output since the last call to clear().
+     */
+    int getNumProposals();
+
+    /**
+     * Apply a AlertMessage against the cut detector.
+     *
+     * @param msg A AlertMessage to apply against the filter
+     * @return a list of endpoints about which a view change has been recorded. Empty list if there is no proposal.
+     */
+    List<Endpoint> aggregateForProposal(AlertMessage msg);
+
+    /**
+     * Invalidates edges between nodes that are failing or have failed.
+     *
+     * @param view MembershipView object required to find observer-subject relationships between failing nodes.
+     * @return A list of endpoints representing a view change proposal.
+     */
+    List<Endpoint> invalidateFailingEdges(MembershipView view);
+
+    /**
+     * Clears all view change reports being tracked. To be used right after a view change.
+     */
+    void clear();
+
+    interface ISettings {
+        boolean getUseDenseCutDetector();
+    }
+}
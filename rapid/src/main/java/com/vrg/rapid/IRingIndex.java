@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.Endpoint;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores the K rings of a MembershipView. Every ring orders the same set of endpoints by a different
+ * seeded hash (see Utils.AddressComparator), so that all implementations agree on the ring order.
+ *
+ * Implementations are not thread-safe. MembershipView guards all accesses with its read-write lock.
+ */
+@NotThreadSafe
+interface IRingIndex {
+    /**
+     * Number of endpoints in each ring.
+     */
+    int size();
+
+    /**
+     * Query if {@code node} is present in the rings.
+     */
+    boolean contains(Endpoint node);
+
+    /**
+     * Add {@code node}, which must not already be present, to all K rings.
+     */
+    void add(Endpoint node);
+
+    /**
+     * Add a batch of nodes to all K rings. Nodes that are already present are ignored.
+     */
+    void addAll(Collection<Endpoint> nodes);
+
+    /**
+     * Remove {@code node}, which must be present, from all K rings.
+     */
+    void remove(Endpoint node);
+
+    /**
+     * Returns the successor of {@code node} on each of the K rings. {@code node} must be present.
+     */
+    List<Endpoint> getSuccessorsOf(Endpoint node);
+
+    /**
+     * Returns the predecessor of {@code node} on each of the K rings. {@code node} need not be present,
+     * in which case this returns the nodes that would precede it if it were added. The rings must not be empty.
+     */
+    List<Endpoint> getPredecessorsOf(Endpoint node);
+
+    /**
+     * Returns the endpoints of the k'th ring in ring order.
+     */
+    List<Endpoint> getRing(int k);
+}
@@ -13,18 +13,24 @@
 
 package com.vrg.rapid;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.vrg.rapid.messaging.IBroadcaster;
 import com.vrg.rapid.messaging.IMessagingClient;
 import com.vrg.rapid.monitoring.IEdgeFailureDetectorFactory;
 import com.vrg.rapid.pb.BatchedAlertMessage;
+import com.vrg.rapid.pb.BatchedRequest;
+import com.vrg.rapid.pb.BatchedResponse;
 import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.pb.JoinMessage;
 import com.vrg.rapid.pb.JoinResponse;
 import com.vrg.rapid.pb.JoinStatusCode;
 import com.vrg.rapid.pb.EdgeStatus;
+import com.vrg.rapid.pb.GossipMessage;
+import com.vrg.rapid.pb.GossipResponse;
 import com.vrg.rapid.pb.AlertMessage;
 import com.vrg.rapid.pb.Metadata;
 import com.vrg.rapid.pb.NodeId;
@@ -36,6 +42,7 @@ import com.vrg.rapid.pb.RapidResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.util.ArrayList;
@@ -48,8 +55,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -69,11 +79,15 @@ import java.util.stream.Collectors;
 @NotThreadSafe
 public final class MembershipService {
     private static final Logger LOG = LoggerFactory.getLogger(MembershipService.class);
-    private static final int BATCHING_WINDOW_IN_MS = 100;
-    private static final int DEFAULT_FAILURE_DETECTOR_INITIAL_DELAY_IN_MS = 0;
     static final int DEFAULT_FAILURE_DETECTOR_INTERVAL_IN_MS = 1000;
+    static final int DEFAULT_ALERT_BATCHING_WINDOW_IN_MS = 100;
+    static final int DEFAULT_ALERT_BATCHING_MAX_DELAY_IN_MS = 500;
+    static final int DEFAULT_ALERT_BATCHING_MAX_SIZE = 256;
+    static final boolean DEFAULT_USE_PROBE_PIGGYBACKING = false;
+    static final int DEFAULT_MAX_PIGGYBACKED_ALERTS_PER_PROBE = 32;
+    static final int DEFAULT_PIGGYBACK_RETRANSMIT_MULTIPLIER = 3;
     private final MembershipView membershipView;
-    private final MultiNodeCutDetector cutDetection;
+    private final ICutDetector cutDetection;
     private final Endpoint myAddr;
     private final IBroadcaster broadcaster;
     private final Map<Endpoint, LinkedBlockingDeque<SettableFuture<RapidResponse>>> joinersToRespondTo =
@@ -93,34 +107,41 @@ public final class MembershipService {
     @GuardedBy("batchSchedulerLock")
     private long lastEnqueueTimestamp = -1;    // Timestamp
     @GuardedBy("batchSchedulerLock")
+    private long firstEnqueueTimestamp = -1;   // Timestamp of the oldest message in sendQueue
+    @GuardedBy("batchSchedulerLock")
     private final LinkedBlockingQueue<AlertMessage> sendQueue = new LinkedBlockingQueue<>();
+    @GuardedBy("batchSchedulerLock")
+    @Nullable private ScheduledFuture<?> alertBatcherJob = null;
+    @GuardedBy("batchSchedulerLock")
+    private boolean isShutdown = false;
     private final Lock batchSchedulerLock = new ReentrantLock();
     private final ScheduledExecutorService backgroundTasksExecutor;
-    private final ScheduledFuture<?> alertBatcherJob;
-    private final List<ScheduledFuture<?>> failureDetectorJobs;
+    private final ProbeScheduler probeScheduler;
+    @Nullable private final AlertPiggyback piggyback;
     private final SharedResources sharedResources;
 
     // Failure detector
-    private final IEdgeFailureDetectorFactory fdFactory;
 
     // Fields used by consensus protocol
     private boolean announcedProposal = false;
-    private final Object membershipUpdateLock = new Object();
     private final ISettings settings;
 
 
-    MembershipService(final Endpoint myAddr, final MultiNodeCutDetector cutDetection,
+    MembershipService(final Endpoint myAddr, final ICutDetector cutDetection,
                       final MembershipView membershipView, final SharedResources sharedResources,
                       final ISettings settings, final IMessagingClient messagingClient,
                       final IEdgeFailureDetectorFactory edgeFailureDetector) {
         this(myAddr, cutDetection, membershipView, sharedResources, settings, messagingClient,
-             edgeFailureDetector, Collections.emptyMap(), new EnumMap<>(ClusterEvents.class));
+             new UnicastToAllBroadcaster(messagingClient), edgeFailureDetector, null, Collections.emptyMap(),
+             new EnumMap<>(ClusterEvents.class));
     }
 
-    MembershipService(final Endpoint myAddr, final MultiNodeCutDetector cutDetection,
+    MembershipService(final Endpoint myAddr, final ICutDetector cutDetection,
                       final MembershipView membershipView, final SharedResources sharedResources,
                       final ISettings settings, final IMessagingClient messagingClient,
-                      final IEdgeFailureDetectorFactory edgeFailureDetector, final Map<Endpoint, Metadata> metadataMap,
+                      final IBroadcaster broadcaster,
+                      final IEdgeFailureDetectorFactory edgeFailureDetector,
+                      @Nullable final AlertPiggyback piggyback, final Map<Endpoint, Metadata> metadataMap,
                       final Map<ClusterEvents, List<BiConsumer<Long, List<NodeStatusChange>>>> subscriptions) {
         this.myAddr = myAddr;
         this.settings = settings;
@@ -130,9 +151,9 @@ public final class MembershipService {
         this.metadataManager = new MetadataManager();
         this.metadataManager.addMetadata(metadataMap);
         this.messagingClient = messagingClient;
-        this.broadcaster = new UnicastToAllBroadcaster(messagingClient);
+        this.broadcaster = broadcaster;
+        this.piggyback = piggyback;
         this.subscriptions = subscriptions;
-        this.fdFactory = edgeFailureDetector;
 
         // Make sure there is an empty list for every enum type
         Arrays.stream(ClusterEvents.values()).forEach(event ->
@@ -140,19 +161,26 @@ public final class MembershipService {
 
         // Schedule background jobs
         this.backgroundTasksExecutor = sharedResources.getScheduledTasksExecutor();
-        alertBatcherJob = this.backgroundTasksExecutor.scheduleAtFixedRate(new AlertBatcher(),
-                0, BATCHING_WINDOW_IN_MS, TimeUnit.MILLISECONDS);
 
         this.broadcaster.setMembership(membershipView.getRing(0));
         // this::edgeFailureNotification is invoked by the failure detector whenever an edge
         // to an observer is marked faulty.
-        this.failureDetectorJobs = new ArrayList<>();
+        this.probeScheduler = new ProbeScheduler(sharedResources.getFailureDetectorExecutor(),
+                                                 settings.getFailureDetectorIntervalInMs(), edgeFailureDetector,
+                                                 this::createNotifierForSubject);
 
         // Prepare consensus instance
         this.fastPaxosInstance = new FastPaxos(myAddr, membershipView.getCurrentConfigurationId(),
-                                               membershipView.getMembershipSize(), this.messagingClient,
-                                               this.broadcaster, this.backgroundTasksExecutor, this::decideViewChange);
-        createFailureDetectorsForCurrentConfiguration();
+                                               membershipView.getRing(0), this.messagingClient,
+                                               this.broadcaster, this.backgroundTasksExecutor, this::decideViewChange,
+                                               settings);
+        if (piggyback != null) {
+            piggyback.reset(membershipView.getCurrentConfigurationId(), membershipView.getMembershipSize());
+            piggyback.setReceiver(this::handlePiggybackedAlerts);
+        }
+        probeScheduler.setSubjects(membershipView.getSubjectsOf(myAddr));
+        probeScheduler.start();
+        membershipView.publishSnapshot(metadataManager.getAllMetadata());
 
         // Execute all VIEW_CHANGE callbacks. This informs applications that a start/join has successfully completed.
         final long configurationId = membershipView.getCurrentConfigurationId();
@@ -173,6 +201,10 @@ public final class MembershipService {
                 return handleMessage(msg.getBatchedAlertMessage());
             case PROBEMESSAGE:
                 return handleMessage(msg.getProbeMessage());
+            case GOSSIPMESSAGE:
+                return handleMessage(msg.getGossipMessage());
+            case BATCHEDREQUEST:
+                return handleMessage(msg.getBatchedRequest());
             case FASTROUNDPHASE2BMESSAGE:
             case PHASE1AMESSAGE:
             case PHASE1BMESSAGE:
@@ -193,7 +225,7 @@ public final class MembershipService {
     private ListenableFuture<RapidResponse> handleMessage(final PreJoinMessage msg) {
         final SettableFuture<RapidResponse> future = SettableFuture.create();
 
-        sharedResources.getProtocolExecutor().execute(() -> {
+        executeRequest(RapidRequest.ContentCase.PREJOINMESSAGE, future, () -> {
             final Endpoint joiningEndpoint = msg.getSender();
             final JoinStatusCode statusCode = membershipView.isSafeToJoin(joiningEndpoint, msg.getNodeId());
             final JoinResponse.Builder builder = JoinResponse.newBuilder()
@@ -222,7 +254,7 @@ public final class MembershipService {
     private ListenableFuture<RapidResponse> handleMessage(final JoinMessage joinMessage) {
         final SettableFuture<RapidResponse> future = SettableFuture.create();
 
-        sharedResources.getProtocolExecutor().execute(() -> {
+        executeRequest(RapidRequest.ContentCase.JOINMESSAGE, future, () -> {
             final long currentConfiguration = membershipView.getCurrentConfigurationId();
             if (currentConfiguration == joinMessage.getConfigurationId()) {
                 LOG.trace("Enqueuing SAFE_TO_JOIN for {sender:{}, config:{}, size:{}}",
@@ -285,21 +317,25 @@ public final class MembershipService {
      * Edge update messages that do not affect an ongoing proposal
      * needs to be dropped.
      */
+    @CanIgnoreReturnValue
     private ListenableFuture<RapidResponse> handleMessage(final BatchedAlertMessage messageBatch) {
         Objects.requireNonNull(messageBatch);
         final SettableFuture<RapidResponse> future = SettableFuture.create();
 
-        sharedResources.getProtocolExecutor().execute(() -> {
+        executeRequest(RapidRequest.ContentCase.BATCHEDALERTMESSAGE, future, () -> {
             // We already have a proposal for this round
             // => we have initiated consensus and cannot go back on our proposal.
             if (announcedProposal) {
                 future.set(null);
+                return;
             }
             final long currentConfigurationId = membershipView.getCurrentConfigurationId();
             final int membershipSize = membershipView.getMembershipSize();
             final Set<Endpoint> proposal = messageBatch.getMessagesList().stream()
                     // First, we filter out invalid messages that violate membership invariants.
                     .filter(msg -> filterAlertMessages(messageBatch, msg, membershipSize, currentConfigurationId))
+                    // Valid messages are passed on to the nodes we exchange probes with
+                    .peek(this::piggybackAlert)
                     // We then apply all the valid messages into our condition detector to obtain a view change proposal
                     .map(cutDetection::aggregateForProposal)
                     .flatMap(List::stream)
@@ -337,10 +373,23 @@ public final class MembershipService {
      */
     private ListenableFuture<RapidResponse> handleConsensusMessages(final RapidRequest request) {
         final SettableFuture<RapidResponse> future = SettableFuture.create();
-        sharedResources.getProtocolExecutor().execute(() -> future.set(fastPaxosInstance.handleMessages(request)));
+        executeRequest(request.getContentCase(), future, () -> future.set(fastPaxosInstance.handleMessages(request)));
         return future;
     }
 
+    /**
+     * Runs the handler of a request on the protocol executor, or fails the request if it is shed.
+     */
+    private void executeRequest(final RapidRequest.ContentCase contentCase,
+                                final SettableFuture<RapidResponse> future, final Runnable handler) {
+        try {
+            sharedResources.executeRequest(contentCase, handler);
+        } catch (final RejectedExecutionException e) {
+            LOG.debug("Shedding {} request", contentCase);
+            future.setException(e);
+        }
+    }
+
 
     /**
      * This is invoked by FastPaxos modules when they arrive at a decision.
@@ -349,33 +398,29 @@ public final class MembershipService {
      * and any node that is currently in the membership list will be removed from it.
      */
     private void decideViewChange(final List<Endpoint> proposal) {
-        // The first step is to disable our failure detectors in anticipation of new ones to be created.
-        cancelFailureDetectorJobs();
-
         final List<NodeStatusChange> statusChanges = new ArrayList<>(proposal.size());
-        synchronized (membershipUpdateLock) {
-            for (final Endpoint node : proposal) {
-                final boolean isPresent = membershipView.isHostPresent(node);
-                // If the node is already in the ring, remove it. Else, add it.
-                // XXX: Maybe there's a cleaner way to do this in the future because
-                // this ties us to just two states a node can be in.
-                if (isPresent) {
-                    membershipView.ringDelete(node);
-                    statusChanges.add(new NodeStatusChange(node, EdgeStatus.DOWN, metadataManager.get(node)));
-                    metadataManager.removeNode(node);
-                }
-                else {
-                    assert joinerUuid.containsKey(node);
-                    final NodeId nodeId = joinerUuid.remove(node);
-                    membershipView.ringAdd(node, nodeId);
-                    final Metadata metadata = joinerMetadata.remove(node);
-                    if (metadata.getMetadataCount() > 0) {
-                        metadataManager.addMetadata(Collections.singletonMap(node, metadata));
-                    }
-                    statusChanges.add(new NodeStatusChange(node, EdgeStatus.UP, metadata));
+        for (final Endpoint node : proposal) {
+            final boolean isPresent = membershipView.isHostPresent(node);
+            // If the node is already in the ring, remove it. Else, add it.
+            // XXX: Maybe there's a cleaner way to do this in the future because
+            // this ties us to just two states a node can be in.
+            if (isPresent) {
+                membershipView.ringDelete(node);
+                statusChanges.add(new NodeStatusChange(node, EdgeStatus.DOWN, metadataManager.get(node)));
+                metadataManager.removeNode(node);
+            }
+            else {
+                assert joinerUuid.containsKey(node);
+                final NodeId nodeId = joinerUuid.remove(node);
+                membershipView.ringAdd(node, nodeId);
+                final Metadata metadata = joinerMetadata.remove(node);
+                if (metadata.getMetadataCount() > 0) {
+                    metadataManager.addMetadata(Collections.singletonMap(node, metadata));
                 }
+                statusChanges.add(new NodeStatusChange(node, EdgeStatus.UP, metadata));
             }
         }
+        membershipView.publishSnapshot(metadataManager.getAllMetadata());
 
         final long currentConfigurationId = membershipView.getCurrentConfigurationId();
         // Publish an event to the listeners.
@@ -384,16 +429,21 @@ public final class MembershipService {
         // Clear data structures for the next round.
         cutDetection.clear();
         announcedProposal = false;
-        fastPaxosInstance = new FastPaxos(myAddr, currentConfigurationId, membershipView.getMembershipSize(),
+        final List<Endpoint> memberlist = membershipView.getRing(0);
+        fastPaxosInstance = new FastPaxos(myAddr, currentConfigurationId, memberlist,
                                           messagingClient, broadcaster, backgroundTasksExecutor,
-                                          this::decideViewChange);
-        broadcaster.setMembership(membershipView.getRing(0));
+                                          this::decideViewChange, settings);
+        broadcaster.setMembership(memberlist);
+        if (piggyback != null) {
+            piggyback.reset(currentConfigurationId, membershipView.getMembershipSize());
+        }
 
         // Inform EdgeFailureDetector about membership change
         if (membershipView.isHostPresent(myAddr)) {
-            createFailureDetectorsForCurrentConfiguration();
+            probeScheduler.setSubjects(membershipView.getSubjectsOf(myAddr));
         }
         else {
+            probeScheduler.clear();
             // We need to gracefully exit by calling a user handler and invalidating
             // the current session.
             LOG.trace("Got kicked out and is shutting down.");
@@ -405,11 +455,128 @@ public final class MembershipService {
     }
 
     /**
-     * Invoked by observers of a node for failure detection.
+     * Invoked by observers of a node for failure detection. If alerts are piggybacked on probes, the alerts
+     * on the probe are handled, and alerts are piggybacked on the response in turn. A probe with a target is
+     * relayed to the target, and answered with the response of the target marked as relayed, but only if the
+     * sender observes the target in the current configuration. Any other probe is answered directly, so that the
+     * sender of a probe that was not relayed cannot mistake the answer for one from the target.
      */
     private ListenableFuture<RapidResponse> handleMessage(final ProbeMessage probeMessage) {
         LOG.trace("handleProbeMessage from {}", Utils.loggable(probeMessage.getSender()));
-        return Futures.immediateFuture(Utils.toRapidResponse(ProbeResponse.getDefaultInstance()));
+        if (piggyback != null) {
+            final long configurationId = piggyback.getConfigurationId();
+            if (probeMessage.getConfigurationId() != configurationId) {
+                LOG.debug("Probe from {} in configuration {} received during configuration {}",
+                        Utils.loggable(probeMessage.getSender()), probeMessage.getConfigurationId(), configurationId);
+            }
+            piggyback.receive(probeMessage.getSender(), probeMessage.getConfigurationId(),
+                              probeMessage.getAlertsList());
+        }
+        if (probeMessage.hasTarget() && isObserverOf(probeMessage.getSender(), probeMessage.getTarget())) {
+            LOG.trace("Relaying probe from {} to {}", Utils.loggable(probeMessage.getSender()),
+                    Utils.loggable(probeMessage.getTarget()));
+            final ProbeMessage relayedProbe = ProbeMessage.newBuilder().setSender(myAddr).build();
+            return Futures.transform(messagingClient.sendMessageBestEffort(probeMessage.getTarget(),
+                                                                           Utils.toRapidRequest(relayedProbe)),
+                    (final RapidResponse response) -> {
+                        final ProbeResponse targetResponse = Objects.requireNonNull(response).getProbeResponse();
+                        return Utils.toRapidResponse(targetResponse.toBuilder().setRelayed(true).build());
+                    });
+        }
+        if (piggyback == null) {
+            return Futures.immediateFuture(Utils.toRapidResponse(ProbeResponse.getDefaultInstance()));
+        }
+        final ProbeResponse response = ProbeResponse.newBuilder()
+                .setConfigurationId(piggyback.getConfigurationId())
+                .addAllAlerts(piggyback.take(probeMessage.getConfigurationId()))
+                .build();
+        return Futures.immediateFuture(Utils.toRapidResponse(response));
+    }
+
+    /**
+     * Handles alerts piggybacked on probes or probe responses as if they were broadcast by the sender. Alerts
+     * that were already received through a broadcast are ignored by the cut detector.
+     */
+    private void handlePiggybackedAlerts(final Endpoint sender, final List<AlertMessage> alerts) {
+        LOG.trace("Received {} piggybacked alerts from {}", alerts.size(), Utils.loggable(sender));
+        handleMessage(BatchedAlertMessage.newBuilder().setSender(sender).addAllMessages(alerts).build());
+    }
+
+    /**
+     * Whether {@code observer} observes {@code subject}, which is never the case if the subject has since been
+     * removed from the membership.
+     */
+    private boolean isObserverOf(final Endpoint observer, final Endpoint subject) {
+        try {
+            return membershipView.getObserversOf(subject).contains(observer);
+        } catch (final MembershipView.NodeNotInRingException e) {
+            return false;
+        }
+    }
+
+    private void piggybackAlert(final AlertMessage msg) {
+        if (piggyback != null) {
+            piggyback.add(msg);
+        }
+    }
+
+    /**
+     * Invoked when several requests are coalesced into one by the sender. Each request is handled on its own,
+     * and the responses are returned in the order of the requests. A request that fails is answered with an
+     * empty response, so that it does not fail the rest of the batch. A request that was shed fails the whole
+     * batch instead, so that the sender sees the overload and backs off rather than taking an empty response
+     * for a success.
+     */
+    private ListenableFuture<RapidResponse> handleMessage(final BatchedRequest batchedRequest) {
+        final List<ListenableFuture<RapidResponse>> responses = new ArrayList<>(batchedRequest.getRequestsCount());
+        for (final RapidRequest request : batchedRequest.getRequestsList()) {
+            responses.add(handleMessage(request));
+        }
+        return Futures.transform(Futures.successfulAsList(responses), (final List<RapidResponse> results) -> {
+            final BatchedResponse.Builder builder = BatchedResponse.newBuilder();
+            final List<RapidResponse> resultList = Objects.requireNonNull(results);
+            for (int i = 0; i < resultList.size(); i++) {
+                final RapidResponse result = resultList.get(i);
+                if (result == null) {
+                    throwIfShed(responses.get(i));
+                }
+                builder.addResponses(result != null ? result : RapidResponse.getDefaultInstance());
+            }
+            return RapidResponse.newBuilder().setBatchedResponse(builder).build();
+        });
+    }
+
+    /**
+     * @throws RejectedExecutionException if the completed response failed because its request was shed
+     */
+    private static void throwIfShed(final ListenableFuture<RapidResponse> response) {
+        try {
+            Futures.getDone(response);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RejectedExecutionException) {
+                throw (RejectedExecutionException) cause;
+            }
+        } catch (final CancellationException ignored) {
+            // Answered with an empty response like any other failure
+        }
+    }
+
+    /**
+     * Invoked when a message is received through a broadcaster that relays messages between members. The
+     * broadcaster forwards the message, and the payload is handled like any other message unless it has
+     * already been received. The response tells the sender whether the message was forwarded.
+     */
+    private ListenableFuture<RapidResponse> handleMessage(final GossipMessage gossipMessage) {
+        final boolean relayed = broadcaster.relay(gossipMessage);
+        final RapidResponse response = Utils.toRapidResponse(GossipResponse.newBuilder()
+                                                                           .setRelayed(relayed)
+                                                                           .build());
+        if (!broadcaster.deliver(gossipMessage)) {
+            return Futures.immediateFuture(response);
+        }
+        return Futures.transform(handleMessage(gossipMessage.getPayload()),
+                                 (final RapidResponse payloadResponse) -> response);
     }
 
 
@@ -456,15 +623,22 @@ public final class MembershipService {
     }
 
 
+    /**
+     * Gets the most recently published snapshot of the membership view. Does not acquire any locks.
+     *
+     * @return the current membership snapshot
+     */
+    MembershipSnapshot getMembershipSnapshot() {
+        return membershipView.getSnapshot();
+    }
+
     /**
      * Gets the list of endpoints currently in the membership view.
      *
      * @return list of endpoints in the membership view
      */
     List<Endpoint> getMembershipView() {
-        synchronized (membershipUpdateLock) {
-            return membershipView.getRing(0);
-        }
+        return membershipView.getSnapshot().getMemberlist();
     }
 
     /**
@@ -473,9 +647,12 @@ public final class MembershipService {
      * @return list of endpoints in the membership view
      */
     int getMembershipSize() {
-        synchronized (membershipUpdateLock) {
-            return membershipView.getMembershipSize();
-        }
+        return membershipView.getSnapshot().getMembershipSize();
+    }
+
+    @VisibleForTesting
+    List<Runnable> getEdgeFailureDetectors() {
+        return probeScheduler.getDetectors();
     }
 
 
@@ -485,36 +662,87 @@ public final class MembershipService {
      * @return list of endpoints in the membership view
      */
     Map<String, Metadata> getMetadata() {
-        synchronized (membershipUpdateLock) {
-            return metadataManager.getAllMetadata();
-        }
+        return membershipView.getSnapshot().getMetadata();
     }
 
     /**
      * Shuts down all the executors.
      */
     void shutdown() {
-        alertBatcherJob.cancel(true);
-        failureDetectorJobs.forEach(k -> k.cancel(true));
+        batchSchedulerLock.lock();
+        try {
+            isShutdown = true;
+            if (alertBatcherJob != null) {
+                alertBatcherJob.cancel(true);
+                alertBatcherJob = null;
+            }
+        }
+        finally {
+            batchSchedulerLock.unlock();
+        }
+        probeScheduler.shutdown();
         messagingClient.shutdown();
     }
 
     /**
-     * Queues a AlertMessage to be broadcasted after potentially being batched.
+     * Queues a AlertMessage to be broadcasted after potentially being batched. The queue is flushed right away
+     * once it holds as many messages as the maximum batch size, and otherwise by the AlertBatcher.
      *
      * @param msg the AlertMessage to be broadcasted
      */
     private void enqueueAlertMessage(final AlertMessage msg) {
         batchSchedulerLock.lock();
         try {
-            lastEnqueueTimestamp = System.currentTimeMillis();
+            final long now = System.currentTimeMillis();
+            if (sendQueue.isEmpty()) {
+                firstEnqueueTimestamp = now;
+            }
+            lastEnqueueTimestamp = now;
             sendQueue.add(msg);
+            if (sendQueue.size() >= settings.getAlertBatchingMaxSize()) {
+                flushAlertMessages();
+            }
+            else if (alertBatcherJob == null) {
+                scheduleAlertBatcher(settings.getAlertBatchingWindowInMs());
+            }
         }
         finally {
             batchSchedulerLock.unlock();
         }
     }
 
+    /**
+     * Broadcasts all queued AlertMessages as a single BatchedAlertMessage.
+     */
+    @GuardedBy("batchSchedulerLock")
+    private void flushAlertMessages() {
+        LOG.trace("Scheduler is sending out {} messages", sendQueue.size());
+        final ArrayList<AlertMessage> messages = new ArrayList<>(sendQueue.size());
+        final int numDrained = sendQueue.drainTo(messages);
+        assert numDrained > 0;
+        final BatchedAlertMessage batched = BatchedAlertMessage.newBuilder()
+                .setSender(myAddr)
+                .addAllMessages(messages)
+                .build();
+        broadcaster.broadcast(Utils.toRapidRequest(batched));
+        // Piggybacking the alerts before the batch goes out would hand them to other nodes one by one
+        messages.forEach(this::piggybackAlert);
+        firstEnqueueTimestamp = -1;
+        lastEnqueueTimestamp = -1;
+        if (alertBatcherJob != null) {
+            alertBatcherJob.cancel(false);
+            alertBatcherJob = null;
+        }
+    }
+
+    @GuardedBy("batchSchedulerLock")
+    private void scheduleAlertBatcher(final long delayInMs) {
+        if (isShutdown) {
+            return;
+        }
+        alertBatcherJob = backgroundTasksExecutor.schedule(new AlertBatcher(), delayInMs, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Formats a proposal or a view change for application subscriptions.
      */
@@ -544,26 +772,28 @@ public final class MembershipService {
 
     /**
      * Batches outgoing AlertMessages into a single BatchAlertMessage.
+     *
+     * The batcher is scheduled when the first message is queued. It sends out the queue once no message has been
+     * queued for one batching window, or once the oldest message has waited for the maximum batching delay,
+     * whichever comes first, so that a steady stream of alerts cannot postpone dissemination indefinitely.
      */
     private class AlertBatcher implements Runnable {
-        private static final int BATCH_WINDOW_IN_MS = 100;
-
         @Override
         public void run() {
             batchSchedulerLock.lock();
             try {
-                // Wait one BATCH_WINDOW_IN_MS since last add before sending out
-                if (!sendQueue.isEmpty() && lastEnqueueTimestamp > 0
-                        && (System.currentTimeMillis() - lastEnqueueTimestamp) > BATCH_WINDOW_IN_MS) {
-                    LOG.trace("Scheduler is sending out {} messages", sendQueue.size());
-                    final ArrayList<AlertMessage> messages = new ArrayList<>(sendQueue.size());
-                    final int numDrained = sendQueue.drainTo(messages);
-                    assert numDrained > 0;
-                    final BatchedAlertMessage batched = BatchedAlertMessage.newBuilder()
-                            .setSender(myAddr)
-                            .addAllMessages(messages)
-                            .build();
-                    broadcaster.broadcast(Utils.toRapidRequest(batched));
+                alertBatcherJob = null;
+                if (sendQueue.isEmpty()) {
+                    return;
+                }
+                final long flushTimestamp = Math.min(lastEnqueueTimestamp + settings.getAlertBatchingWindowInMs(),
+                                                     firstEnqueueTimestamp + settings.getAlertBatchingMaxDelayInMs());
+                final long now = System.currentTimeMillis();
+                if (now >= flushTimestamp) {
+                    flushAlertMessages();
+                }
+                else {
+                    scheduleAlertBatcher(flushTimestamp - now);
                 }
             }
             finally {
@@ -622,28 +852,6 @@ public final class MembershipService {
         return () -> edgeFailureNotification(subject, membershipView.getCurrentConfigurationId());
     }
 
-    /**
-     * Creates and schedules failure detector instances based on the fdFactory instance.
-     */
-    private void createFailureDetectorsForCurrentConfiguration() {
-        final List<ScheduledFuture<?>> jobs = membershipView.getSubjectsOf(myAddr)
-                .stream().map(subject -> backgroundTasksExecutor
-                         .scheduleAtFixedRate(fdFactory.createInstance(subject,
-                                createNotifierForSubject(subject)), // Runnable
-                                DEFAULT_FAILURE_DETECTOR_INITIAL_DELAY_IN_MS,
-                                settings.getFailureDetectorIntervalInMs(),
-                                TimeUnit.MILLISECONDS))
-                .collect(Collectors.toList());
-        failureDetectorJobs.addAll(jobs);
-    }
-
-    /**
-     * Cancel all running failure detector tasks
-     */
-    private void cancelFailureDetectorJobs() {
-        failureDetectorJobs.forEach(future -> future.cancel(true));
-    }
-
     /**
      * Respond with the current configuration to all nodes that attempted to join through this node.
      */
@@ -673,7 +881,19 @@ public final class MembershipService {
         }
     }
 
-    interface ISettings {
+    interface ISettings extends FastPaxos.ISettings {
         int getFailureDetectorIntervalInMs();
+
+        int getAlertBatchingWindowInMs();
+
+        int getAlertBatchingMaxDelayInMs();
+
+        int getAlertBatchingMaxSize();
+
+        boolean getUseProbePiggybacking();
+
+        int getMaxPiggybackedAlertsPerProbe();
+
+        int getPiggybackRetransmitMultiplier();
     }
 }
\ No newline at end of file
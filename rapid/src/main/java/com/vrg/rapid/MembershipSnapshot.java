@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.Metadata;
+import io.grpc.ExperimentalApi;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable view of the membership at a node, published after every view change. Reading a snapshot
+ * does not take any locks or copy any lists, so applications may poll it as often as they like.
+ *
+ * The version is local to a node and increases every time the node publishes a new snapshot, which it
+ * does after applying a view change.
+ */
+@ExperimentalApi
+@Immutable
+public final class MembershipSnapshot {
+    private final long version;
+    private final long configurationId;
+    private final List<List<Endpoint>> rings;
+    private final Map<String, Metadata> metadata;
+
+    MembershipSnapshot(final long version, final long configurationId, final List<List<Endpoint>> rings,
+                       final Map<String, Metadata> metadata) {
+        assert !rings.isEmpty();
+        this.version = version;
+        this.configurationId = configurationId;
+        this.rings = rings;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Returns the version of this snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Query if the membership has changed since the snapshot with version {@code version} was published.
+     */
+    public boolean hasChangedSince(final long version) {
+        return this.version != version;
+    }
+
+    /**
+     * Returns the configuration ID of the membership.
+     */
+    public long getConfigurationId() {
+        return configurationId;
+    }
+
+    /**
+     * Returns the list of endpoints in the membership.
+     */
+    public List<Endpoint> getMemberlist() {
+        return rings.get(0);
+    }
+
+    /**
+     * Returns the number of endpoints in the membership.
+     */
+    public int getMembershipSize() {
+        return rings.get(0).size();
+    }
+
+    /**
+     * Returns the endpoints of the k'th ring in ring order.
+     */
+    public List<Endpoint> getRing(final int k) {
+        return rings.get(k);
+    }
+
+    /**
+     * Returns the metadata of all nodes in the membership.
+     */
+    public Map<String, Metadata> getMetadata() {
+        return metadata;
+    }
+}
@@ -14,11 +14,14 @@
 package com.vrg.rapid;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.pb.JoinStatusCode;
+import com.vrg.rapid.pb.Metadata;
 import com.vrg.rapid.pb.NodeId;
 import net.openhft.hashing.LongHashFunction;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.Serializable;
@@ -27,7 +30,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.NavigableSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
@@ -40,27 +43,23 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  */
 @ThreadSafe
 final class MembershipView {
+    static final boolean DEFAULT_USE_SORTED_ARRAY_RINGS = false;
     private final int K;
     private static final LongHashFunction HASH_FUNCTION = LongHashFunction.xx(0);
     private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
-    @GuardedBy("rwLock") private final ArrayList<Utils.AddressComparator> addressComparators;
-    @GuardedBy("rwLock") private final ArrayList<NavigableSet<Endpoint>> rings;
+    @GuardedBy("rwLock") private final IRingIndex rings;
     @GuardedBy("rwLock") private final Set<NodeId> identifiersSeen = new TreeSet<>(NodeIdComparator.INSTANCE);
-    @GuardedBy("rwLock") private long currentConfigurationId = -1;
-    @GuardedBy("rwLock") private Configuration currentConfiguration;
-    @GuardedBy("rwLock") private boolean shouldUpdateConfigurationId = true;
+    @GuardedBy("rwLock") private long identifiersDigest = 0;
+    @GuardedBy("rwLock") private long endpointsDigest = 0;
+    @GuardedBy("rwLock") @Nullable private Configuration currentConfiguration = null;
+    private volatile MembershipSnapshot snapshot;
 
     MembershipView(final int K) {
-        assert K > 0;
-        this.K = K;
-        this.rings = new ArrayList<>(K);
-        this.addressComparators = new ArrayList<>(K);
-        for (int k = 0; k < K; k++) {
-            final Utils.AddressComparator comparatorWithSeed = Utils.AddressComparator.getComparatorWithSeed(k);
-            this.addressComparators.add(comparatorWithSeed);
-            this.rings.add(new TreeSet<>(comparatorWithSeed));
-        }
-        this.currentConfiguration = new Configuration(identifiersSeen, rings.get(0));
+        this(K, Collections.emptyList(), Collections.emptyList());
+    }
+
+    MembershipView(final int K, final ISettings settings) {
+        this(K, Collections.emptyList(), Collections.emptyList(), settings);
     }
 
     /**
@@ -68,19 +67,29 @@ final class MembershipView {
      */
     MembershipView(final int K, final Collection<NodeId> nodeIds,
                    final Collection<Endpoint> endpoints) {
+        this(K, nodeIds, endpoints, new TreeSetRingIndex(K));
+    }
+
+    /**
+     * Used to bootstrap a membership view from the fields of a MembershipView.Settings object, using the
+     * ring index selected by {@code settings}.
+     */
+    MembershipView(final int K, final Collection<NodeId> nodeIds,
+                   final Collection<Endpoint> endpoints, final ISettings settings) {
+        this(K, nodeIds, endpoints, settings.getUseSortedArrayRings() ? new SortedArrayRingIndex(K)
+                                                                      : new TreeSetRingIndex(K));
+    }
+
+    private MembershipView(final int K, final Collection<NodeId> nodeIds,
+                           final Collection<Endpoint> endpoints, final IRingIndex rings) {
         assert K > 0;
         this.K = K;
-        this.rings = new ArrayList<>(K);
-        this.addressComparators = new ArrayList<>(K);
-        for (int k = 0; k < K; k++) {
-            final Utils.AddressComparator comparatorWithSeed = Utils.AddressComparator.getComparatorWithSeed(k);
-            this.addressComparators.add(comparatorWithSeed);
-            final TreeSet<Endpoint> set = new TreeSet<>(comparatorWithSeed);
-            set.addAll(endpoints);
-            this.rings.add(set);
-        }
+        this.rings = rings;
+        this.rings.addAll(endpoints);
         this.identifiersSeen.addAll(nodeIds);
-        this.currentConfiguration = new Configuration(identifiersSeen, rings.get(0));
+        this.identifiersDigest = Configuration.getIdentifiersDigest(identifiersSeen);
+        this.endpointsDigest = Configuration.getEndpointsDigest(rings.getRing(0));
+        this.snapshot = createSnapshot(0, ImmutableMap.of());
     }
 
     /**
@@ -95,7 +104,7 @@ final class MembershipView {
     JoinStatusCode isSafeToJoin(final Endpoint node, final NodeId uuid) {
         rwLock.readLock().lock();
         try {
-            if (rings.get(0).contains(node)) {
+            if (rings.contains(node)) {
                 return JoinStatusCode.HOSTNAME_ALREADY_IN_RING;
             }
 
@@ -125,16 +134,15 @@ final class MembershipView {
 
         rwLock.writeLock().lock();
         try {
-            if (rings.get(0).contains(node)) {
+            if (rings.contains(node)) {
                 throw new NodeAlreadyInRingException(node);
             }
 
-            for (int k = 0; k < K; k++) {
-                rings.get(k).add(node);
-            }
-
+            rings.add(node);
             identifiersSeen.add(nodeId);
-            shouldUpdateConfigurationId = true;
+            identifiersDigest += Configuration.hashNodeId(nodeId);
+            endpointsDigest += Configuration.hashEndpoint(node);
+            currentConfiguration = null;
         } finally {
             rwLock.writeLock().unlock();
         }
@@ -150,16 +158,13 @@ final class MembershipView {
         rwLock.writeLock().lock();
         try {
 
-            if (!rings.get(0).contains(node)) {
+            if (!rings.contains(node)) {
                 throw new NodeNotInRingException(node);
             }
 
-            for (int k = 0; k < K; k++) {
-                rings.get(k).remove(node);
-                addressComparators.get(k).removeEndpoint(node);
-            }
-
-            shouldUpdateConfigurationId = true;
+            rings.remove(node);
+            endpointsDigest -= Configuration.hashEndpoint(node);
+            currentConfiguration = null;
         } finally {
             rwLock.writeLock().unlock();
         }
@@ -176,27 +181,15 @@ final class MembershipView {
         Objects.requireNonNull(node);
         rwLock.readLock().lock();
         try {
-            if (!rings.get(0).contains(node)) {
+            if (!rings.contains(node)) {
                 throw new NodeNotInRingException(node);
             }
 
-            if (rings.get(0).size() <= 1) {
+            if (rings.size() <= 1) {
                 return Collections.emptyList();
             }
 
-            final List<Endpoint> observers = new ArrayList<>();
-
-            for (int k = 0; k < K; k++) {
-                final NavigableSet<Endpoint> list = rings.get(k);
-                final Endpoint successor = list.higher(node);
-                if (successor == null) {
-                    observers.add(list.first());
-                }
-                else {
-                    observers.add(successor);
-                }
-            }
-            return observers;
+            return rings.getSuccessorsOf(node);
         } finally {
             rwLock.readLock().unlock();
         }
@@ -213,14 +206,14 @@ final class MembershipView {
         Objects.requireNonNull(node);
         rwLock.readLock().lock();
         try {
-            if (!rings.get(0).contains(node)) {
+            if (!rings.contains(node)) {
                 throw new NodeNotInRingException(node);
             }
 
-            if (rings.get(0).size() <= 1) {
+            if (rings.size() <= 1) {
                 return Collections.emptyList();
             }
-            return getPredecessorsOf(node);
+            return rings.getPredecessorsOf(node);
         } finally {
             rwLock.readLock().unlock();
         }
@@ -238,34 +231,15 @@ final class MembershipView {
         Objects.requireNonNull(node);
         rwLock.readLock().lock();
         try {
-            if (rings.get(0).isEmpty()) {
+            if (rings.size() == 0) {
                 return Collections.emptyList();
             }
-            return getPredecessorsOf(node);
+            return rings.getPredecessorsOf(node);
         } finally {
             rwLock.readLock().unlock();
         }
     }
 
-    /**
-     * Used by getExpectedObserversOf() and getObserversOf().
-     */
-    private List<Endpoint> getPredecessorsOf(final Endpoint node) {
-        final List<Endpoint> subjects = new ArrayList<>();
-
-        for (int k = 0; k < K; k++) {
-            final NavigableSet<Endpoint> list = rings.get(k);
-            final Endpoint predecessor = list.lower(node);
-            if (predecessor == null) {
-                subjects.add(list.last());
-            }
-            else {
-                subjects.add(predecessor);
-            }
-        }
-        return subjects;
-    }
-
     /**
      * Query if a host is part of the current membership set.
      *
@@ -275,7 +249,7 @@ final class MembershipView {
     boolean isHostPresent(final Endpoint address) {
         rwLock.readLock().lock();
         try {
-            return rings.get(0).contains(address);
+            return rings.contains(address);
         } finally {
             rwLock.readLock().unlock();
         }
@@ -305,17 +279,22 @@ final class MembershipView {
     long getCurrentConfigurationId() {
         rwLock.readLock().lock();
         try {
-            if (shouldUpdateConfigurationId) {
-                updateCurrentConfigurationId();
-                shouldUpdateConfigurationId = false;
-            }
-            return currentConfigurationId;
+            return Configuration.getConfigurationId(identifiersDigest, endpointsDigest);
         }
         finally {
             rwLock.readLock().unlock();
         }
     }
 
+    /**
+     * Get the number of rings, K.
+     *
+     * @return the number of rings in the membership view.
+     */
+    int getNumberOfRings() {
+        return K;
+    }
+
     /**
      * Get the list of endpoints in the k'th ring.
      *
@@ -325,8 +304,8 @@ final class MembershipView {
     List<Endpoint> getRing(final int k) {
         rwLock.readLock().lock();
         try {
-            assert k >= 0;
-            return ImmutableList.copyOf(rings.get(k));
+            assert k >= 0 && k < K;
+            return rings.getRing(k);
         } finally {
             rwLock.readLock().unlock();
         }
@@ -370,40 +349,80 @@ final class MembershipView {
     int getMembershipSize() {
         rwLock.readLock().lock();
         try {
-            return rings.get(0).size();
+            return rings.size();
         } finally {
             rwLock.readLock().unlock();
         }
     }
 
-    /**
-     * XXX: May not be stable across processes. Verify.
-     */
-    @GuardedBy("rwLock")
-    private void updateCurrentConfigurationId() {
-        currentConfiguration = new Configuration(identifiersSeen, rings.get(0));
-        currentConfigurationId = currentConfiguration.getConfigurationId();
-    }
-
     /**
      * Get a Settings object that contains the list of nodes in the membership view
      * as well as the identifiers seen so far. These two lists suffice to bootstrap an
      * identical copy of the MembershipView object.
      *
+     * The configuration is only materialized when it is first requested after a view change,
+     * which is typically when a joiner needs it.
+     *
      * @return a {@code Settings} object.
      */
     Configuration getConfiguration() {
         rwLock.readLock().lock();
         try {
-            if (shouldUpdateConfigurationId) {
-                updateCurrentConfigurationId();
-                shouldUpdateConfigurationId = false;
+            if (currentConfiguration != null) {
+                return currentConfiguration;
             }
-            return currentConfiguration;
         }
         finally {
             rwLock.readLock().unlock();
         }
+
+        rwLock.writeLock().lock();
+        try {
+            if (currentConfiguration == null) {
+                currentConfiguration = new Configuration(identifiersSeen, rings.getRing(0),
+                        Configuration.getConfigurationId(identifiersDigest, endpointsDigest));
+            }
+            return currentConfiguration;
+        }
+        finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Publishes a new snapshot of the membership. Invoked after a view change has been applied.
+     *
+     * @param metadata the metadata of all nodes in the membership.
+     * @return the published snapshot.
+     */
+    MembershipSnapshot publishSnapshot(final Map<String, Metadata> metadata) {
+        rwLock.writeLock().lock();
+        try {
+            snapshot = createSnapshot(snapshot.getVersion() + 1, metadata);
+            return snapshot;
+        }
+        finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the most recently published snapshot of the membership. Does not acquire any locks.
+     *
+     * @return the current membership snapshot.
+     */
+    MembershipSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @GuardedBy("rwLock")
+    private MembershipSnapshot createSnapshot(final long version, final Map<String, Metadata> metadata) {
+        final ImmutableList.Builder<List<Endpoint>> ringsBuilder = ImmutableList.builder();
+        for (int k = 0; k < K; k++) {
+            ringsBuilder.add(rings.getRing(k));
+        }
+        return new MembershipSnapshot(version, Configuration.getConfigurationId(identifiersDigest, endpointsDigest),
+                                      ringsBuilder.build(), metadata);
     }
 
     private static final class NodeIdComparator implements Comparator<NodeId>, Serializable {
@@ -453,6 +472,10 @@ final class MembershipView {
         }
     }
 
+    interface ISettings {
+        boolean getUseSortedArrayRings();
+    }
+
     /**
      * The Settings object contains a list of nodes in the membership view as well as a list of UUIDs.
      * An instance of this object created from one MembershipView object contains the necessary information
@@ -461,10 +484,17 @@ final class MembershipView {
     static class Configuration {
         final List<NodeId> nodeIds;
         final List<Endpoint> endpoints;
+        private final long configurationId;
+
+        public Configuration(final Collection<NodeId> nodeIds, final Collection<Endpoint> endpoints) {
+            this(nodeIds, endpoints, getConfigurationId(nodeIds, endpoints));
+        }
 
-        public Configuration(final Set<NodeId> nodeIds, final Set<Endpoint> endpoints) {
+        private Configuration(final Collection<NodeId> nodeIds, final Collection<Endpoint> endpoints,
+                              final long configurationId) {
             this.nodeIds = ImmutableList.copyOf(nodeIds);
             this.endpoints = ImmutableList.copyOf(endpoints);
+            this.configurationId = configurationId;
         }
 
         /**
@@ -473,21 +503,48 @@ final class MembershipView {
          * @return a configuration identifier.
          */
         public long getConfigurationId() {
-            return getConfigurationId(this.nodeIds, this.endpoints);
+            return configurationId;
         }
 
+        /**
+         * The configuration ID is derived from two multiset hashes, one over the identifiers and one over
+         * the endpoints. Each is the sum of the hashes of its elements, which makes the ID independent of the
+         * order of the elements and lets MembershipView update it in O(1) as nodes are added and removed.
+         */
         static long getConfigurationId(final Collection<NodeId> identifiers,
                                        final Collection<Endpoint> endpoints) {
+            return getConfigurationId(getIdentifiersDigest(identifiers), getEndpointsDigest(endpoints));
+        }
+
+        static long getConfigurationId(final long identifiersDigest, final long endpointsDigest) {
             long hash = 1;
+            hash = hash * 37 + HASH_FUNCTION.hashLong(identifiersDigest);
+            hash = hash * 37 + HASH_FUNCTION.hashLong(endpointsDigest);
+            return hash;
+        }
+
+        static long getIdentifiersDigest(final Collection<NodeId> identifiers) {
+            long digest = 0;
             for (final NodeId id: identifiers) {
-                hash = hash * 37 + HASH_FUNCTION.hashLong(id.getHigh());
-                hash = hash * 37 + HASH_FUNCTION.hashLong(id.getLow());
+                digest += hashNodeId(id);
             }
+            return digest;
+        }
+
+        static long getEndpointsDigest(final Collection<Endpoint> endpoints) {
+            long digest = 0;
             for (final Endpoint endpoint : endpoints) {
-                hash = hash * 37 + HASH_FUNCTION.hashChars(endpoint.getHostname());
-                hash = hash * 37 + HASH_FUNCTION.hashInt(endpoint.getPort());
+                digest += hashEndpoint(endpoint);
             }
-            return hash;
+            return digest;
+        }
+
+        static long hashNodeId(final NodeId id) {
+            return HASH_FUNCTION.hashLong(id.getHigh()) * 37 + HASH_FUNCTION.hashLong(id.getLow());
+        }
+
+        static long hashEndpoint(final Endpoint endpoint) {
+            return HASH_FUNCTION.hashChars(endpoint.getHostname()) * 37 + HASH_FUNCTION.hashInt(endpoint.getPort());
         }
     }
-}
\ No newline at end of file
+}
@@ -19,6 +19,7 @@ import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.pb.Metadata;
 import io.grpc.ExperimentalApi;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.util.Map;
 import java.util.Objects;
@@ -31,6 +32,7 @@ import java.util.concurrent.ConcurrentHashMap;
 @NotThreadSafe
 final class MetadataManager {
     private final Map<Endpoint, Metadata> roleMap = new ConcurrentHashMap<>();
+    @Nullable private Map<String, Metadata> allMetadata = null;
 
     /**
      * Get the list of roles for a node.
@@ -50,6 +52,7 @@ final class MetadataManager {
     void addMetadata(final Map<Endpoint, Metadata> roles) {
         Objects.requireNonNull(roles);
         roles.forEach(roleMap::putIfAbsent);
+        allMetadata = null;
     }
 
     /**
@@ -59,17 +62,23 @@ final class MetadataManager {
      */
     void removeNode(final Endpoint node) {
         Objects.requireNonNull(node);
-        roleMap.remove(node);
+        if (roleMap.remove(node) != null) {
+            allMetadata = null;
+        }
     }
 
     /**
-     * Get the list of all node tags. This is shared with joining nodes when they bootstrap.
+     * Get the list of all node tags. This is shared with joining nodes when they bootstrap. The returned
+     * map is cached until the next change to the metadata, so successive membership snapshots share it.
      */
     Map<String, Metadata> getAllMetadata() {
-        // XXX: Not happy with the back and forth conversion here. We should not require conversions
-        // between Endpoint and strings when crossing over from protobufs to rapid and vice-versa.
-        final ImmutableMap.Builder<String, Metadata> stringMap = ImmutableMap.builder();
-        roleMap.forEach((k, v) -> stringMap.put(k.getHostname() + ":" + k.getPort(), v));
-        return stringMap.build();
+        if (allMetadata == null) {
+            // XXX: Not happy with the back and forth conversion here. We should not require conversions
+            // between Endpoint and strings when crossing over from protobufs to rapid and vice-versa.
+            final ImmutableMap.Builder<String, Metadata> stringMap = ImmutableMap.builder();
+            roleMap.forEach((k, v) -> stringMap.put(k.getHostname() + ":" + k.getPort(), v));
+            allMetadata = stringMap.build();
+        }
+        return allMetadata;
     }
 }
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -35,17 +36,24 @@ import java.util.Set;
  *
  * The output of this filter gives us almost-everywhere agreement
  */
-final class MultiNodeCutDetector {
-    private static final int K_MIN = 3;
+final class MultiNodeCutDetector implements ICutDetector {
+    static final boolean DEFAULT_USE_DENSE_CUT_DETECTOR = false;
+    static final int K_MIN = 3;
     private final int K; // Number of observers per subject and vice versa
     private final int H; // High watermark
     private final int L; // Low watermark
     @GuardedBy("lock") private int proposalCount = 0;
     @GuardedBy("lock") private int updatesInProgress = 0;
     @GuardedBy("lock") private final Map<Endpoint, Map<Integer, Endpoint>> reportsPerHost;
-    @GuardedBy("lock") private final ArrayList<Endpoint> proposal = new ArrayList<>();
+    @GuardedBy("lock") private final Set<Endpoint> proposal = new LinkedHashSet<>();
     @GuardedBy("lock") private final Set<Endpoint> preProposal = new HashSet<>();
     @GuardedBy("lock") private boolean seenLinkDownEvents = false;
+    // Nodes that crossed the L threshold since the last invalidateFailingEdges() call
+    @GuardedBy("lock") private final List<Endpoint> newNodesInFlux = new ArrayList<>();
+    // Nodes that crossed the L threshold and have already been examined by invalidateFailingEdges()
+    @GuardedBy("lock") private final Set<Endpoint> nodesInFlux = new HashSet<>();
+    // Edges from an observer to subjects in flux that have already been examined, indexed by the observer
+    @GuardedBy("lock") private final Map<Endpoint, List<ImplicitEdge>> edgesFromObserver = new HashMap<>();
     private final Object lock = new Object();
 
     MultiNodeCutDetector(final int K, final int H, final int L) {
@@ -59,7 +67,8 @@ final class MultiNodeCutDetector {
         this.reportsPerHost = new HashMap<>();
     }
 
-    int getNumProposals() {
+    @Override
+    public int getNumProposals() {
         synchronized (lock) {
             return proposalCount;
         }
@@ -73,7 +82,8 @@ final class MultiNodeCutDetector {
      * @param msg A AlertMessage to apply against the filter
      * @return a list of endpoints about which a view change has been recorded. Empty list if there is no proposal.
      */
-    List<Endpoint> aggregateForProposal(final AlertMessage msg) {
+    @Override
+    public List<Endpoint> aggregateForProposal(final AlertMessage msg) {
         Objects.requireNonNull(msg);
         final ArrayList<Endpoint> proposals = new ArrayList<>();
         msg.getRingNumberList().forEach(ringNumber ->
@@ -104,6 +114,7 @@ final class MultiNodeCutDetector {
             if (numReportsForHost == L) {
                 updatesInProgress++;
                 preProposal.add(linkDst);
+                newNodesInFlux.add(linkDst);
             }
 
             if (numReportsForHost == H) {
@@ -131,42 +142,77 @@ final class MultiNodeCutDetector {
      * Invalidates edges between nodes that are failing or have failed. This step may be skipped safely
      * when there are no failing nodes.
      *
+     * An edge between two nodes is implicitly detected once both of them have crossed the L threshold. Since a
+     * node never drops below L until the next view change, only nodes that crossed L since the previous call
+     * need to be examined: their observers are looked up once, and edges where they act as observers are
+     * found through the edges recorded for previously examined subjects.
+     *
      * @param view MembershipView object required to find observer-subject relationships between failing nodes.
      * @return A list of endpoints representing a view change proposal.
      */
-    List<Endpoint> invalidateFailingEdges(final MembershipView view) {
+    @Override
+    public List<Endpoint> invalidateFailingEdges(final MembershipView view) {
         synchronized (lock) {
             // Link invalidation is only required when we have failing nodes
-            if (!seenLinkDownEvents) {
+            if (!seenLinkDownEvents || newNodesInFlux.isEmpty()) {
                 return Collections.emptyList();
             }
 
             final List<Endpoint> proposalsToReturn = new ArrayList<>();
-            final List<Endpoint> preProposalCopy = ImmutableList.copyOf(preProposal);
-            for (final Endpoint nodeInFlux: preProposalCopy) {
-                final List<Endpoint> observers = view.isHostPresent(nodeInFlux)
-                                                    ? view.getObserversOf(nodeInFlux)          // For failing nodes
-                                                    : view.getExpectedObserversOf(nodeInFlux); // For joining nodes
-                // Account for all edges between nodes that are past the L threshold
-                int ringNumber = 0;
-                for (final Endpoint observer : observers) {
-                    if (proposal.contains(observer) || preProposal.contains(observer)) {
-                        // Implicit detection of edges between observer and nodeInFlux
-                        final EdgeStatus edgeStatus = view.isHostPresent(nodeInFlux) ? EdgeStatus.DOWN : EdgeStatus.UP;
-                        proposalsToReturn.addAll(aggregateForProposal(observer, nodeInFlux, edgeStatus, ringNumber));
+            final List<Endpoint> newNodesInFluxCopy = ImmutableList.copyOf(newNodesInFlux);
+            newNodesInFlux.clear();
+            for (final Endpoint nodeInFlux: newNodesInFluxCopy) {
+                // Edges from observers of nodeInFlux. Only subjects that have not yet crossed H need them.
+                if (preProposal.contains(nodeInFlux)) {
+                    final boolean isPresent = view.isHostPresent(nodeInFlux);
+                    final List<Endpoint> observers = isPresent
+                                                        ? view.getObserversOf(nodeInFlux)          // For failing nodes
+                                                        : view.getExpectedObserversOf(nodeInFlux); // For joining nodes
+                    final EdgeStatus edgeStatus = isPresent ? EdgeStatus.DOWN : EdgeStatus.UP;
+                    int ringNumber = 0;
+                    for (final Endpoint observer : observers) {
+                        final ImplicitEdge edge = new ImplicitEdge(nodeInFlux, edgeStatus, ringNumber);
+                        edgesFromObserver.computeIfAbsent(observer, k -> new ArrayList<>(K)).add(edge);
+                        // Observers that are yet to be examined will pick this edge up through edgesFromObserver
+                        if (nodesInFlux.contains(observer) && isInFlux(observer)) {
+                            // Implicit detection of edges between observer and nodeInFlux
+                            proposalsToReturn.addAll(aggregateForProposal(observer, edge));
+                        }
+                        ringNumber++;
+                    }
+                }
+
+                // Edges from nodeInFlux to subjects that were examined earlier
+                if (isInFlux(nodeInFlux)) {
+                    for (final ImplicitEdge edge : edgesFromObserver.getOrDefault(nodeInFlux,
+                                                                                  Collections.emptyList())) {
+                        if (preProposal.contains(edge.subject)) {
+                            proposalsToReturn.addAll(aggregateForProposal(nodeInFlux, edge));
+                        }
                     }
-                    ringNumber++;
                 }
+                nodesInFlux.add(nodeInFlux);
             }
 
             return ImmutableList.copyOf(proposalsToReturn);
         }
     }
 
+    @GuardedBy("lock")
+    private boolean isInFlux(final Endpoint node) {
+        return proposal.contains(node) || preProposal.contains(node);
+    }
+
+    @GuardedBy("lock")
+    private List<Endpoint> aggregateForProposal(final Endpoint observer, final ImplicitEdge edge) {
+        return aggregateForProposal(observer, edge.subject, edge.edgeStatus, edge.ringNumber);
+    }
+
     /**
      * Clears all view change reports being tracked. To be used right after a view change.
      */
-    void clear() {
+    @Override
+    public void clear() {
         synchronized (lock) {
             reportsPerHost.clear();
             proposal.clear();
@@ -174,6 +220,24 @@ final class MultiNodeCutDetector {
             proposalCount = 0;
             preProposal.clear();
             seenLinkDownEvents = false;
+            newNodesInFlux.clear();
+            nodesInFlux.clear();
+            edgesFromObserver.clear();
+        }
+    }
+
+    /**
+     * An edge from an observer to a subject in flux, along with the status implied for it.
+     */
+    private static final class ImplicitEdge {
+        private final Endpoint subject;
+        private final EdgeStatus edgeStatus;
+        private final int ringNumber;
+
+        private ImplicitEdge(final Endpoint subject, final EdgeStatus edgeStatus, final int ringNumber) {
+            this.subject = subject;
+            this.edgeStatus = edgeStatus;
+            this.ringNumber = ringNumber;
         }
     }
 }
\ No newline at end of file
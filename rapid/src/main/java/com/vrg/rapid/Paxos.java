@@ -46,6 +46,7 @@ class Paxos {
     private final long configurationId;
     private final Endpoint myAddr;
     private final int N;
+    private final ProposalCodec proposalCodec;
 
     private Rank rnd;
     private Rank vrnd;
@@ -60,11 +61,13 @@ class Paxos {
     private boolean decided = false;
 
     public Paxos(final Endpoint myAddr, final long configurationId, final int N, final IMessagingClient client,
-                 final IBroadcaster broadcaster, final Consumer<List<Endpoint>> onDecide) {
+                 final IBroadcaster broadcaster, final ProposalCodec proposalCodec,
+                 final Consumer<List<Endpoint>> onDecide) {
         this.myAddr = myAddr;
         this.configurationId = configurationId;
         this.N = N;
         this.broadcaster = broadcaster;
+        this.proposalCodec = proposalCodec;
 
         this.crnd = Rank.newBuilder().setRound(0).setNodeIndex(0).build();
         this.rnd = Rank.newBuilder().setRound(0).setNodeIndex(0).build();
@@ -119,14 +122,13 @@ class Paxos {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Sending back vval:{} vrnd:{}", Utils.loggable(vval), Utils.loggable(vrnd));
         }
-        final Phase1bMessage phase1bMessage = Phase1bMessage.newBuilder()
+        final Phase1bMessage.Builder phase1bMessage = Phase1bMessage.newBuilder()
                                       .setConfigurationId(configurationId)
                                       .setRnd(rnd)
                                       .setSender(myAddr)
-                                      .setVrnd(vrnd)
-                                      .addAllVval(vval)
-                                      .build();
-        final RapidRequest request = Utils.toRapidRequest(phase1bMessage);
+                                      .setVrnd(vrnd);
+        proposalCodec.setProposal(phase1bMessage, vval);
+        final RapidRequest request = Utils.toRapidRequest(phase1bMessage.build());
         final ListenableFuture<RapidResponse> rapidResponseListenableFuture =
                 client.sendMessage(phase1aMessage.getSender(), request);
         Futures.addCallback(rapidResponseListenableFuture, new ResponseCallback());
@@ -150,7 +152,13 @@ class Paxos {
 
         LOG.trace("Handling PrepareResponse: {}", Utils.loggable(phase1bMessage));
 
-        phase1bMessages.add(phase1bMessage);
+        // Store the message with its proposal in full, which is what the coordinator rule works with
+        phase1bMessages.add(phase1bMessage.hasCompactVval()
+                            ? phase1bMessage.toBuilder()
+                                            .clearCompactVval()
+                                            .addAllVval(proposalCodec.getProposal(phase1bMessage))
+                                            .build()
+                            : phase1bMessage);
 
         if (phase1bMessages.size() > (N / 2)) {
             // selectProposalUsingCoordinator rule may execute multiple times with each additional phase1bMessage
@@ -160,13 +168,12 @@ class Paxos {
                 LOG.debug("{} is proposing: {} in rnd {}", Utils.loggable(myAddr),
                         Utils.loggable(chosenProposal), Utils.loggable(crnd));
                 cval = chosenProposal;
-                final Phase2aMessage phase2aMessage = Phase2aMessage.newBuilder()
+                final Phase2aMessage.Builder phase2aMessage = Phase2aMessage.newBuilder()
                                                    .setSender(myAddr)
                                                    .setConfigurationId(configurationId)
-                                                   .setRnd(crnd)
-                                                   .addAllVval(chosenProposal)
-                                                   .build();
-                final RapidRequest request = Utils.toRapidRequest(phase2aMessage);
+                                                   .setRnd(crnd);
+                proposalCodec.setProposal(phase2aMessage, chosenProposal);
+                final RapidRequest request = Utils.toRapidRequest(phase2aMessage.build());
                 broadcaster.broadcast(request);
             }
         }
@@ -184,18 +191,18 @@ class Paxos {
 
         LOG.trace("At acceptor received phase2aMessage: {}", Utils.loggable(phase2aMessage));
         if (compareRanks(rnd, phase2aMessage.getRnd()) <= 0 && !vrnd.equals(phase2aMessage.getRnd())) {
+            final List<Endpoint> proposal = proposalCodec.getProposal(phase2aMessage);
             rnd = phase2aMessage.getRnd();
             vrnd = phase2aMessage.getRnd();
-            vval = phase2aMessage.getVvalList();
+            vval = proposal;
             LOG.trace("{} accepted value in vrnd: {}, vval: {}", Utils.loggable(myAddr),
                     Utils.loggable(vrnd), Utils.loggable(vval));
-            final Phase2bMessage response = Phase2bMessage.newBuilder()
+            final Phase2bMessage.Builder response = Phase2bMessage.newBuilder()
                                                           .setConfigurationId(configurationId)
                                                           .setRnd(phase2aMessage.getRnd())
-                                                          .setSender(myAddr)
-                                                          .addAllEndpoints(vval)
-                                                          .build();
-            final RapidRequest request = Utils.toRapidRequest(response);
+                                                          .setSender(myAddr);
+            proposalCodec.setProposal(response, vval);
+            final RapidRequest request = Utils.toRapidRequest(response.build());
             broadcaster.broadcast(request);
         }
     }
@@ -210,11 +217,12 @@ class Paxos {
             return;
         }
         LOG.trace("Received phase2bMessage: {}", Utils.loggable(phase2bMessage.getSender()));
+        // Read the proposal before counting the vote, so that a vote with an invalid proposal is not counted
+        final List<Endpoint> decision = proposalCodec.getProposal(phase2bMessage);
         final Map<Endpoint, Phase2bMessage> phase2bMessagesInRnd =
                 acceptResponses.computeIfAbsent(phase2bMessage.getRnd(), (k) -> new HashMap<>());
         phase2bMessagesInRnd.put(phase2bMessage.getSender(), phase2bMessage);
         if (phase2bMessagesInRnd.size() > (N / 2) && !decided) {
-            final List<Endpoint> decision = phase2bMessage.getEndpointsList();
             LOG.debug("{} decided on: {} for rnd {} {}", Utils.loggable(myAddr), Utils.loggable(decision),
                       Utils.loggable(phase2bMessage.getRnd()), phase2bMessagesInRnd.size());
             onDecide.accept(decision);
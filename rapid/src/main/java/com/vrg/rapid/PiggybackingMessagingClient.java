@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.messaging.PeerActivity;
+import com.vrg.rapid.messaging.RttEstimator;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.ProbeMessage;
+import com.vrg.rapid.pb.ProbeResponse;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+
+import javax.annotation.Nullable;
+
+/**
+ * An IMessagingClient for the edge failure detectors, that piggybacks the configuration ID and buffered alerts
+ * on every probe, and hands the alerts piggybacked on probe responses to the AlertPiggyback. All other
+ * messages are sent as is.
+ */
+final class PiggybackingMessagingClient implements IMessagingClient {
+    private final IMessagingClient client;
+    private final AlertPiggyback piggyback;
+
+    PiggybackingMessagingClient(final IMessagingClient client, final AlertPiggyback piggyback) {
+        this.client = client;
+        this.piggyback = piggyback;
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
+        if (msg.getContentCase() != RapidRequest.ContentCase.PROBEMESSAGE) {
+            return client.sendMessage(remote, msg);
+        }
+        return receive(remote, client.sendMessage(remote, piggyback(msg)));
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg) {
+        if (msg.getContentCase() != RapidRequest.ContentCase.PROBEMESSAGE) {
+            return client.sendMessageBestEffort(remote, msg);
+        }
+        return receive(remote, client.sendMessageBestEffort(remote, piggyback(msg)));
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    @Nullable
+    public RttEstimator getRttEstimator() {
+        return client.getRttEstimator();
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    @Nullable
+    public PeerActivity getPeerActivity() {
+        return client.getPeerActivity();
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    /**
+     * Probes are sent before the subject's configuration is known, so the alerts are picked for the
+     * configuration of the sender.
+     */
+    private RapidRequest piggyback(final RapidRequest msg) {
+        final long configurationId = piggyback.getConfigurationId();
+        final ProbeMessage probe = msg.getProbeMessage().toBuilder()
+                .setConfigurationId(configurationId)
+                .addAllAlerts(piggyback.take(configurationId))
+                .build();
+        return Utils.toRapidRequest(probe);
+    }
+
+    private ListenableFuture<RapidResponse> receive(final Endpoint remote,
+                                                    final ListenableFuture<RapidResponse> future) {
+        Futures.addCallback(future, new FutureCallback<RapidResponse>() {
+            @Override
+            public void onSuccess(@Nullable final RapidResponse response) {
+                if (response != null && response.getContentCase() == RapidResponse.ContentCase.PROBERESPONSE) {
+                    final ProbeResponse probeResponse = response.getProbeResponse();
+                    piggyback.receive(remote, probeResponse.getConfigurationId(), probeResponse.getAlertsList());
+                }
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                // Failed probes are handled by the failure detector
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.RapidRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs requests from other nodes on a delegate executor in priority order, and sheds low-priority requests
+ * when the executor falls behind. Probes, consensus messages and alerts are never shed, because dropping them
+ * stalls view changes or fails healthy nodes, whereas a shed join is retried by the joiner.
+ *
+ * Every request is queued by its priority, and a token is submitted to the delegate for it. Each token runs
+ * the highest-priority request queued at the time the token runs, so requests are reordered without adding
+ * threads, and tasks submitted to the delegate directly still run in between.
+ */
+final class PrioritizedExecutor {
+    /**
+     * Priority classes for requests, from highest to lowest.
+     */
+    enum Priority {
+        // Probes and consensus messages, which fail nodes or stall view changes if they are delayed
+        HIGH,
+        // Alerts, which feed the cut detector
+        MEDIUM,
+        // Joins, which can be retried by the joiner
+        LOW;
+
+        static Priority of(final RapidRequest.ContentCase contentCase) {
+            switch (contentCase) {
+                case PROBEMESSAGE:
+                case FASTROUNDPHASE2BMESSAGE:
+                case PHASE1AMESSAGE:
+                case PHASE1BMESSAGE:
+                case PHASE2AMESSAGE:
+                case PHASE2BMESSAGE:
+                    return HIGH;
+                case PREJOINMESSAGE:
+                case JOINMESSAGE:
+                    return LOW;
+                default:
+                    return MEDIUM;
+            }
+        }
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+    private final Executor delegate;
+    private final SharedResources.LoadSheddingPolicy policy;
+    private final int lowPriorityCapacity;
+    private final List<Queue<Runnable>> queues = new ArrayList<>(PRIORITIES.length);
+    private final AtomicIntegerArray sizes = new AtomicIntegerArray(PRIORITIES.length);
+    private final AtomicLong completedRequests = new AtomicLong(0);
+
+    /**
+     * @param lowPriorityCapacity the backlog beyond which low-priority requests are shed
+     */
+    PrioritizedExecutor(final Executor delegate, final SharedResources.LoadSheddingPolicy policy,
+                        final int lowPriorityCapacity) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.lowPriorityCapacity = lowPriorityCapacity;
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Queues a request handler.
+     *
+     * @throws RejectedExecutionException if the request is a low-priority request and is shed
+     */
+    void execute(final Priority priority, final Runnable task) {
+        if (priority == Priority.LOW) {
+            if (!tryReserveLow()) {
+                throw new RejectedExecutionException("Shedding " + priority + " priority request");
+            }
+        } else {
+            sizes.incrementAndGet(priority.ordinal());
+        }
+        queues.get(priority.ordinal()).add(task);
+        delegate.execute(this::runNext);
+    }
+
+    /**
+     * @return the number of requests that have run
+     */
+    long getCompletedRequestCount() {
+        return completedRequests.get();
+    }
+
+    private void runNext() {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            final Runnable task = queues.get(i).poll();
+            if (task != null) {
+                sizes.decrementAndGet(i);
+                task.run();
+                completedRequests.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts a low-priority request against the capacity. With SHED_BY_CLASS, the request is admitted while
+     * fewer low-priority requests are queued than the capacity. With SHED_BY_PRIORITY, the requests queued at
+     * higher priorities count against the capacity as well, so that joins are shed as soon as the executor
+     * falls behind on any kind of request.
+     */
+    private boolean tryReserveLow() {
+        final int index = Priority.LOW.ordinal();
+        while (true) {
+            final int size = sizes.get(index);
+            int backlog = size;
+            if (policy == SharedResources.LoadSheddingPolicy.SHED_BY_PRIORITY) {
+                for (int i = 0; i < index; i++) {
+                    backlog += sizes.get(i);
+                }
+            }
+            if (backlog >= lowPriorityCapacity) {
+                return false;
+            }
+            if (sizes.compareAndSet(index, size, size + 1)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.vrg.rapid.monitoring.IEdgeFailureDetectorFactory;
+import com.vrg.rapid.pb.Endpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the edge failure detectors for all the subjects of a node from a single periodic task.
+ *
+ * The failure detector interval is divided into slots, and every tick of the task runs the detectors assigned to
+ * one slot, so that probes are spread evenly across the interval instead of being sent in a burst. When the
+ * configuration changes, detectors for subjects that are still monitored are kept along with their state, and
+ * only detectors for new subjects are created.
+ */
+final class ProbeScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(ProbeScheduler.class);
+    private static final int SLOTS_PER_INTERVAL = 10;
+    private final ScheduledExecutorService executor;
+    private final IEdgeFailureDetectorFactory fdFactory;
+    private final Function<Endpoint, Runnable> notifierFactory;
+    private final int intervalInMs;
+    private final int slots;
+    @GuardedBy("this") private Map<Endpoint, Edge> edges = Collections.emptyMap();
+    @GuardedBy("this") @Nullable private ScheduledFuture<?> tickJob = null;
+    // Written under the lock and read by the tick task
+    private volatile List<Edge> snapshot = Collections.emptyList();
+    // Only accessed by the tick task, whose executions never overlap
+    private long tickCount = 0;
+
+    /**
+     * @param notifierFactory creates the notifier that a detector runs when its subject is faulty
+     */
+    ProbeScheduler(final ScheduledExecutorService executor, final int intervalInMs,
+                   final IEdgeFailureDetectorFactory fdFactory, final Function<Endpoint, Runnable> notifierFactory) {
+        this.executor = executor;
+        this.fdFactory = fdFactory;
+        this.notifierFactory = notifierFactory;
+        this.intervalInMs = intervalInMs;
+        this.slots = Math.max(1, Math.min(SLOTS_PER_INTERVAL, intervalInMs));
+    }
+
+    /**
+     * Starts running the detectors.
+     */
+    synchronized void start() {
+        if (tickJob == null) {
+            final long tickInMicros = TimeUnit.MILLISECONDS.toMicros(intervalInMs) / slots;
+            tickJob = executor.scheduleAtFixedRate(this::tick, 0, tickInMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    /**
+     * Stops running the detectors.
+     */
+    synchronized void shutdown() {
+        if (tickJob != null) {
+            tickJob.cancel(true);
+            tickJob = null;
+        }
+    }
+
+    /**
+     * Replaces the set of monitored subjects. Detectors for subjects that remain are kept, unless they have
+     * already reported their subject, in which case they are replaced so that a subject that is still faulty is
+     * reported again in the new configuration.
+     */
+    synchronized void setSubjects(final List<Endpoint> subjects) {
+        final Map<Endpoint, Edge> next = new LinkedHashMap<>(subjects.size());
+        for (final Endpoint subject : subjects) {
+            if (next.containsKey(subject)) {
+                // A subject can precede this node on several rings, but a single detector is enough
+                continue;
+            }
+            final Edge edge = edges.get(subject);
+            next.put(subject, edge == null || edge.hasNotified
+                              ? new Edge(subject, fdFactory, notifierFactory.apply(subject))
+                              : edge);
+        }
+        edges = next;
+        snapshot = Collections.unmodifiableList(new ArrayList<>(next.values()));
+    }
+
+    /**
+     * Stops monitoring all subjects.
+     */
+    synchronized void clear() {
+        setSubjects(Collections.emptyList());
+    }
+
+    /**
+     * @return the detectors of the subjects that are currently monitored
+     */
+    @VisibleForTesting
+    List<Runnable> getDetectors() {
+        return snapshot.stream().map(edge -> edge.detector).collect(Collectors.toList());
+    }
+
+    private void tick() {
+        final List<Edge> current = snapshot;
+        final int slot = (int) (tickCount++ % slots);
+        for (int i = slot; i < current.size(); i += slots) {
+            current.get(i).probe();
+        }
+    }
+
+    private static final class Edge {
+        private final Endpoint subject;
+        private final Runnable detector;
+        private volatile boolean hasNotified = false;
+
+        Edge(final Endpoint subject, final IEdgeFailureDetectorFactory fdFactory, final Runnable notifier) {
+            this.subject = subject;
+            this.detector = fdFactory.createInstance(subject, () -> {
+                hasNotified = true;
+                notifier.run();
+            });
+        }
+
+        /**
+         * A detector that throws must not stop the task that runs all the others.
+         */
+        @SuppressWarnings("checkstyle:illegalcatch")
+        private void probe() {
+            try {
+                detector.run();
+            } catch (final RuntimeException e) {
+                LOG.error("Failure detector for {} threw an exception", Utils.loggable(subject), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.collect.ImmutableList;
+import com.vrg.rapid.pb.CompactProposal;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.FastRoundPhase2bMessage;
+import com.vrg.rapid.pb.Phase1bMessage;
+import com.vrg.rapid.pb.Phase2aMessage;
+import com.vrg.rapid.pb.Phase2bMessage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes proposals into consensus messages and reads them back, against the memberlist of the configuration
+ * that a consensus instance runs in.
+ *
+ * If compact encoding is enabled, members are sent as their index in the memberlist instead of as full
+ * endpoints. Receivers drop consensus messages from other configurations before reading their proposals,
+ * so the sender and receiver of a message always agree on the memberlist. Proposals in messages without
+ * a compact proposal are read from their list of endpoints, so nodes that do not use compact encoding can
+ * still take part, but only nodes that understand compact proposals may enable it.
+ */
+final class ProposalCodec {
+    private final List<Endpoint> memberlist;
+    private final Map<Endpoint, Integer> memberIndex;
+    private final boolean useCompactEncoding;
+
+    ProposalCodec(final List<Endpoint> memberlist, final boolean useCompactEncoding) {
+        this.memberlist = memberlist;
+        this.memberIndex = new HashMap<>(memberlist.size() * 2);
+        for (int i = 0; i < memberlist.size(); i++) {
+            memberIndex.put(memberlist.get(i), i);
+        }
+        this.useCompactEncoding = useCompactEncoding;
+    }
+
+    /**
+     * Returns the number of members in the configuration.
+     */
+    int getMembershipSize() {
+        return memberlist.size();
+    }
+
+    /**
+     * Returns the position of {@code node} in the memberlist, or -1 if it is not a member.
+     */
+    int indexOf(final Endpoint node) {
+        final Integer index = memberIndex.get(node);
+        return index != null ? index : -1;
+    }
+
+    void setProposal(final FastRoundPhase2bMessage.Builder builder, final List<Endpoint> proposal) {
+        if (useCompactEncoding && !proposal.isEmpty()) {
+            builder.setCompactEndpoints(encode(proposal));
+        }
+        else {
+            builder.addAllEndpoints(proposal);
+        }
+        builder.setProposalDigest(FastPaxos.getProposalDigest(proposal));
+    }
+
+    void setProposal(final Phase1bMessage.Builder builder, final List<Endpoint> proposal) {
+        if (useCompactEncoding && !proposal.isEmpty()) {
+            builder.setCompactVval(encode(proposal));
+        }
+        else {
+            builder.addAllVval(proposal);
+        }
+    }
+
+    void setProposal(final Phase2aMessage.Builder builder, final List<Endpoint> proposal) {
+        if (useCompactEncoding && !proposal.isEmpty()) {
+            builder.setCompactVval(encode(proposal));
+        }
+        else {
+            builder.addAllVval(proposal);
+        }
+    }
+
+    void setProposal(final Phase2bMessage.Builder builder, final List<Endpoint> proposal) {
+        if (useCompactEncoding && !proposal.isEmpty()) {
+            builder.setCompactEndpoints(encode(proposal));
+        }
+        else {
+            builder.addAllEndpoints(proposal);
+        }
+    }
+
+    List<Endpoint> getProposal(final FastRoundPhase2bMessage message) {
+        return message.hasCompactEndpoints() ? decode(message.getCompactEndpoints()) : message.getEndpointsList();
+    }
+
+    /**
+     * Returns the digest of the proposal in {@code message}, and only reads the proposal if the sender
+     * did not include its digest.
+     */
+    long getProposalDigest(final FastRoundPhase2bMessage message) {
+        final long digest = message.getProposalDigest();
+        return digest != 0 ? digest : FastPaxos.getProposalDigest(getProposal(message));
+    }
+
+    /**
+     * Returns whether two fast round votes are for the same proposal. Votes that encode their proposals
+     * the same way are compared as encoded, without reading the proposals.
+     */
+    boolean hasSameProposal(final FastRoundPhase2bMessage message, final FastRoundPhase2bMessage other) {
+        if (message.hasCompactEndpoints() && other.hasCompactEndpoints()) {
+            return message.getCompactEndpoints().equals(other.getCompactEndpoints());
+        }
+        if (!message.hasCompactEndpoints() && !other.hasCompactEndpoints()) {
+            return message.getEndpointsList().equals(other.getEndpointsList());
+        }
+        return getProposal(message).equals(getProposal(other));
+    }
+
+    List<Endpoint> getProposal(final Phase1bMessage message) {
+        return message.hasCompactVval() ? decode(message.getCompactVval()) : message.getVvalList();
+    }
+
+    List<Endpoint> getProposal(final Phase2aMessage message) {
+        return message.hasCompactVval() ? decode(message.getCompactVval()) : message.getVvalList();
+    }
+
+    List<Endpoint> getProposal(final Phase2bMessage message) {
+        return message.hasCompactEndpoints() ? decode(message.getCompactEndpoints()) : message.getEndpointsList();
+    }
+
+    CompactProposal encode(final List<Endpoint> proposal) {
+        final CompactProposal.Builder builder = CompactProposal.newBuilder();
+        int numNonMembers = 0;
+        for (final Endpoint node : proposal) {
+            final Integer index = memberIndex.get(node);
+            if (index != null) {
+                builder.addIndices(index);
+            }
+            else {
+                builder.addIndices(memberlist.size() + numNonMembers++);
+                builder.addEndpoints(node);
+            }
+        }
+        return builder.build();
+    }
+
+    List<Endpoint> decode(final CompactProposal proposal) {
+        final int membershipSize = memberlist.size();
+        final ImmutableList.Builder<Endpoint> builder = ImmutableList.builder();
+        for (final int index : proposal.getIndicesList()) {
+            if (index < 0 || index >= membershipSize + proposal.getEndpointsCount()) {
+                throw new InvalidProposalException("Proposal index " + index + " out of range for a configuration" +
+                                                   " of size " + membershipSize);
+            }
+            builder.add(index < membershipSize ? memberlist.get(index)
+                                               : proposal.getEndpoints(index - membershipSize));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Thrown when a compact proposal does not describe a proposal in the configuration it is read against.
+     */
+    static final class InvalidProposalException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        InvalidProposalException(final String message) {
+            super(message);
+        }
+    }
+}
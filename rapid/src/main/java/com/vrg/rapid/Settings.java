@@ -1,17 +1,68 @@
 package com.vrg.rapid;
 
+import com.vrg.rapid.messaging.impl.CoalescingMessagingClient;
 import com.vrg.rapid.messaging.impl.GrpcClient;
+import com.vrg.rapid.monitoring.impl.IndirectProbingFailureDetector;
+import com.vrg.rapid.monitoring.impl.PassiveFailureDetector;
+import com.vrg.rapid.monitoring.impl.PhiAccrualFailureDetector;
 
 /**
  * Holds configuration parameters for different components of a Rapid instance.
  */
-public final class Settings implements GrpcClient.ISettings, MembershipService.ISettings {
+public final class Settings implements GrpcClient.ISettings, MembershipService.ISettings,
+                                       MembershipView.ISettings, ICutDetector.ISettings,
+                                       GossipBroadcaster.ISettings, SharedResources.ISettings,
+                                       CoalescingMessagingClient.ISettings, PhiAccrualFailureDetector.ISettings,
+                                       IndirectProbingFailureDetector.ISettings, PassiveFailureDetector.ISettings {
     private boolean useInProcessTransport = GrpcClient.DEFAULT_GRPC_USE_IN_PROCESS_TRANSPORT;
     private int grpcTimeoutMs = GrpcClient.DEFAULT_GRPC_TIMEOUT_MS;
     private int grpcDefaultRetries = GrpcClient.DEFAULT_GRPC_DEFAULT_RETRIES;
     private int grpcJoinTimeoutMs = GrpcClient.DEFAULT_GRPC_JOIN_TIMEOUT;
     private int grpcProbeTimeoutMs = GrpcClient.DEFAULT_GRPC_PROBE_TIMEOUT;
+    private boolean useGrpcStreams = GrpcClient.DEFAULT_USE_GRPC_STREAMS;
+    private int grpcKeepAliveTimeMs = GrpcClient.DEFAULT_GRPC_KEEP_ALIVE_TIME_MS;
+    private int grpcJoinRetries = GrpcClient.DEFAULT_GRPC_JOIN_RETRIES;
+    private int grpcConsensusRetries = GrpcClient.DEFAULT_GRPC_CONSENSUS_RETRIES;
+    private int grpcRetryBackoffBaseMs = GrpcClient.DEFAULT_GRPC_RETRY_BACKOFF_BASE_MS;
+    private int grpcRetryBackoffMaxMs = GrpcClient.DEFAULT_GRPC_RETRY_BACKOFF_MAX_MS;
+    private int grpcHedgeDelayMs = GrpcClient.DEFAULT_GRPC_HEDGE_DELAY_MS;
+    private boolean useAdaptiveGrpcTimeouts = GrpcClient.DEFAULT_USE_ADAPTIVE_GRPC_TIMEOUTS;
+    private int grpcMinTimeoutMs = GrpcClient.DEFAULT_GRPC_MIN_TIMEOUT_MS;
     private int failureDetectorIntervalInMs = MembershipService.DEFAULT_FAILURE_DETECTOR_INTERVAL_IN_MS;
+    private int alertBatchingWindowInMs = MembershipService.DEFAULT_ALERT_BATCHING_WINDOW_IN_MS;
+    private int alertBatchingMaxDelayInMs = MembershipService.DEFAULT_ALERT_BATCHING_MAX_DELAY_IN_MS;
+    private int alertBatchingMaxSize = MembershipService.DEFAULT_ALERT_BATCHING_MAX_SIZE;
+    private boolean useProbePiggybacking = MembershipService.DEFAULT_USE_PROBE_PIGGYBACKING;
+    private int maxPiggybackedAlertsPerProbe = MembershipService.DEFAULT_MAX_PIGGYBACKED_ALERTS_PER_PROBE;
+    private int piggybackRetransmitMultiplier = MembershipService.DEFAULT_PIGGYBACK_RETRANSMIT_MULTIPLIER;
+    private boolean useSortedArrayRings = MembershipView.DEFAULT_USE_SORTED_ARRAY_RINGS;
+    private boolean useDenseCutDetector = MultiNodeCutDetector.DEFAULT_USE_DENSE_CUT_DETECTOR;
+    private boolean useCompactConsensusMessages = FastPaxos.DEFAULT_USE_COMPACT_CONSENSUS_MESSAGES;
+    private boolean useGossipBroadcaster = GossipBroadcaster.DEFAULT_USE_GOSSIP_BROADCASTER;
+    private int gossipFanout = GossipBroadcaster.DEFAULT_GOSSIP_FANOUT;
+    private int gossipRedundancy = GossipBroadcaster.DEFAULT_GOSSIP_REDUNDANCY;
+    private int serverExecutorThreads = SharedResources.DEFAULT_THREADS;
+    private int clientExecutorThreads = SharedResources.DEFAULT_THREADS;
+    private int backgroundExecutorThreads = SharedResources.DEFAULT_THREADS;
+    private int eventLoopThreads = SharedResources.DEFAULT_THREADS;
+    private int failureDetectorThreads = SharedResources.DEFAULT_THREADS;
+    private boolean useEpollTransport = SharedResources.DEFAULT_USE_EPOLL_TRANSPORT;
+    private int socketBufferSize = SharedResources.DEFAULT_SOCKET_BUFFER_SIZE;
+    private boolean useRequestPriorities = SharedResources.DEFAULT_USE_REQUEST_PRIORITIES;
+    private int lowPriorityQueueCapacity = SharedResources.DEFAULT_LOW_PRIORITY_QUEUE_CAPACITY;
+    private SharedResources.LoadSheddingPolicy loadSheddingPolicy = SharedResources.DEFAULT_LOAD_SHEDDING_POLICY;
+    private boolean useMessageCoalescing = CoalescingMessagingClient.DEFAULT_USE_MESSAGE_COALESCING;
+    private int messageCoalescingWindowInMs = CoalescingMessagingClient.DEFAULT_MESSAGE_COALESCING_WINDOW_IN_MS;
+    private int messageCoalescingMaxBatchSize = CoalescingMessagingClient.DEFAULT_MESSAGE_COALESCING_MAX_BATCH_SIZE;
+    private boolean usePhiAccrualFailureDetector = PhiAccrualFailureDetector.DEFAULT_USE_PHI_ACCRUAL_FAILURE_DETECTOR;
+    private double phiThreshold = PhiAccrualFailureDetector.DEFAULT_PHI_THRESHOLD;
+    private int phiWindowSize = PhiAccrualFailureDetector.DEFAULT_PHI_WINDOW_SIZE;
+    private int phiMinStdDeviationMs = PhiAccrualFailureDetector.DEFAULT_PHI_MIN_STD_DEVIATION_MS;
+    private int phiAcceptableHeartbeatPauseMs = PhiAccrualFailureDetector.DEFAULT_PHI_ACCEPTABLE_HEARTBEAT_PAUSE_MS;
+    private boolean useIndirectProbingFailureDetector =
+            IndirectProbingFailureDetector.DEFAULT_USE_INDIRECT_PROBING_FAILURE_DETECTOR;
+    private int indirectProbeRelays = IndirectProbingFailureDetector.DEFAULT_INDIRECT_PROBE_RELAYS;
+    private boolean usePassiveFailureDetection = PassiveFailureDetector.DEFAULT_USE_PASSIVE_FAILURE_DETECTION;
 
     /*
      * Settings from GrpcClient.ISettings
@@ -61,6 +112,87 @@ public final class Settings implements GrpcClient.ISettings, MembershipService.I
         this.grpcProbeTimeoutMs = grpcProbeTimeoutMs;
     }
 
+    @Override
+    public boolean getUseGrpcStreams() {
+        return useGrpcStreams;
+    }
+
+    public void setUseGrpcStreams(final boolean useGrpcStreams) {
+        this.useGrpcStreams = useGrpcStreams;
+    }
+
+    @Override
+    public int getGrpcKeepAliveTimeMs() {
+        return grpcKeepAliveTimeMs;
+    }
+
+    public void setGrpcKeepAliveTimeMs(final int grpcKeepAliveTimeMs) {
+        this.grpcKeepAliveTimeMs = grpcKeepAliveTimeMs;
+    }
+
+    @Override
+    public int getGrpcJoinRetries() {
+        return grpcJoinRetries;
+    }
+
+    public void setGrpcJoinRetries(final int grpcJoinRetries) {
+        this.grpcJoinRetries = grpcJoinRetries;
+    }
+
+    @Override
+    public int getGrpcConsensusRetries() {
+        return grpcConsensusRetries;
+    }
+
+    public void setGrpcConsensusRetries(final int grpcConsensusRetries) {
+        this.grpcConsensusRetries = grpcConsensusRetries;
+    }
+
+    @Override
+    public int getGrpcRetryBackoffBaseMs() {
+        return grpcRetryBackoffBaseMs;
+    }
+
+    public void setGrpcRetryBackoffBaseMs(final int grpcRetryBackoffBaseMs) {
+        this.grpcRetryBackoffBaseMs = grpcRetryBackoffBaseMs;
+    }
+
+    @Override
+    public int getGrpcRetryBackoffMaxMs() {
+        return grpcRetryBackoffMaxMs;
+    }
+
+    public void setGrpcRetryBackoffMaxMs(final int grpcRetryBackoffMaxMs) {
+        this.grpcRetryBackoffMaxMs = grpcRetryBackoffMaxMs;
+    }
+
+    @Override
+    public int getGrpcHedgeDelayMs() {
+        return grpcHedgeDelayMs;
+    }
+
+    public void setGrpcHedgeDelayMs(final int grpcHedgeDelayMs) {
+        this.grpcHedgeDelayMs = grpcHedgeDelayMs;
+    }
+
+    @Override
+    public boolean getUseAdaptiveGrpcTimeouts() {
+        return useAdaptiveGrpcTimeouts;
+    }
+
+    public void setUseAdaptiveGrpcTimeouts(final boolean useAdaptiveGrpcTimeouts) {
+        this.useAdaptiveGrpcTimeouts = useAdaptiveGrpcTimeouts;
+    }
+
+    @Override
+    public int getGrpcMinTimeoutMs() {
+        return grpcMinTimeoutMs;
+    }
+
+    public void setGrpcMinTimeoutMs(final int grpcMinTimeoutMs) {
+        this.grpcMinTimeoutMs = grpcMinTimeoutMs;
+    }
+
 
     /*
      * Settings from MembershipService.ISettings
@@ -73,4 +205,328 @@ public final class Settings implements GrpcClient.ISettings, MembershipService.I
     public void setFailureDetectorIntervalInMs(final int failureDetectorIntervalInMs) {
         this.failureDetectorIntervalInMs = failureDetectorIntervalInMs;
     }
+
+    @Override
+    public int getAlertBatchingWindowInMs() {
+        return alertBatchingWindowInMs;
+    }
+
+    public void setAlertBatchingWindowInMs(final int alertBatchingWindowInMs) {
+        this.alertBatchingWindowInMs = alertBatchingWindowInMs;
+    }
+
+    @Override
+    public int getAlertBatchingMaxDelayInMs() {
+        return alertBatchingMaxDelayInMs;
+    }
+
+    public void setAlertBatchingMaxDelayInMs(final int alertBatchingMaxDelayInMs) {
+        this.alertBatchingMaxDelayInMs = alertBatchingMaxDelayInMs;
+    }
+
+    @Override
+    public int getAlertBatchingMaxSize() {
+        return alertBatchingMaxSize;
+    }
+
+    public void setAlertBatchingMaxSize(final int alertBatchingMaxSize) {
+        this.alertBatchingMaxSize = alertBatchingMaxSize;
+    }
+
+    @Override
+    public boolean getUseProbePiggybacking() {
+        return useProbePiggybacking;
+    }
+
+    public void setUseProbePiggybacking(final boolean useProbePiggybacking) {
+        this.useProbePiggybacking = useProbePiggybacking;
+    }
+
+    @Override
+    public int getMaxPiggybackedAlertsPerProbe() {
+        return maxPiggybackedAlertsPerProbe;
+    }
+
+    public void setMaxPiggybackedAlertsPerProbe(final int maxPiggybackedAlertsPerProbe) {
+        this.maxPiggybackedAlertsPerProbe = maxPiggybackedAlertsPerProbe;
+    }
+
+    @Override
+    public int getPiggybackRetransmitMultiplier() {
+        return piggybackRetransmitMultiplier;
+    }
+
+    public void setPiggybackRetransmitMultiplier(final int piggybackRetransmitMultiplier) {
+        this.piggybackRetransmitMultiplier = piggybackRetransmitMultiplier;
+    }
+
+    /*
+     * Settings from MembershipView.ISettings
+     */
+    @Override
+    public boolean getUseSortedArrayRings() {
+        return useSortedArrayRings;
+    }
+
+    public void setUseSortedArrayRings(final boolean useSortedArrayRings) {
+        this.useSortedArrayRings = useSortedArrayRings;
+    }
+
+    /*
+     * Settings from ICutDetector.ISettings
+     */
+    @Override
+    public boolean getUseDenseCutDetector() {
+        return useDenseCutDetector;
+    }
+
+    public void setUseDenseCutDetector(final boolean useDenseCutDetector) {
+        this.useDenseCutDetector = useDenseCutDetector;
+    }
+
+    /*
+     * Settings from FastPaxos.ISettings
+     */
+    @Override
+    public boolean getUseCompactConsensusMessages() {
+        return useCompactConsensusMessages;
+    }
+
+    public void setUseCompactConsensusMessages(final boolean useCompactConsensusMessages) {
+        this.useCompactConsensusMessages = useCompactConsensusMessages;
+    }
+
+    /*
+     * Settings from GossipBroadcaster.ISettings
+     */
+    @Override
+    public boolean getUseGossipBroadcaster() {
+        return useGossipBroadcaster;
+    }
+
+    public void setUseGossipBroadcaster(final boolean useGossipBroadcaster) {
+        this.useGossipBroadcaster = useGossipBroadcaster;
+    }
+
+    @Override
+    public int getGossipFanout() {
+        return gossipFanout;
+    }
+
+    public void setGossipFanout(final int gossipFanout) {
+        this.gossipFanout = gossipFanout;
+    }
+
+    @Override
+    public int getGossipRedundancy() {
+        return gossipRedundancy;
+    }
+
+    public void setGossipRedundancy(final int gossipRedundancy) {
+        this.gossipRedundancy = gossipRedundancy;
+    }
+
+    /*
+     * Settings from SharedResources.ISettings
+     */
+    @Override
+    public int getServerExecutorThreads() {
+        return serverExecutorThreads;
+    }
+
+    public void setServerExecutorThreads(final int serverExecutorThreads) {
+        this.serverExecutorThreads = serverExecutorThreads;
+    }
+
+    @Override
+    public int getClientExecutorThreads() {
+        return clientExecutorThreads;
+    }
+
+    public void setClientExecutorThreads(final int clientExecutorThreads) {
+        this.clientExecutorThreads = clientExecutorThreads;
+    }
+
+    @Override
+    public int getBackgroundExecutorThreads() {
+        return backgroundExecutorThreads;
+    }
+
+    public void setBackgroundExecutorThreads(final int backgroundExecutorThreads) {
+        this.backgroundExecutorThreads = backgroundExecutorThreads;
+    }
+
+    @Override
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    public void setEventLoopThreads(final int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    @Override
+    public int getFailureDetectorThreads() {
+        return failureDetectorThreads;
+    }
+
+    public void setFailureDetectorThreads(final int failureDetectorThreads) {
+        this.failureDetectorThreads = failureDetectorThreads;
+    }
+
+    @Override
+    public boolean getUseEpollTransport() {
+        return useEpollTransport;
+    }
+
+    public void setUseEpollTransport(final boolean useEpollTransport) {
+        this.useEpollTransport = useEpollTransport;
+    }
+
+    @Override
+    public int getSocketBufferSize() {
+        return socketBufferSize;
+    }
+
+    public void setSocketBufferSize(final int socketBufferSize) {
+        this.socketBufferSize = socketBufferSize;
+    }
+
+    @Override
+    public boolean getUseRequestPriorities() {
+        return useRequestPriorities;
+    }
+
+    public void setUseRequestPriorities(final boolean useRequestPriorities) {
+        this.useRequestPriorities = useRequestPriorities;
+    }
+
+    @Override
+    public int getLowPriorityQueueCapacity() {
+        return lowPriorityQueueCapacity;
+    }
+
+    public void setLowPriorityQueueCapacity(final int lowPriorityQueueCapacity) {
+        this.lowPriorityQueueCapacity = lowPriorityQueueCapacity;
+    }
+
+    @Override
+    public SharedResources.LoadSheddingPolicy getLoadSheddingPolicy() {
+        return loadSheddingPolicy;
+    }
+
+    public void setLoadSheddingPolicy(final SharedResources.LoadSheddingPolicy loadSheddingPolicy) {
+        this.loadSheddingPolicy = loadSheddingPolicy;
+    }
+
+    /*
+     * Settings from CoalescingMessagingClient.ISettings
+     */
+    @Override
+    public boolean getUseMessageCoalescing() {
+        return useMessageCoalescing;
+    }
+
+    public void setUseMessageCoalescing(final boolean useMessageCoalescing) {
+        this.useMessageCoalescing = useMessageCoalescing;
+    }
+
+    @Override
+    public int getMessageCoalescingWindowInMs() {
+        return messageCoalescingWindowInMs;
+    }
+
+    public void setMessageCoalescingWindowInMs(final int messageCoalescingWindowInMs) {
+        this.messageCoalescingWindowInMs = messageCoalescingWindowInMs;
+    }
+
+    @Override
+    public int getMessageCoalescingMaxBatchSize() {
+        return messageCoalescingMaxBatchSize;
+    }
+
+    public void setMessageCoalescingMaxBatchSize(final int messageCoalescingMaxBatchSize) {
+        this.messageCoalescingMaxBatchSize = messageCoalescingMaxBatchSize;
+    }
+
+    /*
+     * Settings from PhiAccrualFailureDetector.ISettings
+     */
+    @Override
+    public boolean getUsePhiAccrualFailureDetector() {
+        return usePhiAccrualFailureDetector;
+    }
+
+    public void setUsePhiAccrualFailureDetector(final boolean usePhiAccrualFailureDetector) {
+        this.usePhiAccrualFailureDetector = usePhiAccrualFailureDetector;
+    }
+
+    @Override
+    public double getPhiThreshold() {
+        return phiThreshold;
+    }
+
+    public void setPhiThreshold(final double phiThreshold) {
+        this.phiThreshold = phiThreshold;
+    }
+
+    @Override
+    public int getPhiWindowSize() {
+        return phiWindowSize;
+    }
+
+    public void setPhiWindowSize(final int phiWindowSize) {
+        this.phiWindowSize = phiWindowSize;
+    }
+
+    @Override
+    public int getPhiMinStdDeviationMs() {
+        return phiMinStdDeviationMs;
+    }
+
+    public void setPhiMinStdDeviationMs(final int phiMinStdDeviationMs) {
+        this.phiMinStdDeviationMs = phiMinStdDeviationMs;
+    }
+
+    @Override
+    public int getPhiAcceptableHeartbeatPauseMs() {
+        return phiAcceptableHeartbeatPauseMs;
+    }
+
+    public void setPhiAcceptableHeartbeatPauseMs(final int phiAcceptableHeartbeatPauseMs) {
+        this.phiAcceptableHeartbeatPauseMs = phiAcceptableHeartbeatPauseMs;
+    }
+
+    /*
+     * Settings from IndirectProbingFailureDetector.ISettings
+     */
+    @Override
+    public boolean getUseIndirectProbingFailureDetector() {
+        return useIndirectProbingFailureDetector;
+    }
+
+    public void setUseIndirectProbingFailureDetector(final boolean useIndirectProbingFailureDetector) {
+        this.useIndirectProbingFailureDetector = useIndirectProbingFailureDetector;
+    }
+
+    @Override
+    public int getIndirectProbeRelays() {
+        return indirectProbeRelays;
+    }
+
+    public void setIndirectProbeRelays(final int indirectProbeRelays) {
+        this.indirectProbeRelays = indirectProbeRelays;
+    }
+
+    /*
+     * Settings from PassiveFailureDetector.ISettings
+     */
+    @Override
+    public boolean getUsePassiveFailureDetection() {
+        return usePassiveFailureDetection;
+    }
+
+    public void setUsePassiveFailureDetection(final boolean usePassiveFailureDetection) {
+        this.usePassiveFailureDetection = usePassiveFailureDetection;
+    }
 }
@@ -15,8 +15,19 @@ package com.vrg.rapid;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.RapidRequest;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,26 +44,65 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Holds all executors and ELGs that are shared across a single instance of Rapid.
+ *
+ * Work is split into lanes with their own threads: the messaging lane (the ELG, the server and client executors,
+ * and the background executor used for retries), the failure detection lane that runs the edge failure detectors,
+ * and the protocol lane. The sizes of the messaging and failure detection lanes are configurable. The protocol
+ * executor, and the scheduled executor for the timers of MembershipService and the consensus instances, always
+ * have a single thread, because MembershipService relies on a single writer for its state.
+ *
+ * Requests from other nodes can optionally be run on the protocol executor in priority order, with
+ * a bounded queue for low-priority requests that sheds joins when saturated (see PrioritizedExecutor).
  */
 public class SharedResources {
     private static final Logger LOG = LoggerFactory.getLogger(SharedResources.class);
-    private static final int DEFAULT_THREADS = 1;
+    static final int DEFAULT_THREADS = 1;
+    static final boolean DEFAULT_USE_EPOLL_TRANSPORT = false;
+    static final int DEFAULT_SOCKET_BUFFER_SIZE = 4096;
+    static final boolean DEFAULT_USE_REQUEST_PRIORITIES = false;
+    static final int DEFAULT_LOW_PRIORITY_QUEUE_CAPACITY = 256;
+    static final LoadSheddingPolicy DEFAULT_LOAD_SHEDDING_POLICY = LoadSheddingPolicy.SHED_BY_PRIORITY;
+    private static final long TIMER_TICK_IN_MS = 100;
     @Nullable private EventLoopGroup eventLoopGroup = null;
+    @Nullable private Timer timer = null;
     private final ExecutorService backgroundExecutor;
     private final ExecutorService serverExecutor;
     private final ExecutorService clientChannelExecutor;
     private final ExecutorService protocolExecutor;
+    @Nullable private final PrioritizedExecutor requestExecutor;
     private final ScheduledExecutorService scheduledTasksExecutor;
+    private final ScheduledExecutorService failureDetectorExecutor;
     private final Endpoint address;
+    private final int eventLoopThreads;
+    private final boolean useEpoll;
+    private final int socketBufferSize;
 
     public SharedResources(final Endpoint address) {
+        this(address, new Settings());
+    }
+
+    public SharedResources(final Endpoint address, final ISettings settings) {
         this.address = address;
-        this.serverExecutor = newNamedThreadPool(DEFAULT_THREADS, "server-exec", address);
-        this.clientChannelExecutor = newNamedThreadPool(DEFAULT_THREADS, "client-exec", address);
-        this.backgroundExecutor = newNamedThreadPool(DEFAULT_THREADS, "bg", address);
+        this.eventLoopThreads = settings.getEventLoopThreads();
+        this.socketBufferSize = settings.getSocketBufferSize();
+        if (settings.getUseEpollTransport() && !Epoll.isAvailable()) {
+            LOG.warn("Epoll transport is unavailable, falling back to NIO", Epoll.unavailabilityCause());
+        }
+        this.useEpoll = settings.getUseEpollTransport() && Epoll.isAvailable();
+        this.serverExecutor = newNamedThreadPool(settings.getServerExecutorThreads(), "server-exec", address);
+        this.clientChannelExecutor = newNamedThreadPool(settings.getClientExecutorThreads(), "client-exec", address);
+        this.backgroundExecutor = newNamedThreadPool(settings.getBackgroundExecutorThreads(), "bg", address);
         this.protocolExecutor = Executors.newSingleThreadExecutor(newNamedThreadFactory("protocol", address));
+        if (settings.getUseRequestPriorities()) {
+            this.requestExecutor = new PrioritizedExecutor(protocolExecutor, settings.getLoadSheddingPolicy(),
+                                                           settings.getLowPriorityQueueCapacity());
+        } else {
+            this.requestExecutor = null;
+        }
         this.scheduledTasksExecutor = Executors.newSingleThreadScheduledExecutor(
                                                     newNamedThreadFactory("msbg", address));
+        this.failureDetectorExecutor = Executors.newScheduledThreadPool(settings.getFailureDetectorThreads(),
+                                                    newNamedThreadFactory("fd", address));
     }
 
     /**
@@ -61,11 +111,46 @@ public class SharedResources {
     public synchronized EventLoopGroup getEventLoopGroup() {
         // Lazily initialized because this is not required for tests that use InProcessChannel/Server.
         if (eventLoopGroup == null) {
-            eventLoopGroup = new NioEventLoopGroup(DEFAULT_THREADS, newFastLocalThreadFactory("elg", address));
+            eventLoopGroup = useEpoll
+                    ? new EpollEventLoopGroup(eventLoopThreads, newFastLocalThreadFactory("elg", address))
+                    : new NioEventLoopGroup(eventLoopThreads, newFastLocalThreadFactory("elg", address));
         }
         return eventLoopGroup;
     }
 
+    /**
+     * The channel type for clients of the ELG
+     */
+    public Class<? extends SocketChannel> getClientChannelType() {
+        return useEpoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * The channel type for servers using the ELG
+     */
+    public Class<? extends ServerSocketChannel> getServerChannelType() {
+        return useEpoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * The SO_SNDBUF and SO_RCVBUF sizes for channels of the ELG
+     */
+    public int getSocketBufferSize() {
+        return socketBufferSize;
+    }
+
+    /**
+     * A hashed wheel timer for per-request deadlines in NettyClientServer
+     */
+    public synchronized Timer getTimer() {
+        // Lazily initialized because this is only required by the Netty transport.
+        if (timer == null) {
+            timer = new HashedWheelTimer(newNamedThreadFactory("timer", address), TIMER_TICK_IN_MS,
+                                         TimeUnit.MILLISECONDS);
+        }
+        return timer;
+    }
+
     /**
      * Used by background tasks like retries in GrpcClient
      */
@@ -94,6 +179,28 @@ public class SharedResources {
         return protocolExecutor;
     }
 
+    /**
+     * Executes the handler of a request from another node on the protocol executor.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if request priorities are enabled and the request
+     *                                                         is shed
+     */
+    void executeRequest(final RapidRequest.ContentCase contentCase, final Runnable handler) {
+        if (requestExecutor == null) {
+            protocolExecutor.execute(handler);
+        } else {
+            requestExecutor.execute(PrioritizedExecutor.Priority.of(contentCase), handler);
+        }
+    }
+
+    /**
+     * @return the number of requests from other nodes that have run in priority order, which is zero unless
+     *         request priorities are enabled
+     */
+    long getPrioritizedRequestCount() {
+        return requestExecutor == null ? 0 : requestExecutor.getCompletedRequestCount();
+    }
+
     /**
      * Executes periodic background tasks in MembershipService.
      */
@@ -101,6 +208,14 @@ public class SharedResources {
         return scheduledTasksExecutor;
     }
 
+    /**
+     * Executes the edge failure detectors scheduled by MembershipService. Failure notifications are handed
+     * over to the protocol executor.
+     */
+    public ScheduledExecutorService getFailureDetectorExecutor() {
+        return failureDetectorExecutor;
+    }
+
     /**
      * Shuts down resources.
      */
@@ -109,6 +224,10 @@ public class SharedResources {
         protocolExecutor.shutdownNow();
         clientChannelExecutor.shutdownNow();
         backgroundExecutor.shutdownNow();
+        failureDetectorExecutor.shutdownNow();
+        if (timer != null) {
+            timer.stop();
+        }
         if (eventLoopGroup != null) {
             eventLoopGroup.shutdownGracefully().awaitUninterruptibly(0, TimeUnit.SECONDS);
         }
@@ -155,4 +274,36 @@ public class SharedResources {
             r.run();
         }
     }
+
+    public interface ISettings {
+        int getServerExecutorThreads();
+
+        int getClientExecutorThreads();
+
+        int getBackgroundExecutorThreads();
+
+        int getEventLoopThreads();
+
+        int getFailureDetectorThreads();
+
+        boolean getUseEpollTransport();
+
+        int getSocketBufferSize();
+
+        boolean getUseRequestPriorities();
+
+        int getLowPriorityQueueCapacity();
+
+        LoadSheddingPolicy getLoadSheddingPolicy();
+    }
+
+    /**
+     * How low-priority requests are shed when request priorities are enabled. Other requests are never shed.
+     */
+    public enum LoadSheddingPolicy {
+        // A join is shed when the queue of low-priority requests is full
+        SHED_BY_CLASS,
+        // A join is shed when the requests queued at all priorities fill the low-priority capacity
+        SHED_BY_PRIORITY
+    }
 }
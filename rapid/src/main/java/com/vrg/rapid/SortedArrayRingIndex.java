@@ -0,0 +1,261 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.collect.ImmutableList;
+import com.vrg.rapid.pb.Endpoint;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hosts each of the K rings as a sorted array of precomputed hashes, with a parallel array of indices
+ * into a dense table of endpoints. Successor and predecessor lookups are binary searches over primitive
+ * arrays, and membership checks are a single hash table lookup instead of a tree walk per ring.
+ *
+ * Endpoints are ordered by the same seeded hashes as Utils.AddressComparator, so the rings are identical
+ * to those of a TreeSetRingIndex. The only difference is that the (astronomically unlikely) hash collisions
+ * between two endpoints on a ring are ordered by hostname and port instead of being treated as duplicates.
+ */
+@NotThreadSafe
+final class SortedArrayRingIndex implements IRingIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    private final int K;
+    private final Utils.AddressComparator[] hashers;
+
+    // Dense endpoint table. Slots of removed endpoints are recycled through freeSlots.
+    private final Map<Endpoint, Integer> slotOf = new HashMap<>();
+    private Endpoint[] endpoints = new Endpoint[INITIAL_CAPACITY];
+    private long[] slotHashes;                    // slotHashes[slot * K + k] is the hash of a slot on ring k
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int numFreeSlots = 0;
+    private int numSlots = 0;
+
+    // Ring k is sorted by ringHashes[k], and ringSlots[k] holds the corresponding slots.
+    private final long[][] ringHashes;
+    private final int[][] ringSlots;
+    private int size = 0;
+
+    SortedArrayRingIndex(final int K) {
+        assert K > 0;
+        this.K = K;
+        this.hashers = new Utils.AddressComparator[K];
+        this.ringHashes = new long[K][INITIAL_CAPACITY];
+        this.ringSlots = new int[K][INITIAL_CAPACITY];
+        this.slotHashes = new long[INITIAL_CAPACITY * K];
+        for (int k = 0; k < K; k++) {
+            hashers[k] = Utils.AddressComparator.getComparatorWithSeed(k);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(final Endpoint node) {
+        return slotOf.containsKey(node);
+    }
+
+    @Override
+    public void add(final Endpoint node) {
+        assert !slotOf.containsKey(node);
+        final int slot = allocateSlot(node);
+        ensureRingCapacity(size + 1);
+        for (int k = 0; k < K; k++) {
+            final long hash = slotHashes[slot * K + k];
+            final int position = positionOf(k, hash, node);
+            System.arraycopy(ringHashes[k], position, ringHashes[k], position + 1, size - position);
+            System.arraycopy(ringSlots[k], position, ringSlots[k], position + 1, size - position);
+            ringHashes[k][position] = hash;
+            ringSlots[k][position] = slot;
+        }
+        size++;
+    }
+
+    /**
+     * Sorts the new nodes once per ring and merges them into the existing rings in a single
+     * pass, rather than shifting the ring arrays once per added node.
+     */
+    @Override
+    public void addAll(final Collection<Endpoint> nodes) {
+        final Integer[] newSlots = new Integer[nodes.size()];
+        int numNew = 0;
+        for (final Endpoint node: nodes) {
+            if (!slotOf.containsKey(node)) {
+                newSlots[numNew++] = allocateSlot(node);
+            }
+        }
+        if (numNew == 0) {
+            return;
+        }
+        ensureRingCapacity(size + numNew);
+        for (int k = 0; k < K; k++) {
+            final int ring = k;
+            Arrays.sort(newSlots, 0, numNew, (s1, s2) -> compareSlots(ring, s1, s2));
+            final long[] hashes = ringHashes[k];
+            final int[] slots = ringSlots[k];
+
+            // Merge from the back so that the existing entries can be shifted in place.
+            int existing = size - 1;
+            int added = numNew - 1;
+            int write = size + numNew - 1;
+            while (added >= 0) {
+                final int newSlot = newSlots[added];
+                if (existing >= 0 && compareSlots(k, slots[existing], newSlot) > 0) {
+                    hashes[write] = hashes[existing];
+                    slots[write] = slots[existing];
+                    existing--;
+                }
+                else {
+                    hashes[write] = slotHashes[newSlot * K + k];
+                    slots[write] = newSlot;
+                    added--;
+                }
+                write--;
+            }
+        }
+        size += numNew;
+    }
+
+    @Override
+    public void remove(final Endpoint node) {
+        final Integer slot = slotOf.remove(node);
+        assert slot != null;
+        for (int k = 0; k < K; k++) {
+            final int position = positionOf(k, slotHashes[slot * K + k], node);
+            assert ringSlots[k][position] == slot;
+            System.arraycopy(ringHashes[k], position + 1, ringHashes[k], position, size - position - 1);
+            System.arraycopy(ringSlots[k], position + 1, ringSlots[k], position, size - position - 1);
+        }
+        size--;
+        endpoints[slot] = null;
+        freeSlots[numFreeSlots++] = slot;
+    }
+
+    @Override
+    public List<Endpoint> getSuccessorsOf(final Endpoint node) {
+        final Integer slot = slotOf.get(node);
+        assert slot != null;
+        final List<Endpoint> successors = new ArrayList<>(K);
+        for (int k = 0; k < K; k++) {
+            final int position = positionOf(k, slotHashes[slot * K + k], node);
+            final int successor = position + 1 == size ? 0 : position + 1;
+            successors.add(endpoints[ringSlots[k][successor]]);
+        }
+        return successors;
+    }
+
+    @Override
+    public List<Endpoint> getPredecessorsOf(final Endpoint node) {
+        assert size > 0;
+        final Integer slot = slotOf.get(node);
+        final List<Endpoint> predecessors = new ArrayList<>(K);
+        for (int k = 0; k < K; k++) {
+            final long hash = slot != null ? slotHashes[slot * K + k] : hashers[k].computeHash(node);
+            final int position = positionOf(k, hash, node);
+            final int predecessor = position == 0 ? size - 1 : position - 1;
+            predecessors.add(endpoints[ringSlots[k][predecessor]]);
+        }
+        return predecessors;
+    }
+
+    @Override
+    public List<Endpoint> getRing(final int k) {
+        final ImmutableList.Builder<Endpoint> builder = ImmutableList.builder();
+        final int[] slots = ringSlots[k];
+        for (int i = 0; i < size; i++) {
+            builder.add(endpoints[slots[i]]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of entries in ring k that order strictly before {@code node}, whose hash on ring k
+     * is {@code hash}. If {@code node} is present, this is its position in ring k.
+     */
+    private int positionOf(final int k, final long hash, final Endpoint node) {
+        final long[] hashes = ringHashes[k];
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (hashes[mid] < hash) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        while (low < size && hashes[low] == hash && compareEndpoints(endpoints[ringSlots[k][low]], node) < 0) {
+            low++;
+        }
+        return low;
+    }
+
+    private int compareSlots(final int k, final int slot1, final int slot2) {
+        final int comparison = Long.compare(slotHashes[slot1 * K + k], slotHashes[slot2 * K + k]);
+        return comparison != 0 ? comparison : compareEndpoints(endpoints[slot1], endpoints[slot2]);
+    }
+
+    /**
+     * Tie-breaker for endpoints with colliding hashes.
+     */
+    private static int compareEndpoints(final Endpoint e1, final Endpoint e2) {
+        final int comparison = e1.getHostname().compareTo(e2.getHostname());
+        return comparison != 0 ? comparison : Integer.compare(e1.getPort(), e2.getPort());
+    }
+
+    /**
+     * Assigns a slot in the endpoint table to {@code node} and precomputes its hashes on all K rings.
+     */
+    private int allocateSlot(final Endpoint node) {
+        final int slot;
+        if (numFreeSlots > 0) {
+            slot = freeSlots[--numFreeSlots];
+        }
+        else {
+            slot = numSlots++;
+            if (slot == endpoints.length) {
+                final int capacity = endpoints.length * 2;
+                endpoints = Arrays.copyOf(endpoints, capacity);
+                slotHashes = Arrays.copyOf(slotHashes, capacity * K);
+                freeSlots = Arrays.copyOf(freeSlots, capacity);
+            }
+        }
+        endpoints[slot] = node;
+        for (int k = 0; k < K; k++) {
+            slotHashes[slot * K + k] = hashers[k].computeHash(node);
+        }
+        slotOf.put(node, slot);
+        return slot;
+    }
+
+    private void ensureRingCapacity(final int capacity) {
+        if (capacity <= ringHashes[0].length) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, ringHashes[0].length * 2);
+        for (int k = 0; k < K; k++) {
+            ringHashes[k] = Arrays.copyOf(ringHashes[k], newCapacity);
+            ringSlots[k] = Arrays.copyOf(ringSlots[k], newCapacity);
+        }
+    }
+}
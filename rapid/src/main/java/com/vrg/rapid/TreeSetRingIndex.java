@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.collect.ImmutableList;
+import com.vrg.rapid.pb.Endpoint;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Hosts each of the K rings in a TreeSet ordered by a seeded Utils.AddressComparator.
+ */
+@NotThreadSafe
+final class TreeSetRingIndex implements IRingIndex {
+    private final int K;
+    private final ArrayList<Utils.AddressComparator> addressComparators;
+    private final ArrayList<NavigableSet<Endpoint>> rings;
+
+    TreeSetRingIndex(final int K) {
+        assert K > 0;
+        this.K = K;
+        this.rings = new ArrayList<>(K);
+        this.addressComparators = new ArrayList<>(K);
+        for (int k = 0; k < K; k++) {
+            final Utils.AddressComparator comparatorWithSeed = Utils.AddressComparator.getComparatorWithSeed(k);
+            this.addressComparators.add(comparatorWithSeed);
+            this.rings.add(new TreeSet<>(comparatorWithSeed));
+        }
+    }
+
+    @Override
+    public int size() {
+        return rings.get(0).size();
+    }
+
+    @Override
+    public boolean contains(final Endpoint node) {
+        return rings.get(0).contains(node);
+    }
+
+    @Override
+    public void add(final Endpoint node) {
+        for (int k = 0; k < K; k++) {
+            rings.get(k).add(node);
+        }
+    }
+
+    @Override
+    public void addAll(final Collection<Endpoint> nodes) {
+        for (int k = 0; k < K; k++) {
+            rings.get(k).addAll(nodes);
+        }
+    }
+
+    @Override
+    public void remove(final Endpoint node) {
+        for (int k = 0; k < K; k++) {
+            rings.get(k).remove(node);
+            addressComparators.get(k).removeEndpoint(node);
+        }
+    }
+
+    @Override
+    public List<Endpoint> getSuccessorsOf(final Endpoint node) {
+        final List<Endpoint> successors = new ArrayList<>(K);
+        for (int k = 0; k < K; k++) {
+            final NavigableSet<Endpoint> list = rings.get(k);
+            final Endpoint successor = list.higher(node);
+            if (successor == null) {
+                successors.add(list.first());
+            }
+            else {
+                successors.add(successor);
+            }
+        }
+        return successors;
+    }
+
+    @Override
+    public List<Endpoint> getPredecessorsOf(final Endpoint node) {
+        final List<Endpoint> predecessors = new ArrayList<>(K);
+        for (int k = 0; k < K; k++) {
+            final NavigableSet<Endpoint> list = rings.get(k);
+            final Endpoint predecessor = list.lower(node);
+            if (predecessor == null) {
+                predecessors.add(list.last());
+            }
+            else {
+                predecessors.add(predecessor);
+            }
+        }
+        return predecessors;
+    }
+
+    @Override
+    public List<Endpoint> getRing(final int k) {
+        return ImmutableList.copyOf(rings.get(k));
+    }
+}
@@ -7,6 +7,8 @@ import com.vrg.rapid.pb.BatchedAlertMessage;
 import com.vrg.rapid.pb.ConsensusResponse;
 import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.pb.FastRoundPhase2bMessage;
+import com.vrg.rapid.pb.GossipMessage;
+import com.vrg.rapid.pb.GossipResponse;
 import com.vrg.rapid.pb.JoinMessage;
 import com.vrg.rapid.pb.JoinResponse;
 import com.vrg.rapid.pb.NodeId;
@@ -27,6 +29,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility methods to convert protobuf types
@@ -170,6 +173,10 @@ final class Utils {
         return RapidRequest.newBuilder().setPhase2BMessage(msg).build();
     }
 
+    static RapidRequest toRapidRequest(final GossipMessage msg) {
+        return RapidRequest.newBuilder().setGossipMessage(msg).build();
+    }
+
     static RapidResponse toRapidResponse(final JoinResponse msg) {
         return RapidResponse.newBuilder().setJoinResponse(msg).build();
     }
@@ -182,9 +189,14 @@ final class Utils {
         return RapidResponse.newBuilder().setProbeResponse(msg).build();
     }
 
+    static RapidResponse toRapidResponse(final GossipResponse msg) {
+        return RapidResponse.newBuilder().setGossipResponse(msg).build();
+    }
+
 
     /**
-     * Used to order endpoints in the different rings.
+     * Used to order endpoints in the different rings. Instances are shared by all the nodes in a process, so the
+     * hash cache is accessed concurrently.
      */
     static final class AddressComparator implements Comparator<Endpoint>, Serializable {
         private static final long serialVersionUID = -4891729390L;
@@ -194,7 +206,7 @@ final class Utils {
 
         AddressComparator(final int seed) {
             this.hashFunction = LongHashFunction.xx(seed);
-            this.hashCache = new HashMap<>();
+            this.hashCache = new ConcurrentHashMap<>();
         }
 
         @Override
@@ -208,7 +220,7 @@ final class Utils {
             return INSTANCES.computeIfAbsent(seed, AddressComparator::new);
         }
 
-        private long computeHash(final Endpoint endpoint) {
+        long computeHash(final Endpoint endpoint) {
             return hashFunction.hashChars(endpoint.getHostname()) * 31 + hashFunction.hashInt(endpoint.getPort());
         }
 
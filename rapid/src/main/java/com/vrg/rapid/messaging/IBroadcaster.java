@@ -15,6 +15,7 @@ package com.vrg.rapid.messaging;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.GossipMessage;
 import com.vrg.rapid.pb.RapidRequest;
 import com.vrg.rapid.pb.RapidResponse;
 
@@ -27,4 +28,22 @@ public interface IBroadcaster {
     List<ListenableFuture<RapidResponse>> broadcast(RapidRequest rapidRequest);
 
     void setMembership(List<Endpoint> recipients);
+
+    /**
+     * Invoked when a GossipMessage is received, to let broadcasters that relay messages forward it.
+     *
+     * @return true if the message was relayed, false if the sender has to send it on in place of this node.
+     */
+    default boolean relay(final GossipMessage gossipMessage) {
+        return false;
+    }
+
+    /**
+     * Invoked when a GossipMessage is received, to discard copies of a message that were received before.
+     *
+     * @return true if the payload of the message should be delivered, false if it is a duplicate.
+     */
+    default boolean deliver(final GossipMessage gossipMessage) {
+        return true;
+    }
 }
\ No newline at end of file
@@ -6,6 +6,8 @@ import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.pb.RapidRequest;
 import com.vrg.rapid.pb.RapidResponse;
 
+import javax.annotation.Nullable;
+
 /**
  * Represents the sending part of the messaging API
  */
@@ -30,6 +32,28 @@ public interface IMessagingClient {
     @CanIgnoreReturnValue
     ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg);
 
+    /**
+     * Returns the round-trip time estimates the client keeps for the peers it sends messages to, which for
+     * instance failure detectors can use to adapt to each peer.
+     *
+     * @return the estimates, or null if the client does not measure round-trip times
+     */
+    @Nullable
+    default RttEstimator getRttEstimator() {
+        return null;
+    }
+
+    /**
+     * Returns the times of the last successful responses from the peers the client sends messages to, which for
+     * instance failure detectors can use to avoid probing peers that were recently heard from.
+     *
+     * @return the activity, or null if the client does not track responses
+     */
+    @Nullable
+    default PeerActivity getPeerActivity() {
+        return null;
+    }
+
     /**
      * Signals to the messaging client that it should cleanup all resources in use.
      */
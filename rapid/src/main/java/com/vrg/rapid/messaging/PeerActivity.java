@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid.messaging;
+
+import com.vrg.rapid.pb.Endpoint;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the time of the last successful response from each peer, so that components such as failure detectors
+ * can tell whether a peer has recently been heard from without contacting it.
+ */
+@ThreadSafe
+public final class PeerActivity {
+    private final ConcurrentHashMap<Endpoint, Long> lastResponseNanos = new ConcurrentHashMap<>();
+
+    /**
+     * Records a successful response from a peer.
+     */
+    public void recordResponse(final Endpoint peer) {
+        lastResponseNanos.put(peer, System.nanoTime());
+    }
+
+    /**
+     * Forgets a peer, for instance once it has left the membership.
+     */
+    public void remove(final Endpoint peer) {
+        lastResponseNanos.remove(peer);
+    }
+
+    /**
+     * @return whether a successful response from a peer was recorded within the given duration
+     */
+    public boolean hasRespondedWithin(final Endpoint peer, final long duration, final TimeUnit unit) {
+        final Long last = lastResponseNanos.get(peer);
+        return last != null && System.nanoTime() - last < unit.toNanos(duration);
+    }
+}
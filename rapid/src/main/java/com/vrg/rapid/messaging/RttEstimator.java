@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid.messaging;
+
+import com.vrg.rapid.pb.Endpoint;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a smoothed round-trip time and round-trip time variation for each peer, and derives retransmission
+ * timeouts from them the way TCP does (RFC 6298): the timeout is the smoothed RTT plus four times its
+ * variation, and is doubled after every consecutive timeout until the next sample arrives.
+ */
+@ThreadSafe
+public final class RttEstimator {
+    private static final int MAX_BACKOFF_SHIFT = 6;
+    private final ConcurrentHashMap<Endpoint, PeerEstimate> estimates = new ConcurrentHashMap<>();
+
+    /**
+     * Records the round-trip time of a request to a peer that was answered.
+     */
+    public void recordSample(final Endpoint peer, final long rtt, final TimeUnit unit) {
+        // A zero smoothed RTT marks an estimate without samples
+        estimates.computeIfAbsent(peer, k -> new PeerEstimate()).addSample(Math.max(1, unit.toNanos(rtt)));
+    }
+
+    /**
+     * Records a request to a peer that timed out, which backs off the timeout for that peer.
+     */
+    public void recordTimeout(final Endpoint peer) {
+        final PeerEstimate estimate = estimates.get(peer);
+        if (estimate != null) {
+            estimate.backOff();
+        }
+    }
+
+    /**
+     * Forgets the estimates for a peer, for instance once it has left the membership.
+     */
+    public void remove(final Endpoint peer) {
+        estimates.remove(peer);
+    }
+
+    /**
+     * @return the smoothed round-trip time to a peer in milliseconds, or -1 if no sample has been recorded
+     */
+    public double getSmoothedRttMs(final Endpoint peer) {
+        final PeerEstimate estimate = estimates.get(peer);
+        if (estimate == null || estimate.getSmoothedRttNanos() == 0) {
+            return -1;
+        }
+        return toMillis(estimate.getSmoothedRttNanos());
+    }
+
+    /**
+     * @return the round-trip time variation to a peer in milliseconds, or -1 if no sample has been recorded
+     */
+    public double getRttVariationMs(final Endpoint peer) {
+        final PeerEstimate estimate = estimates.get(peer);
+        if (estimate == null || estimate.getSmoothedRttNanos() == 0) {
+            return -1;
+        }
+        return toMillis(estimate.getRttVariationNanos());
+    }
+
+    /**
+     * Returns the timeout for a request to a peer, which is {@code maxTimeoutMs} if there is no estimate yet.
+     *
+     * @param minTimeoutMs lower bound on the timeout, which absorbs delays that samples do not reflect
+     * @param maxTimeoutMs upper bound on the timeout
+     */
+    public long getTimeoutMs(final Endpoint peer, final long minTimeoutMs, final long maxTimeoutMs) {
+        final PeerEstimate estimate = estimates.get(peer);
+        final long timeoutNanos = estimate == null ? 0 : estimate.getTimeoutNanos();
+        if (timeoutNanos == 0) {
+            return maxTimeoutMs;
+        }
+        final long timeoutMs = TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+        return Math.max(minTimeoutMs, Math.min(maxTimeoutMs, timeoutMs));
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static final class PeerEstimate {
+        @GuardedBy("this") private long smoothedRttNanos = 0;
+        @GuardedBy("this") private long rttVariationNanos = 0;
+        @GuardedBy("this") private int backoffShift = 0;
+
+        synchronized void addSample(final long rttNanos) {
+            if (smoothedRttNanos == 0) {
+                smoothedRttNanos = rttNanos;
+                rttVariationNanos = rttNanos / 2;
+            } else {
+                // RTTVAR <- 3/4 RTTVAR + 1/4 |SRTT - R|, then SRTT <- 7/8 SRTT + 1/8 R
+                rttVariationNanos += (Math.abs(smoothedRttNanos - rttNanos) - rttVariationNanos) / 4;
+                smoothedRttNanos += (rttNanos - smoothedRttNanos) / 8;
+            }
+            backoffShift = 0;
+        }
+
+        synchronized void backOff() {
+            backoffShift = Math.min(backoffShift + 1, MAX_BACKOFF_SHIFT);
+        }
+
+        synchronized long getSmoothedRttNanos() {
+            return smoothedRttNanos;
+        }
+
+        synchronized long getRttVariationNanos() {
+            return rttVariationNanos;
+        }
+
+        synchronized long getTimeoutNanos() {
+            return (smoothedRttNanos + 4 * rttVariationNanos) << backoffShift;
+        }
+    }
+}
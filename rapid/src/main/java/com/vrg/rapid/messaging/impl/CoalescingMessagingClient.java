@@ -0,0 +1,267 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid.messaging.impl;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.messaging.PeerActivity;
+import com.vrg.rapid.messaging.RttEstimator;
+import com.vrg.rapid.pb.BatchedRequest;
+import com.vrg.rapid.pb.BatchedResponse;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An IMessagingClient that coalesces requests to the same destination into a single BatchedRequest.
+ *
+ * The first request queued for a destination opens a batch, which is sent through the underlying client once
+ * the coalescing window elapses or once it holds the maximum number of requests. Requests sent with retries and
+ * best-effort requests are queued in separate batches, so that a batch is retried only if all of its requests
+ * are. The response to a batch is split back into the responses to the individual requests. The underlying
+ * client is expected to retry and hedge a batch like the strictest request in it, as GrpcClient does.
+ *
+ * Only requests that the receiver answers right away are coalesced. Probes are sent as is, because their
+ * latency is what the failure detectors measure, and so are join requests, whose responses may be held back
+ * by the receiver until a view change completes.
+ */
+public class CoalescingMessagingClient implements IMessagingClient {
+    public static final boolean DEFAULT_USE_MESSAGE_COALESCING = false;
+    public static final int DEFAULT_MESSAGE_COALESCING_WINDOW_IN_MS = 5;
+    public static final int DEFAULT_MESSAGE_COALESCING_MAX_BATCH_SIZE = 64;
+    private static final Set<RapidRequest.ContentCase> COALESCED_MESSAGES = EnumSet.of(
+            RapidRequest.ContentCase.BATCHEDALERTMESSAGE,
+            RapidRequest.ContentCase.FASTROUNDPHASE2BMESSAGE,
+            RapidRequest.ContentCase.PHASE1AMESSAGE,
+            RapidRequest.ContentCase.PHASE1BMESSAGE,
+            RapidRequest.ContentCase.PHASE2AMESSAGE,
+            RapidRequest.ContentCase.PHASE2BMESSAGE,
+            RapidRequest.ContentCase.GOSSIPMESSAGE);
+    private final IMessagingClient client;
+    private final ScheduledExecutorService scheduler;
+    private final int windowInMs;
+    private final int maxBatchSize;
+    private final ConcurrentHashMap<Endpoint, Batch> batches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Endpoint, Batch> bestEffortBatches = new ConcurrentHashMap<>();
+
+    public CoalescingMessagingClient(final IMessagingClient client, final ScheduledExecutorService scheduler,
+                                     final ISettings settings) {
+        this.client = client;
+        this.scheduler = scheduler;
+        this.windowInMs = settings.getMessageCoalescingWindowInMs();
+        this.maxBatchSize = settings.getMessageCoalescingMaxBatchSize();
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
+        if (!COALESCED_MESSAGES.contains(msg.getContentCase())) {
+            return client.sendMessage(remote, msg);
+        }
+        return enqueue(remote, msg, true);
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg) {
+        if (!COALESCED_MESSAGES.contains(msg.getContentCase())) {
+            return client.sendMessageBestEffort(remote, msg);
+        }
+        return enqueue(remote, msg, false);
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    @Nullable
+    public RttEstimator getRttEstimator() {
+        return client.getRttEstimator();
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    @Nullable
+    public PeerActivity getPeerActivity() {
+        return client.getPeerActivity();
+    }
+
+    /**
+     * Sends out all open batches before shutting down the underlying client.
+     */
+    @Override
+    public void shutdown() {
+        batches.forEach(this::flush);
+        bestEffortBatches.forEach(this::flush);
+        client.shutdown();
+    }
+
+    private ListenableFuture<RapidResponse> enqueue(final Endpoint remote, final RapidRequest msg,
+                                                    final boolean withRetries) {
+        final SettableFuture<RapidResponse> future = SettableFuture.create();
+        final ConcurrentHashMap<Endpoint, Batch> openBatches = withRetries ? batches : bestEffortBatches;
+        while (true) {
+            final Batch batch = openBatches.computeIfAbsent(remote, k -> new Batch(withRetries));
+            final int size = batch.add(msg, future);
+            if (size == 1) {
+                batch.setWindowExpiry(scheduler.schedule(() -> flush(remote, batch), windowInMs,
+                                                         TimeUnit.MILLISECONDS));
+            }
+            if (size >= maxBatchSize) {
+                flush(remote, batch);
+            }
+            if (size > 0) {
+                return future;
+            }
+            // The batch was sent out between the lookup and the add, retry with a new one.
+        }
+    }
+
+    private void flush(final Endpoint remote, final Batch batch) {
+        final boolean withRetries = batch.withRetries;
+        (withRetries ? batches : bestEffortBatches).remove(remote, batch);
+        final List<RapidRequest> requests;
+        final List<SettableFuture<RapidResponse>> futures;
+        final ScheduledFuture<?> windowExpiry;
+        synchronized (batch) {
+            if (batch.isClosed) {
+                return;
+            }
+            // The batch does not change once it is closed
+            batch.isClosed = true;
+            requests = batch.requests;
+            futures = batch.futures;
+            windowExpiry = batch.windowExpiry;
+        }
+        if (windowExpiry != null) {
+            windowExpiry.cancel(false);
+        }
+        if (requests.size() == 1) {
+            futures.get(0).setFuture(withRetries ? client.sendMessage(remote, requests.get(0))
+                                                 : client.sendMessageBestEffort(remote, requests.get(0)));
+            return;
+        }
+        final RapidRequest request = RapidRequest.newBuilder()
+                                                 .setBatchedRequest(BatchedRequest.newBuilder()
+                                                                                  .addAllRequests(requests))
+                                                 .build();
+        final ListenableFuture<RapidResponse> response = withRetries
+                                                            ? client.sendMessage(remote, request)
+                                                            : client.sendMessageBestEffort(remote, request);
+        Futures.addCallback(response, new BatchCallback(remote, futures), MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Splits the response to a batch into the responses to its requests.
+     */
+    private static final class BatchCallback implements FutureCallback<RapidResponse> {
+        private final Endpoint remote;
+        private final List<SettableFuture<RapidResponse>> futures;
+
+        BatchCallback(final Endpoint remote, final List<SettableFuture<RapidResponse>> futures) {
+            this.remote = remote;
+            this.futures = futures;
+        }
+
+        @Override
+        public void onSuccess(@Nullable final RapidResponse result) {
+            final BatchedResponse batchedResponse = result != null ? result.getBatchedResponse()
+                                                                   : BatchedResponse.getDefaultInstance();
+            if (batchedResponse.getResponsesCount() != futures.size()) {
+                onFailure(new IllegalStateException("Expected " + futures.size() + " responses from " +
+                                                    remote + " but received " +
+                                                    batchedResponse.getResponsesCount()));
+                return;
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).set(batchedResponse.getResponses(i));
+            }
+        }
+
+        @Override
+        public void onFailure(final Throwable throwable) {
+            futures.forEach(future -> future.setException(throwable));
+        }
+    }
+
+    /**
+     * Requests queued for a single destination.
+     */
+    private static final class Batch {
+        private final boolean withRetries;
+        @GuardedBy("this") private final List<RapidRequest> requests = new ArrayList<>();
+        @GuardedBy("this") private final List<SettableFuture<RapidResponse>> futures = new ArrayList<>();
+        @GuardedBy("this") private boolean isClosed = false;
+        @GuardedBy("this") @Nullable private ScheduledFuture<?> windowExpiry = null;
+
+        Batch(final boolean withRetries) {
+            this.withRetries = withRetries;
+        }
+
+        /**
+         * @return the number of requests in the batch, or 0 if the batch has already been sent out
+         */
+        synchronized int add(final RapidRequest request, final SettableFuture<RapidResponse> future) {
+            if (isClosed) {
+                return 0;
+            }
+            requests.add(request);
+            futures.add(future);
+            return requests.size();
+        }
+
+        /**
+         * Keeps the task that sends out the batch when the window elapses, so that it can be cancelled if the
+         * batch fills up first.
+         */
+        void setWindowExpiry(final ScheduledFuture<?> expiry) {
+            synchronized (this) {
+                if (!isClosed) {
+                    windowExpiry = expiry;
+                    return;
+                }
+            }
+            expiry.cancel(false);
+        }
+    }
+
+    public interface ISettings {
+        boolean getUseMessageCoalescing();
+
+        int getMessageCoalescingWindowInMs();
+
+        int getMessageCoalescingMaxBatchSize();
+    }
+}
@@ -17,32 +17,43 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
 import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.vrg.rapid.Settings;
 import com.vrg.rapid.SharedResources;
 import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.messaging.PeerActivity;
+import com.vrg.rapid.messaging.RttEstimator;
 import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.pb.MembershipServiceGrpc;
 import com.vrg.rapid.pb.MembershipServiceGrpc.MembershipServiceFutureStub;
 import com.vrg.rapid.pb.RapidRequest;
 import com.vrg.rapid.pb.RapidResponse;
 import io.grpc.Channel;
+import io.grpc.Context;
 import io.grpc.ManagedChannel;
+import io.grpc.Status;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.netty.NettyChannelBuilder;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.util.Objects;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 
@@ -51,18 +62,34 @@ import java.util.function.Supplier;
  */
 public class GrpcClient implements IMessagingClient {
     private static final Logger LOG = LoggerFactory.getLogger(GrpcClient.class);
-    private static final int DEFAULT_BUF_SIZE = 4096;
     public static final boolean DEFAULT_GRPC_USE_IN_PROCESS_TRANSPORT = false;
     public static final int DEFAULT_GRPC_TIMEOUT_MS = 1000;
     public static final int DEFAULT_GRPC_DEFAULT_RETRIES = 5;
     public static final int DEFAULT_GRPC_JOIN_TIMEOUT = DEFAULT_GRPC_TIMEOUT_MS * 5;
     public static final int DEFAULT_GRPC_PROBE_TIMEOUT = 1000;
+    public static final boolean DEFAULT_USE_GRPC_STREAMS = false;
+    public static final int DEFAULT_GRPC_KEEP_ALIVE_TIME_MS = 10000;
+    public static final int DEFAULT_GRPC_JOIN_RETRIES = DEFAULT_GRPC_DEFAULT_RETRIES;
+    public static final int DEFAULT_GRPC_CONSENSUS_RETRIES = DEFAULT_GRPC_DEFAULT_RETRIES;
+    public static final int DEFAULT_GRPC_RETRY_BACKOFF_BASE_MS = 50;
+    public static final int DEFAULT_GRPC_RETRY_BACKOFF_MAX_MS = 1000;
+    public static final int DEFAULT_GRPC_HEDGE_DELAY_MS = 0;
+    public static final boolean DEFAULT_USE_ADAPTIVE_GRPC_TIMEOUTS = false;
+    public static final int DEFAULT_GRPC_MIN_TIMEOUT_MS = 100;
 
     private final Endpoint address;
     private final LoadingCache<Endpoint, Channel> channelMap;
+    private final ConcurrentHashMap<Endpoint, GrpcPeerStream> streamMap = new ConcurrentHashMap<>();
+    // Only used for the request deadlines of streams
+    @Nullable private final Timer timer;
+    private final RttEstimator rttEstimator = new RttEstimator();
+    private final PeerActivity peerActivity = new PeerActivity();
     private final ExecutorService grpcExecutor;
     private final ExecutorService backgroundExecutor;
+    private final ScheduledExecutorService retryScheduler;
     @Nullable private final EventLoopGroup eventLoopGroup;
+    private final Class<? extends io.netty.channel.Channel> channelType;
+    private final int socketBufferSize;
     private final AtomicBoolean isShuttingDown = new AtomicBoolean(false);
     private final ISettings settings;
 
@@ -81,9 +108,19 @@ public class GrpcClient implements IMessagingClient {
         this.settings = settings;
         this.grpcExecutor = sharedResources.getClientChannelExecutor();
         this.backgroundExecutor = sharedResources.getBackgroundExecutor();
+        this.retryScheduler = sharedResources.getScheduledTasksExecutor();
         this.eventLoopGroup = settings.getUseInProcessTransport() ? null : sharedResources.getEventLoopGroup();
-        final RemovalListener<Endpoint, Channel> removalListener =
-                removal -> shutdownChannel((ManagedChannel) removal.getValue());
+        this.channelType = sharedResources.getClientChannelType();
+        this.socketBufferSize = sharedResources.getSocketBufferSize();
+        this.timer = settings.getUseGrpcStreams() ? sharedResources.getTimer() : null;
+        final RemovalListener<Endpoint, Channel> removalListener = removal -> {
+            if (removal.getCause() == RemovalCause.EXPIRED) {
+                rttEstimator.remove(removal.getKey());
+                peerActivity.remove(removal.getKey());
+            }
+            closeStream(removal.getKey());
+            shutdownChannel((ManagedChannel) removal.getValue());
+        };
         this.channelMap = CacheBuilder.newBuilder()
                 .expireAfterAccess(30, TimeUnit.SECONDS)
                 .removalListener(removalListener)
@@ -103,15 +140,9 @@ public class GrpcClient implements IMessagingClient {
         Objects.requireNonNull(remote);
         Objects.requireNonNull(msg);
 
-        final Supplier<ListenableFuture<RapidResponse>> call = () -> {
-            final MembershipServiceFutureStub stub = getFutureStub(remote)
-                    .withDeadlineAfter(getTimeoutForMessageMs(msg),
-                            TimeUnit.MILLISECONDS);
-            return stub.sendRequest(msg);
-        };
-        final Runnable onCallFailure = () -> channelMap.invalidate(remote);
-        return Retries.callWithRetries(call, remote, settings.getGrpcDefaultRetries(), onCallFailure,
-                                       backgroundExecutor);
+        final Consumer<Throwable> onCallFailure = throwable -> onCallFailure(remote, throwable);
+        return Retries.callWithRetries(createCall(remote, msg), remote, getRetryPolicy(msg, getRetriesForMessage(msg)),
+                                       onCallFailure, backgroundExecutor, retryScheduler);
     }
 
     /**
@@ -119,23 +150,78 @@ public class GrpcClient implements IMessagingClient {
      */
     @Override
     public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg) {
+        Objects.requireNonNull(remote);
         Objects.requireNonNull(msg);
+
+        // The stub call is asynchronous, so the call is started on the calling thread without blocking it.
+        final Consumer<Throwable> onCallFailure = throwable -> onCallFailure(remote, throwable);
         try {
-            return backgroundExecutor.submit(() -> {
-                final Supplier<ListenableFuture<RapidResponse>> call = () -> {
-                    final MembershipServiceFutureStub stub;
-                    stub = getFutureStub(remote).withDeadlineAfter(getTimeoutForMessageMs(msg), TimeUnit.MILLISECONDS);
-                    return stub.sendRequest(msg);
-                };
-                final Runnable onCallFailure = () -> channelMap.invalidate(remote);
-                return Retries.callWithRetries(call, remote, 0, onCallFailure, backgroundExecutor);
-            }).get();
-        } catch (final InterruptedException | ExecutionException e) {
-            Thread.currentThread().interrupt();
+            return Retries.callWithRetries(createCall(remote, msg), remote, getRetryPolicy(msg, 0), onCallFailure,
+                                           backgroundExecutor, retryScheduler);
+        } catch (final ShuttingDownException e) {
             return Futures.immediateFailedFuture(e);
         }
     }
 
+    private Supplier<ListenableFuture<RapidResponse>> createCall(final Endpoint remote, final RapidRequest msg) {
+        return () -> {
+            // The timeout is recomputed for every attempt, so that retries use the latest estimates.
+            final long timeoutMs = getTimeoutForMessageMs(remote, msg);
+            final long startNanos = System.nanoTime();
+            final ListenableFuture<RapidResponse> call;
+            // Requests are also sent while handling other requests, for instance to relay a broadcast, and
+            // must not inherit the context of the request being handled, which is cancelled once it has
+            // been answered. The same goes for the streams that are opened to send them.
+            final Context previous = Context.ROOT.attach();
+            try {
+                if (settings.getUseGrpcStreams()) {
+                    call = getStream(remote).send(msg, timeoutMs);
+                } else {
+                    call = getFutureStub(remote).withDeadlineAfter(timeoutMs, TimeUnit.MILLISECONDS)
+                                                .sendRequest(msg);
+                }
+            } finally {
+                Context.ROOT.detach(previous);
+            }
+            Futures.addCallback(call, new FutureCallback<RapidResponse>() {
+                @Override
+                public void onSuccess(@Nullable final RapidResponse response) {
+                    // A join is only answered once the configuration changes, and a relayed probe includes the
+                    // probe of its target, so their latencies are not round-trip times.
+                    if (msg.getContentCase() != RapidRequest.ContentCase.JOINMESSAGE && !isRelayedProbe(msg)) {
+                        rttEstimator.recordSample(remote, System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                    }
+                    // Probes are left out, so that the activity reflects the traffic that makes probes redundant
+                    if (msg.getContentCase() != RapidRequest.ContentCase.PROBEMESSAGE) {
+                        peerActivity.recordResponse(remote);
+                    }
+                }
+
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    // Timeouts are recorded by onCallFailure()
+                }
+            }, MoreExecutors.directExecutor());
+            return call;
+        };
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    public RttEstimator getRttEstimator() {
+        return rttEstimator;
+    }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    public PeerActivity getPeerActivity() {
+        return peerActivity;
+    }
+
     /**
      * Recover resources. For future use in case we provide custom grpcExecutor for the ManagedChannels.
      */
@@ -145,6 +231,51 @@ public class GrpcClient implements IMessagingClient {
         channelMap.invalidateAll();
     }
 
+    private void onCallFailure(final Endpoint remote, final Throwable throwable) {
+        // A call that timed out says nothing about the connection, and replacing the channel would only add
+        // reconnection attempts to a peer that is already slow.
+        if (throwable instanceof TimeoutException
+                || Status.fromThrowable(throwable).getCode() == Status.Code.DEADLINE_EXCEEDED) {
+            rttEstimator.recordTimeout(remote);
+            return;
+        }
+        // The remote shed the request under load, over a connection that works
+        if (Status.fromThrowable(throwable).getCode() == Status.Code.RESOURCE_EXHAUSTED) {
+            return;
+        }
+        if (settings.getUseGrpcStreams()) {
+            // A request that timed out does not affect the others on the stream, so the stream and its
+            // channel are only dropped once the stream itself has broken.
+            final GrpcPeerStream stream = streamMap.get(remote);
+            if (stream != null && !stream.isClosed()) {
+                return;
+            }
+        }
+        channelMap.invalidate(remote);
+    }
+
+    /**
+     * Returns the stream to a peer, opening a new one if there is none or the previous one was closed.
+     */
+    private GrpcPeerStream getStream(final Endpoint remote) {
+        if (isShuttingDown.get()) {
+            throw new ShuttingDownException("GrpcClient is shutting down");
+        }
+        // Looking up the channel also keeps it from expiring while the stream is in use.
+        final Channel channel = channelMap.getUnchecked(remote);
+        final Timer streamTimer = Objects.requireNonNull(timer);
+        return streamMap.compute(remote, (endpoint, stream) -> stream == null || stream.isClosed()
+                ? new GrpcPeerStream(channel, streamTimer)
+                : stream);
+    }
+
+    private void closeStream(final Endpoint remote) {
+        final GrpcPeerStream stream = streamMap.remove(remote);
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
     private MembershipServiceFutureStub getFutureStub(final Endpoint remote) {
         if (isShuttingDown.get()) {
             throw new ShuttingDownException("GrpcClient is shutting down");
@@ -170,36 +301,114 @@ public class GrpcClient implements IMessagingClient {
                     .idleTimeout(10, TimeUnit.SECONDS)
                     .build();
         } else {
-            channel = NettyChannelBuilder
+            NettyChannelBuilder builder = NettyChannelBuilder
                     .forAddress(remote.getHostname(), remote.getPort())
                     .executor(grpcExecutor)
                     .eventLoopGroup(eventLoopGroup)
+                    .channelType(channelType)
                     .usePlaintext(true)
                     .idleTimeout(10, TimeUnit.SECONDS)
                     .withOption(ChannelOption.SO_REUSEADDR, true)
-                    .withOption(ChannelOption.SO_SNDBUF, DEFAULT_BUF_SIZE)
-                    .withOption(ChannelOption.SO_RCVBUF, DEFAULT_BUF_SIZE)
-                    .build();
+                    .withOption(ChannelOption.TCP_NODELAY, true)
+                    .withOption(ChannelOption.SO_SNDBUF, socketBufferSize)
+                    .withOption(ChannelOption.SO_RCVBUF, socketBufferSize);
+            if (settings.getUseGrpcStreams()) {
+                // Keep the connections behind the streams warm, and detect dead peers, while they are quiet.
+                builder = builder.keepAliveTime(settings.getGrpcKeepAliveTimeMs(), TimeUnit.MILLISECONDS)
+                                 .keepAliveWithoutCalls(true);
+            }
+            channel = builder.build();
         }
 
         return channel;
     }
 
+    private RetryPolicy getRetryPolicy(final RapidRequest msg, final int retries) {
+        final long hedgeDelayMs = isLatencyCritical(msg) ? settings.getGrpcHedgeDelayMs() : 0;
+        return new RetryPolicy(retries, settings.getGrpcRetryBackoffBaseMs(), settings.getGrpcRetryBackoffMaxMs(),
+                               hedgeDelayMs);
+    }
+
+    /**
+     * A batch is retried as often as the request in it that is retried the most.
+     */
+    private int getRetriesForMessage(final RapidRequest msg) {
+        switch (msg.getContentCase()) {
+            case BATCHEDREQUEST:
+                return msg.getBatchedRequest().getRequestsList().stream()
+                          .mapToInt(this::getRetriesForMessage)
+                          .max()
+                          .orElse(settings.getGrpcDefaultRetries());
+            case PREJOINMESSAGE:
+            case JOINMESSAGE:
+                return settings.getGrpcJoinRetries();
+            case FASTROUNDPHASE2BMESSAGE:
+            case PHASE1AMESSAGE:
+            case PHASE1BMESSAGE:
+            case PHASE2AMESSAGE:
+            case PHASE2BMESSAGE:
+                return settings.getGrpcConsensusRetries();
+            default:
+                return settings.getGrpcDefaultRetries();
+        }
+    }
+
+    /**
+     * Joins and consensus messages hold up membership changes, so these are the messages worth hedging, along
+     * with batches that contain any of them.
+     */
+    private boolean isLatencyCritical(final RapidRequest msg) {
+        switch (msg.getContentCase()) {
+            case BATCHEDREQUEST:
+                return msg.getBatchedRequest().getRequestsList().stream().anyMatch(this::isLatencyCritical);
+            case PREJOINMESSAGE:
+            case JOINMESSAGE:
+            case FASTROUNDPHASE2BMESSAGE:
+            case PHASE1AMESSAGE:
+            case PHASE1BMESSAGE:
+            case PHASE2AMESSAGE:
+            case PHASE2BMESSAGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * TODO: These timeouts should be on the Rapid side of the IMessagingClient API.
      *
+     * With adaptive timeouts, the timeout for a message type only bounds the timeout derived from the
+     * round-trip time estimates of the remote, and is used as is until there are estimates.
+     *
+     * @param remote the destination of the message
      * @param msg RapidRequest
      * @return timeout to use for the RapidRequest message
      */
-    private int getTimeoutForMessageMs(final RapidRequest msg) {
+    private long getTimeoutForMessageMs(final Endpoint remote, final RapidRequest msg) {
+        final int timeoutMs;
         switch (msg.getContentCase()) {
             case PROBEMESSAGE:
-                return settings.getGrpcProbeTimeoutMs();
+                if (isRelayedProbe(msg)) {
+                    // A relayed probe waits for the relay's own probe of the target, so the round-trip time to
+                    // the relay does not bound its latency.
+                    return 2L * settings.getGrpcProbeTimeoutMs();
+                }
+                timeoutMs = settings.getGrpcProbeTimeoutMs();
+                break;
             case JOINMESSAGE:
                 return settings.getGrpcJoinTimeoutMs();
             default:
-                return settings.getGrpcTimeoutMs();
+                timeoutMs = settings.getGrpcTimeoutMs();
+                break;
         }
+        if (!settings.getUseAdaptiveGrpcTimeouts()) {
+            return timeoutMs;
+        }
+        return rttEstimator.getTimeoutMs(remote, Math.min(settings.getGrpcMinTimeoutMs(), timeoutMs), timeoutMs);
+    }
+
+    private static boolean isRelayedProbe(final RapidRequest msg) {
+        return msg.getContentCase() == RapidRequest.ContentCase.PROBEMESSAGE && msg.getProbeMessage().hasTarget();
     }
 
     public interface ISettings {
@@ -212,6 +421,24 @@ public class GrpcClient implements IMessagingClient {
         int getGrpcJoinTimeoutMs();
 
         int getGrpcProbeTimeoutMs();
+
+        boolean getUseGrpcStreams();
+
+        int getGrpcKeepAliveTimeMs();
+
+        int getGrpcJoinRetries();
+
+        int getGrpcConsensusRetries();
+
+        int getGrpcRetryBackoffBaseMs();
+
+        int getGrpcRetryBackoffMaxMs();
+
+        int getGrpcHedgeDelayMs();
+
+        boolean getUseAdaptiveGrpcTimeouts();
+
+        int getGrpcMinTimeoutMs();
     }
 
     public static class ShuttingDownException extends RuntimeException {
@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid.messaging.impl;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.pb.MembershipServiceGrpc;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import com.vrg.rapid.pb.StreamRequest;
+import com.vrg.rapid.pb.StreamResponse;
+import io.grpc.Channel;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.netty.util.Timer;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-lived bidirectional stream to a single peer. Requests are written to the stream as they are sent and
+ * responses are matched to them by request number, so the peer can reply out of order. When the stream breaks,
+ * every outstanding request fails and the owner replaces the stream on the next send.
+ */
+final class GrpcPeerStream implements StreamObserver<StreamResponse> {
+    private static final int IN_FLIGHT_REQUESTS_CAPACITY = 64;
+    private final AtomicLong nextRequestNo = new AtomicLong(0);
+    private final InFlightRequests outstandingRequests;
+    private final StreamObserver<StreamRequest> requestObserver;
+    private volatile boolean isClosed = false;
+
+    GrpcPeerStream(final Channel channel, final Timer timer) {
+        this.outstandingRequests = new InFlightRequests(IN_FLIGHT_REQUESTS_CAPACITY, timer);
+        this.requestObserver = MembershipServiceGrpc.newStub(channel).sendRequestStream(this);
+    }
+
+    /**
+     * Writes a request to the stream.
+     *
+     * @return a future that completes with the peer's response, or fails if none arrives within {@code timeoutMs}
+     */
+    ListenableFuture<RapidResponse> send(final RapidRequest request, final long timeoutMs) {
+        final long requestNo = nextRequestNo.getAndIncrement();
+        final StreamRequest streamRequest = StreamRequest.newBuilder()
+                                                         .setRequestNo(requestNo)
+                                                         .setRequest(request)
+                                                         .build();
+        // A StreamObserver is not thread-safe, and requests can be sent from any thread.
+        synchronized (requestObserver) {
+            if (isClosed) {
+                return Futures.immediateFailedFuture(Status.UNAVAILABLE.withDescription("Stream is closed")
+                                                                      .asRuntimeException());
+            }
+            final ListenableFuture<RapidResponse> response =
+                    outstandingRequests.register(requestNo, timeoutMs, TimeUnit.MILLISECONDS);
+            requestObserver.onNext(streamRequest);
+            return response;
+        }
+    }
+
+    boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * Cancels the stream and fails every outstanding request.
+     */
+    void close() {
+        synchronized (requestObserver) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            requestObserver.onError(Status.CANCELLED.withDescription("Stream closed by client").asRuntimeException());
+        }
+        outstandingRequests.failAll(Status.CANCELLED.asRuntimeException());
+    }
+
+    /*
+     * From StreamObserver, invoked by gRPC with responses from the peer.
+     */
+    @Override
+    public void onNext(final StreamResponse streamResponse) {
+        if (streamResponse.getStatusCode() != Status.Code.OK.value()) {
+            outstandingRequests.fail(streamResponse.getRequestNo(),
+                                     Status.fromCodeValue(streamResponse.getStatusCode())
+                                           .withDescription(streamResponse.getStatusDescription())
+                                           .asRuntimeException());
+            return;
+        }
+        outstandingRequests.complete(streamResponse.getRequestNo(), streamResponse.getResponse());
+    }
+
+    @Override
+    public void onError(@Nullable final Throwable throwable) {
+        isClosed = true;
+        outstandingRequests.failAll(throwable != null ? throwable : Status.UNKNOWN.asRuntimeException());
+    }
+
+    @Override
+    public void onCompleted() {
+        isClosed = true;
+        outstandingRequests.failAll(Status.UNAVAILABLE.withDescription("Stream completed by peer")
+                                                      .asRuntimeException());
+    }
+}
@@ -25,19 +25,25 @@ import com.vrg.rapid.pb.NodeStatus;
 import com.vrg.rapid.pb.ProbeResponse;
 import com.vrg.rapid.pb.RapidRequest;
 import com.vrg.rapid.pb.RapidResponse;
+import com.vrg.rapid.pb.StreamRequest;
+import com.vrg.rapid.pb.StreamResponse;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.Status;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.netty.NettyServerBuilder;
 import io.grpc.stub.StreamObserver;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 
@@ -47,9 +53,12 @@ import java.util.concurrent.TimeUnit;
  */
 public class GrpcServer extends MembershipServiceGrpc.MembershipServiceImplBase implements IMessagingServer {
     private static final Logger LOG = LoggerFactory.getLogger(GrpcServer.class);
+    // Clients that use streams send keepalive pings, which must not be more frequent than this
+    private static final long PERMIT_KEEP_ALIVE_TIME_MS = 1000;
 
     private final ExecutorService grpcExecutor;
     @Nullable private final EventLoopGroup eventLoopGroup;
+    private final Class<? extends ServerChannel> channelType;
     private static final RapidResponse BOOTSTRAPPING_MESSAGE =
             RapidResponse.newBuilder().setProbeResponse(ProbeResponse.newBuilder()
                                                         .setStatus(NodeStatus.BOOTSTRAPPING).build()).build();
@@ -66,6 +75,7 @@ public class GrpcServer extends MembershipServiceGrpc.MembershipServiceImplBase
         this.address = address;
         this.grpcExecutor = sharedResources.getServerExecutor();
         this.eventLoopGroup = useInProcessTransport ? null : sharedResources.getEventLoopGroup();
+        this.channelType = sharedResources.getServerChannelType();
         this.useInProcessServer = useInProcessTransport;
     }
 
@@ -95,6 +105,15 @@ public class GrpcServer extends MembershipServiceGrpc.MembershipServiceImplBase
         }
     }
 
+    /**
+     * Defined in rapid.proto. Requests on a stream are handled like those sent through sendRequest, and each
+     * response is written back to the stream as soon as it is ready, tagged with the number of its request.
+     */
+    @Override
+    public StreamObserver<StreamRequest> sendRequestStream(final StreamObserver<StreamResponse> responseObserver) {
+        return new StreamHandler(responseObserver);
+    }
+
     /**
      * Invoked by the bootstrap protocol when it has a membership service object
      * ready. Until this method is called, the GrpcServer will not have its gRPC service
@@ -116,7 +135,8 @@ public class GrpcServer extends MembershipServiceGrpc.MembershipServiceImplBase
     public void shutdown() {
         assert server != null;
         try {
-            server.shutdown();
+            // Streams from peers are long-lived calls, which a graceful shutdown would leave open
+            server.shutdownNow();
             server.awaitTermination(0, TimeUnit.SECONDS);
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -138,7 +158,11 @@ public class GrpcServer extends MembershipServiceGrpc.MembershipServiceImplBase
                     .start();
         } else {
             server = NettyServerBuilder.forAddress(new InetSocketAddress(address.getHostname(), address.getPort()))
+                    .bossEventLoopGroup(eventLoopGroup)
                     .workerEventLoopGroup(eventLoopGroup)
+                    .channelType(channelType)
+                    .permitKeepAliveTime(PERMIT_KEEP_ALIVE_TIME_MS, TimeUnit.MILLISECONDS)
+                    .permitKeepAliveWithoutCalls(true)
                     .addService(this)
                     .executor(grpcExecutor)
                     .build()
@@ -149,6 +173,93 @@ public class GrpcServer extends MembershipServiceGrpc.MembershipServiceImplBase
         Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
     }
 
+    private class StreamHandler implements StreamObserver<StreamRequest> {
+        private final StreamObserver<StreamResponse> responseObserver;
+        @GuardedBy("this") private boolean isCompleted = false;
+
+        StreamHandler(final StreamObserver<StreamResponse> responseObserver) {
+            this.responseObserver = responseObserver;
+        }
+
+        /**
+         * A request whose handler throws fails on its own, and the other requests on the stream carry on.
+         */
+        @Override
+        @SuppressWarnings("checkstyle:illegalcatch")
+        public void onNext(final StreamRequest streamRequest) {
+            final long requestNo = streamRequest.getRequestNo();
+            final RapidRequest rapidRequest = streamRequest.getRequest();
+            if (membershipService != null) {
+                final ListenableFuture<RapidResponse> result;
+                try {
+                    result = membershipService.handleMessage(rapidRequest);
+                } catch (final RuntimeException e) {
+                    LOG.error("Failed to handle request {} on stream", requestNo, e);
+                    fail(requestNo, Status.INTERNAL.withDescription(e.toString()));
+                    return;
+                }
+                Futures.addCallback(result, new FutureCallback<RapidResponse>() {
+                    @Override
+                    public void onSuccess(@Nullable final RapidResponse response) {
+                        if (response != null) {
+                            respond(requestNo, response);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(final Throwable throwable) {
+                        if (throwable instanceof RejectedExecutionException) {
+                            // See ResponseCallback
+                            fail(requestNo, Status.RESOURCE_EXHAUSTED.withDescription(throwable.getMessage()));
+                            return;
+                        }
+                        LOG.error("RPC failed {}", throwable);
+                    }
+                }, grpcExecutor);
+            }
+            else if (rapidRequest.getContentCase().equals(RapidRequest.ContentCase.PROBEMESSAGE)) {
+                // See sendRequest()
+                respond(requestNo, BOOTSTRAPPING_MESSAGE);
+            }
+        }
+
+        @Override
+        public synchronized void onError(final Throwable throwable) {
+            // The call has already been closed, so responses that are still pending are dropped
+            isCompleted = true;
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            if (!isCompleted) {
+                isCompleted = true;
+                responseObserver.onCompleted();
+            }
+        }
+
+        // A StreamObserver is not thread-safe, and responses complete on different threads.
+        private synchronized void respond(final long requestNo, final RapidResponse response) {
+            if (!isCompleted) {
+                responseObserver.onNext(StreamResponse.newBuilder()
+                                                      .setRequestNo(requestNo)
+                                                      .setResponse(response)
+                                                      .build());
+            }
+        }
+
+        private synchronized void fail(final long requestNo, final Status status) {
+            if (!isCompleted) {
+                final StreamResponse.Builder builder = StreamResponse.newBuilder()
+                                                                     .setRequestNo(requestNo)
+                                                                     .setStatusCode(status.getCode().value());
+                if (status.getDescription() != null) {
+                    builder.setStatusDescription(status.getDescription());
+                }
+                responseObserver.onNext(builder.build());
+            }
+        }
+    }
+
     // Callbacks
     private static class ResponseCallback implements FutureCallback<RapidResponse> {
         private final StreamObserver<RapidResponse> responseObserver;
@@ -165,6 +276,12 @@ public class GrpcServer extends MembershipServiceGrpc.MembershipServiceImplBase
 
         @Override
         public void onFailure(final Throwable throwable) {
+            if (throwable instanceof RejectedExecutionException) {
+                // The request was shed, which the client should treat as a sign to back off
+                responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription(throwable.getMessage())
+                                                                  .asRuntimeException());
+                return;
+            }
             LOG.error("RPC failed {}", throwable);
         }
     }
@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid.messaging.impl;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.vrg.rapid.pb.RapidResponse;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Correlates responses with the requests awaiting them, and fails requests that are not answered in time.
+ *
+ * Requests are kept in an open-addressing table keyed by request number, where every slot is updated with a
+ * compare-and-set. Request numbers are handed out sequentially, so a request almost always lands in its home
+ * slot, and a slot is only taken when a request from a full table length ago is still outstanding. Slots of
+ * completed requests are marked as deleted, never emptied, so that lookups can stop at the first empty slot.
+ * Requests that find no free slot within a few probes are kept in an overflow map instead.
+ *
+ * Deadlines are tracked by a hashed wheel timer, which keeps scheduling and cancelling a deadline O(1).
+ */
+final class InFlightRequests {
+    private static final int MAX_PROBES = 8;
+    private static final Object DELETED = new Object();
+    private final AtomicReferenceArray<Object> slots;
+    private final int mask;
+    private final ConcurrentHashMap<Long, PendingRequest> overflow = new ConcurrentHashMap<>();
+    private final Timer timer;
+
+    /**
+     * @param capacity number of slots in the table, rounded up to a power of two
+     */
+    InFlightRequests(final int capacity, final Timer timer) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30 (capacity: " + capacity + ")");
+        }
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.timer = timer;
+    }
+
+    /**
+     * Registers a request that is about to be sent.
+     *
+     * @param requestNo a request number that has not been registered before
+     * @param timeout how long to wait for the response
+     * @param timeUnit the unit of {@code timeout}
+     * @return a future that completes with the response to the request, or fails if none arrives in time
+     */
+    SettableFuture<RapidResponse> register(final long requestNo, final long timeout, final TimeUnit timeUnit) {
+        final PendingRequest request = new PendingRequest(requestNo);
+        insert(request);
+        request.deadline = timer.newTimeout(request, timeout, timeUnit);
+        return request.future;
+    }
+
+    /**
+     * Completes a request with its response.
+     *
+     * @return false if the request is unknown, because it has already completed or timed out
+     */
+    boolean complete(final long requestNo, final RapidResponse response) {
+        final PendingRequest request = remove(requestNo);
+        if (request == null) {
+            return false;
+        }
+        final Timeout deadline = request.deadline;
+        if (deadline != null) {
+            deadline.cancel();
+        }
+        return request.future.set(response);
+    }
+
+    /**
+     * Fails a request, for instance when the peer could not handle it.
+     *
+     * @return false if the request is unknown, because it has already completed or timed out
+     */
+    boolean fail(final long requestNo, final Throwable cause) {
+        final PendingRequest request = remove(requestNo);
+        if (request == null) {
+            return false;
+        }
+        return request.fail(cause);
+    }
+
+    /**
+     * Fails all outstanding requests, for instance when the connection they were sent over is lost.
+     */
+    void failAll(final Throwable cause) {
+        for (int i = 0; i <= mask; i++) {
+            final Object current = slots.get(i);
+            if (current != null && current != DELETED && slots.compareAndSet(i, current, DELETED)) {
+                ((PendingRequest) current).fail(cause);
+            }
+        }
+        for (final Long requestNo : overflow.keySet()) {
+            final PendingRequest request = overflow.remove(requestNo);
+            if (request != null) {
+                request.fail(cause);
+            }
+        }
+    }
+
+    private void insert(final PendingRequest request) {
+        final int home = (int) request.requestNo & mask;
+        for (int i = 0; i < MAX_PROBES && i <= mask; i++) {
+            final int index = (home + i) & mask;
+            final Object current = slots.get(index);
+            if ((current == null || current == DELETED) && slots.compareAndSet(index, current, request)) {
+                return;
+            }
+        }
+        overflow.put(request.requestNo, request);
+    }
+
+    @Nullable
+    private PendingRequest remove(final long requestNo) {
+        final int home = (int) requestNo & mask;
+        for (int i = 0; i < MAX_PROBES && i <= mask; i++) {
+            final int index = (home + i) & mask;
+            final Object current = slots.get(index);
+            if (current == null) {
+                break;
+            }
+            if (current != DELETED && ((PendingRequest) current).requestNo == requestNo) {
+                // Only one of the response and the deadline gets to remove a request
+                return slots.compareAndSet(index, current, DELETED) ? (PendingRequest) current : null;
+            }
+        }
+        return overflow.isEmpty() ? null : overflow.remove(requestNo);
+    }
+
+    private final class PendingRequest implements TimerTask {
+        private final long requestNo;
+        private final SettableFuture<RapidResponse> future = SettableFuture.create();
+        @Nullable private volatile Timeout deadline = null;
+
+        PendingRequest(final long requestNo) {
+            this.requestNo = requestNo;
+        }
+
+        @Override
+        public void run(final Timeout expired) {
+            if (remove(requestNo) == this) {
+                future.setException(new TimeoutException("No response to request " + requestNo));
+            }
+        }
+
+        private boolean fail(final Throwable cause) {
+            final Timeout current = deadline;
+            if (current != null) {
+                current.cancel();
+            }
+            return future.setException(cause);
+        }
+    }
+}
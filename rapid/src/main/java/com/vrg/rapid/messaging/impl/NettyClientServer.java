@@ -29,11 +29,7 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.serialization.ClassResolvers;
-import io.netty.handler.codec.serialization.ObjectDecoder;
-import io.netty.handler.codec.serialization.ObjectEncoder;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
 import io.netty.handler.timeout.ReadTimeoutException;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.slf4j.Logger;
@@ -41,21 +37,21 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.Serializable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Simple implementation of messaging over TCP with Netty.
+ * Simple implementation of messaging over TCP with Netty. Messages are framed by NettyProtobufCodec.
  */
 public class NettyClientServer implements IMessagingClient, IMessagingServer {
     private static final Logger LOG = LoggerFactory.getLogger(NettyClientServer.class);
-    private static final FutureLoader FUTURE_LOADER = new FutureLoader();
+    private static final NettyProtobufCodec.Encoder ENCODER = new NettyProtobufCodec.Encoder();
     private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int IN_FLIGHT_REQUESTS_CAPACITY = 4096;
     private final Endpoint listenAddress;
     private final LoadingCache<Endpoint, ChannelFuture> channelCache;
-    private final LoadingCache<Long, SettableFuture<RapidResponse>> outstandingRequests;
+    private final InFlightRequests outstandingRequests;
     private final AtomicLong counter = new AtomicLong(0);
     private final SharedResources resources;
 
@@ -68,9 +64,7 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
 
     public NettyClientServer(final Endpoint listenAddress, final SharedResources resources) {
         this.listenAddress = listenAddress;
-        this.outstandingRequests = CacheBuilder.newBuilder()
-            .expireAfterAccess(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-            .build(FUTURE_LOADER);
+        this.outstandingRequests = new InFlightRequests(IN_FLIGHT_REQUESTS_CAPACITY, resources.getTimer());
         this.resources = resources;
 
         // Bootstrap a client for sending messages. If this object is being used as a server instance,
@@ -85,9 +79,9 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
                 .build(new ClientChannelLoader(clientBootstrap));
         final ClientHandler clientHandler = new ClientHandler();
         clientBootstrap.group(resources.getEventLoopGroup())
-            .channel(NioSocketChannel.class)
-            .option(ChannelOption.SO_SNDBUF, 4096)
-            .option(ChannelOption.SO_RCVBUF, 4096)
+            .channel(resources.getClientChannelType())
+            .option(ChannelOption.SO_SNDBUF, resources.getSocketBufferSize())
+            .option(ChannelOption.SO_RCVBUF, resources.getSocketBufferSize())
             .option(ChannelOption.SO_REUSEADDR, true)
             .option(ChannelOption.TCP_NODELAY, true)
             .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
@@ -99,8 +93,7 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
      */
     @Override
     public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
-        return Futures.withTimeout(sendOnce(remote, msg), DEFAULT_TIMEOUT_SECONDS,
-                                   TimeUnit.SECONDS, resources.getScheduledTasksExecutor());
+        return sendOnce(remote, msg);
     }
 
     /**
@@ -113,10 +106,12 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
 
     private ListenableFuture<RapidResponse> sendOnce(final Endpoint remote, final RapidRequest msg) {
         try {
-            final long reqNo = counter.incrementAndGet();
-            final SettableFuture<RapidResponse> future = outstandingRequests.get(reqNo);
             final ChannelFuture f = channelCache.get(remote);
-            ignoreFuture(f.channel().writeAndFlush(new WrappedRapidRequest(reqNo, msg), f.channel().voidPromise()));
+            final long reqNo = counter.incrementAndGet();
+            final SettableFuture<RapidResponse> future =
+                    outstandingRequests.register(reqNo, DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            final NettyProtobufCodec.Frame frame = new NettyProtobufCodec.Frame(reqNo, msg);
+            ignoreFuture(f.channel().writeAndFlush(frame, f.channel().voidPromise()));
             return future;
         } catch (final ExecutionException e) {
             return Futures.immediateFailedFuture(e);
@@ -132,10 +127,13 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
         final ServerBootstrap serverBootstrap = new ServerBootstrap();
         final ServerHandler serverHandler = new ServerHandler();
         serverBootstrap.group(resources.getEventLoopGroup(), resources.getEventLoopGroup())
-                .channel(NioServerSocketChannel.class)
+                .channel(resources.getServerChannelType())
                 .option(ChannelOption.SO_BACKLOG, 1000)
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.SO_SNDBUF, resources.getSocketBufferSize())
+                .childOption(ChannelOption.SO_RCVBUF, resources.getSocketBufferSize())
                 .childHandler(new ServerChannelInitializer(serverHandler));
         try {
             serverChannel = serverBootstrap.bind(listenAddress.getHostname(), listenAddress.getPort()).sync();
@@ -197,8 +195,7 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
 
         @Override
         public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
-            final WrappedRapidResponse wrappedRapidMessage = (WrappedRapidResponse) msg;
-            receiveResponse(wrappedRapidMessage);
+            receiveResponse((NettyProtobufCodec.Frame) msg);
         }
     }
 
@@ -218,15 +215,15 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
 
         @Override
         public void channelRead(final ChannelHandlerContext ctx, final Object obj) {
-            final WrappedRapidRequest msg = (WrappedRapidRequest) obj;
+            final NettyProtobufCodec.Frame msg = (NettyProtobufCodec.Frame) obj;
             if (membershipService != null) {
-                final RapidRequest request = msg.request;
+                final RapidRequest request = (RapidRequest) msg.message;
                 final ListenableFuture<RapidResponse> responseFuture = membershipService.handleMessage(request);
                 Futures.addCallback(responseFuture, new FutureCallback<RapidResponse>() {
                     @Override
                     public void onSuccess(@Nullable final RapidResponse rapidResponse) {
                         if (rapidResponse != null) {
-                            ignoreFuture(ctx.writeAndFlush(new WrappedRapidResponse(msg.count, rapidResponse),
+                            ignoreFuture(ctx.writeAndFlush(new NettyProtobufCodec.Frame(msg.requestNo, rapidResponse),
                                                            ctx.voidPromise()));
                         }
                     }
@@ -250,48 +247,11 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
      * Invoked at the client when the server responds to a message
      * @param message a RapidResponse + reqNo received after sending a RapidRequest with a given reqNo
      */
-    private void receiveResponse(final WrappedRapidResponse message) {
-        final RapidResponse rapidResponse = message.response;
-        final SettableFuture<RapidResponse> future = outstandingRequests.getIfPresent(message.count);
-        if (future != null) {
-            future.set(rapidResponse);
-            outstandingRequests.invalidate(message.count);
-        } else {
+    private void receiveResponse(final NettyProtobufCodec.Frame message) {
+        final RapidResponse rapidResponse = (RapidResponse) message.message;
+        if (!outstandingRequests.complete(message.requestNo, rapidResponse)) {
             // Ignore
-            LOG.error("Could not find future for req# {}", message.count);
-        }
-    }
-
-    /**
-     * Wraps Rapid messages to also carry a request number, used to route responses to the appropriate
-     * ListenableFuture instances.
-     */
-    private static class WrappedRapidRequest implements Serializable {
-        private static final long serialVersionUID = -4891729395L;
-        private final long count;
-        private final RapidRequest request;
-
-        WrappedRapidRequest(final long count, final RapidRequest request) {
-            this.count = count;
-            this.request = request;
-        }
-    }
-
-    private static class WrappedRapidResponse implements Serializable {
-        private static final long serialVersionUID = -4891729395L;
-        private final long count;
-        private final RapidResponse response;
-
-        WrappedRapidResponse(final long count, final RapidResponse response) {
-            this.count = count;
-            this.response = response;
-        }
-    }
-
-    private static class FutureLoader extends CacheLoader<Long, SettableFuture<RapidResponse>> {
-        @Override
-        public SettableFuture<RapidResponse> load(@Nonnull final Long counter) {
-            return SettableFuture.create();
+            LOG.error("Could not find future for req# {}", message.requestNo);
         }
     }
 
@@ -331,8 +291,9 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
             final ChannelPipeline pipeline = channel.pipeline();
             pipeline.addLast(
                     new ReadTimeoutHandler(30, TimeUnit.SECONDS),
-                    new ObjectEncoder(),
-                    new ObjectDecoder(ClassResolvers.softCachingConcurrentResolver(null)),
+                    ENCODER,
+                    new ProtobufVarint32FrameDecoder(),
+                    new NettyProtobufCodec.Decoder(RapidResponse.parser()),
                     clientHandler);
         }
     }
@@ -347,8 +308,9 @@ public class NettyClientServer implements IMessagingClient, IMessagingServer {
         @Override
         public void initChannel(final SocketChannel channel) {
             final ChannelPipeline pipeline = channel.pipeline();
-            pipeline.addLast(new ObjectEncoder(),
-                    new ObjectDecoder(ClassResolvers.softCachingConcurrentResolver(null)),
+            pipeline.addLast(ENCODER,
+                    new ProtobufVarint32FrameDecoder(),
+                    new NettyProtobufCodec.Decoder(RapidRequest.parser()),
                     serverHandler);
         }
     }
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid.messaging.impl;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageDecoder;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.util.List;
+
+/**
+ * Binary framing for protobuf messages sent by NettyClientServer.
+ *
+ * A frame is a varint32 length, followed by the request number as a varint64 and the serialized message. Frames
+ * are written straight into the backing array of a pooled heap buffer sized for the frame. Messages are parsed
+ * from the frames produced by a ProtobufVarint32FrameDecoder, which slices the inbound buffer instead of copying
+ * it. A heap frame is parsed from its backing array, and a direct frame in place wherever protobuf can read
+ * direct buffers. Protobuf reads direct buffers through the address field of java.nio.Buffer without checking
+ * that it can access the field, which it cannot on JDK 9 and later unless java.nio is opened to it, so a direct
+ * frame is copied once into an array there.
+ */
+final class NettyProtobufCodec {
+    private static final boolean CAN_PARSE_DIRECT_BUFFERS = isBufferAddressAccessible();
+
+    private NettyProtobufCodec() {
+    }
+
+    @SuppressWarnings("checkstyle:illegalcatch")
+    private static boolean isBufferAddressAccessible() {
+        try {
+            Buffer.class.getDeclaredField("address").setAccessible(true);
+            return true;
+        } catch (final NoSuchFieldException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A message along with a request number, used to route responses to the appropriate ListenableFuture
+     * instances.
+     */
+    static final class Frame {
+        final long requestNo;
+        final MessageLite message;
+
+        Frame(final long requestNo, final MessageLite message) {
+            this.requestNo = requestNo;
+            this.message = message;
+        }
+    }
+
+    @ChannelHandler.Sharable
+    static final class Encoder extends MessageToByteEncoder<Frame> {
+        @Override
+        protected ByteBuf allocateBuffer(final ChannelHandlerContext ctx, final Frame frame,
+                                         final boolean preferDirect) {
+            // A heap buffer, so that the frame is written to its backing array
+            return ctx.alloc().heapBuffer(getFrameSize(getBodySize(frame)));
+        }
+
+        @Override
+        protected void encode(final ChannelHandlerContext ctx, final Frame frame, final ByteBuf out)
+                throws IOException {
+            final int bodySize = getBodySize(frame);
+            final int frameSize = getFrameSize(bodySize);
+            out.ensureWritable(frameSize);
+            final CodedOutputStream output = CodedOutputStream.newInstance(out.array(),
+                                                                           out.arrayOffset() + out.writerIndex(),
+                                                                           frameSize);
+            output.writeUInt32NoTag(bodySize);
+            output.writeUInt64NoTag(frame.requestNo);
+            frame.message.writeTo(output);
+            output.checkNoSpaceLeft();
+            // Writes to the backing array do not move the writer index of the ByteBuf
+            out.writerIndex(out.writerIndex() + frameSize);
+        }
+
+        private static int getBodySize(final Frame frame) {
+            return CodedOutputStream.computeUInt64SizeNoTag(frame.requestNo) + frame.message.getSerializedSize();
+        }
+
+        private static int getFrameSize(final int bodySize) {
+            return CodedOutputStream.computeUInt32SizeNoTag(bodySize) + bodySize;
+        }
+    }
+
+    /**
+     * Decodes the body of a frame, once ProtobufVarint32FrameDecoder has stripped the length prefix.
+     */
+    static final class Decoder extends MessageToMessageDecoder<ByteBuf> {
+        private final Parser<? extends MessageLite> parser;
+
+        Decoder(final Parser<? extends MessageLite> parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        protected void decode(final ChannelHandlerContext ctx, final ByteBuf body, final List<Object> out)
+                throws IOException {
+            final CodedInputStream input;
+            if (body.hasArray()) {
+                input = CodedInputStream.newInstance(body.array(), body.arrayOffset() + body.readerIndex(),
+                                                     body.readableBytes());
+            }
+            else if (CAN_PARSE_DIRECT_BUFFERS && body.nioBufferCount() == 1) {
+                input = CodedInputStream.newInstance(body.nioBuffer());
+            }
+            else {
+                input = CodedInputStream.newInstance(ByteBufUtil.getBytes(body));
+            }
+            final long requestNo = input.readUInt64();
+            out.add(new Frame(requestNo, parser.parseFrom(input)));
+        }
+    }
+}
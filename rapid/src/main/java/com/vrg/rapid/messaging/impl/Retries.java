@@ -3,6 +3,7 @@ package com.vrg.rapid.messaging.impl;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.vrg.rapid.pb.Endpoint;
@@ -11,69 +12,150 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 class Retries {
     private static final Logger LOG = LoggerFactory.getLogger(Retries.class);
 
     /**
-     * Takes a call and retries it, returning the result as soon as it completes or the exception
-     * caught from the last retry attempt.
+     * Takes a call and retries it according to a retry policy, returning the result as soon as an attempt
+     * succeeds or the exception caught from the last attempt.
      *
      * Adapted from https://github.com/spotify/futures-extra/.../AsyncRetrier.java
      *
      * @param call A supplier of a ListenableFuture, representing the call being retried.
-     * @param retries The number of retry attempts to be performed before giving up
+     * @param policy The number of retries, the backoff between them, and whether attempts are hedged
+     * @param onCallFailure Invoked with the exception of every attempt that fails
+     * @param scheduler Used to delay retries and hedged attempts
      * @param <T> The type of the response.
      * @return Returns a ListenableFuture of type T, that hosts the result of the supplied {@code call}.
      */
     @CanIgnoreReturnValue
     static <T> ListenableFuture<T> callWithRetries(final Supplier<ListenableFuture<T>> call,
-                                                   final Endpoint remote, final int retries,
-                                                   final Runnable onCallFailure,
-                                                   final ExecutorService backgroundExecutor) {
+                                                   final Endpoint remote, final RetryPolicy policy,
+                                                   final Consumer<Throwable> onCallFailure,
+                                                   final ExecutorService backgroundExecutor,
+                                                   final ScheduledExecutorService scheduler) {
         final SettableFuture<T> settable = SettableFuture.create();
-        startCallWithRetry(call, remote, settable, retries, onCallFailure, backgroundExecutor);
+        final Attempts<T> attempts = new Attempts<>(call, remote, settable, policy, onCallFailure,
+                                                    backgroundExecutor, scheduler);
+        attempts.start(0);
         return settable;
     }
 
     /**
-     * Adapted from https://github.com/spotify/futures-extra/.../AsyncRetrier.java
+     * The state shared by all attempts of one call.
      */
-    @SuppressWarnings("checkstyle:illegalcatch")
-    private static <T> void startCallWithRetry(final Supplier<ListenableFuture<T>> call, final Endpoint remote,
-                                               final SettableFuture<T> signal, final int retries,
-                                               final Runnable onCallFailure, final ExecutorService backgroundExecutor) {
-        if (Thread.currentThread().isInterrupted()) {
-            signal.setException(new InterruptedException("Thread has been interrupted"));
-            return;
+    private static class Attempts<T> {
+        private final Supplier<ListenableFuture<T>> call;
+        private final Endpoint remote;
+        private final SettableFuture<T> signal;
+        private final RetryPolicy policy;
+        private final Consumer<Throwable> onCallFailure;
+        private final ExecutorService backgroundExecutor;
+        private final ScheduledExecutorService scheduler;
+
+        Attempts(final Supplier<ListenableFuture<T>> call, final Endpoint remote, final SettableFuture<T> signal,
+                 final RetryPolicy policy, final Consumer<Throwable> onCallFailure,
+                 final ExecutorService backgroundExecutor, final ScheduledExecutorService scheduler) {
+            this.call = call;
+            this.remote = remote;
+            this.signal = signal;
+            this.policy = policy;
+            this.onCallFailure = onCallFailure;
+            this.backgroundExecutor = backgroundExecutor;
+            this.scheduler = scheduler;
         }
-        final ListenableFuture<T> callFuture = call.get();
-        Futures.addCallback(callFuture, new FutureCallback<T>() {
-            @Override
-            public void onSuccess(@Nullable final T result) {
-                signal.set(result);
+
+        /**
+         * Adapted from https://github.com/spotify/futures-extra/.../AsyncRetrier.java
+         *
+         * The first attempt is started on the calling thread, so that errors raised while starting it
+         * (such as the client shutting down) propagate to the caller.
+         */
+        private void start(final int retry) {
+            if (Thread.currentThread().isInterrupted()) {
+                signal.setException(new InterruptedException("Thread has been interrupted"));
+                return;
             }
+            // Counts the attempts of this round that have not failed yet: the original and possibly a hedge.
+            final AtomicInteger pending = new AtomicInteger(1);
+            final FutureCallback<T> callback = new FutureCallback<T>() {
+                @Override
+                public void onSuccess(@Nullable final T result) {
+                    signal.set(result);
+                }
 
-            @Override
-            public void onFailure(final Throwable throwable) {
-                onCallFailure.run();
-                LOG.error("Retrying call to {} because of exception {}", remote, throwable);
-                handleFailure(call, remote, signal, retries, throwable, onCallFailure, backgroundExecutor);
+                @Override
+                public void onFailure(final Throwable throwable) {
+                    onCallFailure.accept(throwable);
+                    if (pending.decrementAndGet() == 0) {
+                        handleFailure(retry, throwable);
+                    }
+                }
+            };
+            Futures.addCallback(call.get(), callback, backgroundExecutor);
+            if (policy.getHedgeDelayMs() > 0) {
+                schedule(() -> {
+                    // Only hedge if the original attempt is still outstanding
+                    if (!signal.isDone() && pending.getAndIncrement() > 0) {
+                        LOG.debug("Hedging call to {}", remote);
+                        Futures.addCallback(call.get(), callback, backgroundExecutor);
+                    }
+                }, policy.getHedgeDelayMs());
             }
-        }, backgroundExecutor);
-    }
+        }
 
-    /**
-     * Adapted from https://github.com/spotify/futures-extra/.../AsyncRetrier.java
-     */
-    private static <T> void handleFailure(final Supplier<ListenableFuture<T>> code, final Endpoint remote,
-                                          final SettableFuture<T> future, final int retries, final Throwable t,
-                                          final Runnable onCallFailure, final ExecutorService backgroundExecutor) {
-        if (retries > 0) {
-            startCallWithRetry(code, remote, future, retries - 1, onCallFailure, backgroundExecutor);
-        } else {
-            future.setException(t);
+        /**
+         * Adapted from https://github.com/spotify/futures-extra/.../AsyncRetrier.java
+         */
+        private void handleFailure(final int retry, final Throwable t) {
+            if (retry < policy.getRetries() && !signal.isDone()) {
+                LOG.error("Retrying call to {} because of exception {}", remote, t);
+                final long backoffMs = policy.getBackoffMs(retry);
+                if (backoffMs == 0) {
+                    startSafely(retry + 1);
+                } else {
+                    schedule(() -> startSafely(retry + 1), backoffMs);
+                }
+            } else {
+                signal.setException(t);
+            }
+        }
+
+        /**
+         * Starts an attempt from a callback or a scheduled task, where an exception would otherwise be lost.
+         */
+        @SuppressWarnings("checkstyle:illegalcatch")
+        private void startSafely(final int retry) {
+            try {
+                start(retry);
+            } catch (final RuntimeException e) {
+                signal.setException(e);
+            }
+        }
+
+        @SuppressWarnings("checkstyle:illegalcatch")
+        private void schedule(final Runnable task, final long delayMs) {
+            try {
+                final ScheduledFuture<?> scheduled = scheduler.schedule(() -> {
+                    try {
+                        task.run();
+                    } catch (final RuntimeException e) {
+                        signal.setException(e);
+                    }
+                }, delayMs, TimeUnit.MILLISECONDS);
+                // A pending hedge or backoff has nothing left to do once the call completes
+                signal.addListener(() -> scheduled.cancel(false), MoreExecutors.directExecutor());
+            } catch (final RuntimeException e) {
+                // The scheduler has been shut down
+                signal.setException(e);
+            }
         }
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid.messaging.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how often a call is retried, how long to wait before each retry, and whether slow calls are hedged.
+ *
+ * Retries back off exponentially from a base delay up to a maximum, with full jitter: the delay before the
+ * n-th retry is drawn uniformly from [0, min(max, base * 2^n)], so that callers that failed together do not
+ * retry together. A hedged call is started a second time if it has not completed after the hedge delay, and
+ * completes with whichever attempt succeeds first.
+ */
+final class RetryPolicy {
+    private static final int MAX_BACKOFF_SHIFT = 30;
+    private final int retries;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+    private final long hedgeDelayMs;
+
+    /**
+     * @param retries number of retries after the first attempt
+     * @param backoffBaseMs delay bound before the first retry, or 0 to retry immediately
+     * @param backoffMaxMs upper bound on the delay before any retry
+     * @param hedgeDelayMs time after which an outstanding attempt is hedged, or 0 to disable hedging
+     */
+    RetryPolicy(final int retries, final long backoffBaseMs, final long backoffMaxMs, final long hedgeDelayMs) {
+        if (retries < 0 || backoffBaseMs < 0 || backoffMaxMs < backoffBaseMs || hedgeDelayMs < 0) {
+            throw new IllegalArgumentException("Invalid retry policy (retries: " + retries + ", backoffBaseMs: " +
+                                               backoffBaseMs + ", backoffMaxMs: " + backoffMaxMs +
+                                               ", hedgeDelayMs: " + hedgeDelayMs + ")");
+        }
+        this.retries = retries;
+        this.backoffBaseMs = backoffBaseMs;
+        this.backoffMaxMs = backoffMaxMs;
+        this.hedgeDelayMs = hedgeDelayMs;
+    }
+
+    int getRetries() {
+        return retries;
+    }
+
+    long getHedgeDelayMs() {
+        return hedgeDelayMs;
+    }
+
+    /**
+     * @param retry the number of retries made so far
+     * @return the delay before the next retry in milliseconds
+     */
+    long getBackoffMs(final int retry) {
+        if (backoffBaseMs == 0) {
+            return 0;
+        }
+        final long bound = Math.min(backoffMaxMs, backoffBaseMs << Math.min(retry, MAX_BACKOFF_SHIFT));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+}
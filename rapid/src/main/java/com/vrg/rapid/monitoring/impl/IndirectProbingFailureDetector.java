@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid.monitoring.impl;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.monitoring.IEdgeFailureDetectorFactory;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.NodeStatus;
+import com.vrg.rapid.pb.ProbeMessage;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * A ping-pong failure detector that confirms a failure through other observers of the subject before reporting
+ * it, so that a bad link between this node and the subject does not turn into an alert.
+ *
+ * Once the direct probes to the subject have failed FAILURE_THRESHOLD times, a few randomly chosen observers of
+ * the subject are asked to probe it on behalf of this node. The edge is reported faulty only if none of them gets
+ * an answer from the subject either. Otherwise the failures are attributed to the link, and the failure count
+ * starts over. A relay that does not observe the subject in its own configuration answers without probing it,
+ * which counts as no answer.
+ */
+@NotThreadSafe
+public class IndirectProbingFailureDetector implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(IndirectProbingFailureDetector.class);
+    public static final boolean DEFAULT_USE_INDIRECT_PROBING_FAILURE_DETECTOR = false;
+    public static final int DEFAULT_INDIRECT_PROBE_RELAYS = 3;
+    private static final int FAILURE_THRESHOLD = 10;
+
+    // Number of BOOTSTRAPPING status responses a node is allowed to return before we begin
+    // treating that as a failure condition.
+    private static final int BOOTSTRAP_COUNT_THRESHOLD = 30;
+    private final Endpoint address;
+    private final Endpoint subject;
+    private final IMessagingClient rpcClient;
+    private final Runnable notifier;
+    private final Function<Endpoint, List<Endpoint>> observersOf;
+    private final int numRelays;
+    private final AtomicInteger failureCount = new AtomicInteger(0);
+    private final AtomicInteger bootstrapResponseCount = new AtomicInteger(0);
+    private final AtomicReference<State> state = new AtomicReference<>(State.PROBING);
+    private boolean notified = false;
+
+    // Caches for probe messages. Avoids creating an unnecessary copy of a probe message each time.
+    private final RapidRequest probeMessage;
+    private final RapidRequest relayedProbeMessage;
+
+    private enum State {
+        // Probing the subject directly
+        PROBING,
+        // Waiting for the relays to probe the subject
+        CONFIRMING,
+        // No relay could reach the subject either
+        CONFIRMED
+    }
+
+    private IndirectProbingFailureDetector(final Endpoint address, final Endpoint subject,
+                                           final IMessagingClient rpcClient, final Runnable notifier,
+                                           final Function<Endpoint, List<Endpoint>> observersOf,
+                                           final int numRelays) {
+        this.address = address;
+        this.subject = subject;
+        this.rpcClient = rpcClient;
+        this.notifier = notifier;
+        this.observersOf = observersOf;
+        this.numRelays = numRelays;
+        this.probeMessage = RapidRequest.newBuilder().setProbeMessage(
+                ProbeMessage.newBuilder().setSender(address).build()).build();
+        this.relayedProbeMessage = RapidRequest.newBuilder().setProbeMessage(
+                ProbeMessage.newBuilder().setSender(address).setTarget(subject).build()).build();
+    }
+
+    @Override
+    public void run() {
+        switch (state.get()) {
+            case CONFIRMING:
+                return;
+            case CONFIRMED:
+                if (!notified) {
+                    notified = true;
+                    notifier.run();
+                }
+                return;
+            case PROBING:
+            default:
+                break;
+        }
+        if (failureCount.get() >= FAILURE_THRESHOLD) {
+            confirmThroughRelays();
+        }
+        else {
+            LOG.trace("{} sending probe to {}", address, subject);
+            Futures.addCallback(rpcClient.sendMessageBestEffort(subject, probeMessage), new ProbeCallback());
+        }
+    }
+
+    /**
+     * Asks the relays to probe the subject. The outcome is acted upon in the next run().
+     */
+    private void confirmThroughRelays() {
+        final List<Endpoint> relays = selectRelays();
+        if (relays.isEmpty()) {
+            state.set(State.CONFIRMED);
+            return;
+        }
+        LOG.debug("{} asking {} to probe {}", address, relays, subject);
+        state.set(State.CONFIRMING);
+        final List<ListenableFuture<RapidResponse>> calls = new ArrayList<>(relays.size());
+        for (final Endpoint relay: relays) {
+            calls.add(rpcClient.sendMessageBestEffort(relay, relayedProbeMessage));
+        }
+        Futures.addCallback(Futures.successfulAsList(calls), new FutureCallback<List<RapidResponse>>() {
+            @Override
+            public void onSuccess(@Nullable final List<RapidResponse> responses) {
+                final boolean reached = responses != null && responses.stream().anyMatch(
+                        response -> response != null && response.getProbeResponse().getRelayed()
+                                && response.getProbeResponse().getStatus().equals(NodeStatus.OK));
+                if (reached) {
+                    LOG.debug("{} reached {} through a relay, treating the probe failures as a link failure",
+                              address, subject);
+                    failureCount.set(0);
+                    state.set(State.PROBING);
+                }
+                else {
+                    state.set(State.CONFIRMED);
+                }
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                state.set(State.CONFIRMED);
+            }
+        });
+    }
+
+    /**
+     * Picks up to numRelays distinct observers of the subject other than this node.
+     */
+    private List<Endpoint> selectRelays() {
+        final Set<Endpoint> candidates = new LinkedHashSet<>(observersOf.apply(subject));
+        candidates.remove(address);
+        candidates.remove(subject);
+        final List<Endpoint> relays = new ArrayList<>(candidates);
+        Collections.shuffle(relays, ThreadLocalRandom.current());
+        return relays.subList(0, Math.min(numRelays, relays.size()));
+    }
+
+    private class ProbeCallback implements FutureCallback<RapidResponse> {
+        @Override
+        public void onSuccess(@Nullable final RapidResponse response) {
+            if (response == null) {
+                onFailure(new RuntimeException("null probe response received"));
+                return;
+            }
+            if (response.getProbeResponse().getStatus().equals(NodeStatus.BOOTSTRAPPING)
+                    && bootstrapResponseCount.incrementAndGet() > BOOTSTRAP_COUNT_THRESHOLD) {
+                onFailure(new RuntimeException("BOOTSTRAP_COUNT_THRESHOLD exceeded"));
+            }
+        }
+
+        @Override
+        public void onFailure(final Throwable throwable) {
+            failureCount.incrementAndGet();
+            LOG.trace("Probe failed at {} from {}: {}", address, subject, throwable.getLocalizedMessage());
+        }
+    }
+
+    public static class Factory implements IEdgeFailureDetectorFactory {
+        private final Endpoint address;
+        private final IMessagingClient messagingClient;
+        private final Function<Endpoint, List<Endpoint>> observersOf;
+        private final int numRelays;
+
+        /**
+         * @param observersOf returns the current observers of a subject, which are the candidate relays
+         */
+        public Factory(final Endpoint address, final IMessagingClient messagingClient,
+                       final Function<Endpoint, List<Endpoint>> observersOf, final ISettings settings) {
+            this.address = address;
+            this.messagingClient = messagingClient;
+            this.observersOf = observersOf;
+            this.numRelays = settings.getIndirectProbeRelays();
+        }
+
+        @Override
+        public Runnable createInstance(final Endpoint subject, final Runnable notifier) {
+            return new IndirectProbingFailureDetector(address, subject, messagingClient, notifier, observersOf,
+                                                      numRelays);
+        }
+    }
+
+    public interface ISettings {
+        boolean getUseIndirectProbingFailureDetector();
+
+        int getIndirectProbeRelays();
+    }
+}
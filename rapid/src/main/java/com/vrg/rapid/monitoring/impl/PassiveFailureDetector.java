@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid.monitoring.impl;
+
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.messaging.PeerActivity;
+import com.vrg.rapid.monitoring.IEdgeFailureDetectorFactory;
+import com.vrg.rapid.pb.Endpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An edge failure detector that relies on the traffic a node already exchanges with its subject, and only falls
+ * back to probing when the link goes quiet.
+ *
+ * Probing is delegated to another failure detector, which is skipped in every interval in which the messaging
+ * client has received a response from the subject. This suits detectors that count failed probes, like
+ * PingPongFailureDetector, but not ones that expect probes at a regular rate, like PhiAccrualFailureDetector.
+ */
+public class PassiveFailureDetector implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(PassiveFailureDetector.class);
+    public static final boolean DEFAULT_USE_PASSIVE_FAILURE_DETECTION = false;
+    private final Endpoint subject;
+    private final Runnable activeDetector;
+    private final PeerActivity peerActivity;
+    private final long intervalInMs;
+
+    private PassiveFailureDetector(final Endpoint subject, final Runnable activeDetector,
+                                   final PeerActivity peerActivity, final long intervalInMs) {
+        this.subject = subject;
+        this.activeDetector = activeDetector;
+        this.peerActivity = peerActivity;
+        this.intervalInMs = intervalInMs;
+    }
+
+    @Override
+    public void run() {
+        if (peerActivity.hasRespondedWithin(subject, intervalInMs, TimeUnit.MILLISECONDS)) {
+            LOG.trace("Skipping probe to {}, which responded within the last interval", subject);
+            return;
+        }
+        activeDetector.run();
+    }
+
+    public static class Factory implements IEdgeFailureDetectorFactory {
+        private final IEdgeFailureDetectorFactory activeDetectorFactory;
+        @Nullable private final PeerActivity peerActivity;
+        private final long intervalInMs;
+
+        /**
+         * @param activeDetectorFactory creates the detectors that probe subjects whose links are quiet
+         * @param messagingClient the client whose responses count as activity
+         */
+        public Factory(final IEdgeFailureDetectorFactory activeDetectorFactory,
+                       final IMessagingClient messagingClient, final ISettings settings) {
+            this.activeDetectorFactory = activeDetectorFactory;
+            this.peerActivity = messagingClient.getPeerActivity();
+            this.intervalInMs = settings.getFailureDetectorIntervalInMs();
+        }
+
+        /**
+         * Returns the active detector as is if the messaging client does not track responses.
+         */
+        @Override
+        public Runnable createInstance(final Endpoint subject, final Runnable notifier) {
+            final Runnable activeDetector = activeDetectorFactory.createInstance(subject, notifier);
+            if (peerActivity == null) {
+                return activeDetector;
+            }
+            return new PassiveFailureDetector(subject, activeDetector, peerActivity, intervalInMs);
+        }
+    }
+
+    public interface ISettings {
+        boolean getUsePassiveFailureDetection();
+
+        int getFailureDetectorIntervalInMs();
+    }
+}
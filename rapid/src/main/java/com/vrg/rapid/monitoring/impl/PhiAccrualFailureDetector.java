@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid.monitoring.impl;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.monitoring.IEdgeFailureDetectorFactory;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.NodeStatus;
+import com.vrg.rapid.pb.ProbeMessage;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A phi-accrual failure detector (Hayashibara et al., "The phi accrual failure detector", SRDS 2004).
+ *
+ * Every answered probe counts as a heartbeat from the subject. The detector keeps the intervals between recent
+ * heartbeats in a fixed-size ring buffer and models them as a normal distribution. The suspicion level phi is
+ * -log10 of the probability that the next heartbeat arrives later than the time elapsed since the last one, so
+ * it grows continuously while the subject stays silent, and grows faster for subjects whose heartbeats have been
+ * regular. The edge is reported faulty once phi crosses the configured threshold.
+ *
+ * As in Akka, an acceptable heartbeat pause is added to the mean interval. A pause that is short compared to it,
+ * such as a garbage collection or a few delayed probes, then barely moves phi, whereas without it the tight
+ * distribution of a subject with regular heartbeats makes phi jump past the threshold on a single late probe.
+ */
+@NotThreadSafe
+public class PhiAccrualFailureDetector implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(PhiAccrualFailureDetector.class);
+    public static final boolean DEFAULT_USE_PHI_ACCRUAL_FAILURE_DETECTOR = false;
+    public static final double DEFAULT_PHI_THRESHOLD = 8.0;
+    public static final int DEFAULT_PHI_WINDOW_SIZE = 100;
+    public static final int DEFAULT_PHI_MIN_STD_DEVIATION_MS = 100;
+    public static final int DEFAULT_PHI_ACCEPTABLE_HEARTBEAT_PAUSE_MS = 1000;
+
+    // Number of BOOTSTRAPPING status responses a node is allowed to return before they stop counting as
+    // heartbeats.
+    private static final int BOOTSTRAP_COUNT_THRESHOLD = 30;
+    private final Endpoint address;
+    private final Endpoint subject;
+    private final IMessagingClient rpcClient;
+    private final Runnable notifier;
+    private final double threshold;
+    private final ArrivalWindow arrivalWindow;
+    private final AtomicInteger bootstrapResponseCount = new AtomicInteger(0);
+    private boolean notified = false;
+
+    // A cache for probe messages. Avoids creating an unnecessary copy of a probe message each time.
+    private final RapidRequest probeMessage;
+
+    private PhiAccrualFailureDetector(final Endpoint address, final Endpoint subject,
+                                      final IMessagingClient rpcClient, final Runnable notifier,
+                                      final ISettings settings) {
+        this.address = address;
+        this.subject = subject;
+        this.rpcClient = rpcClient;
+        this.notifier = notifier;
+        this.threshold = settings.getPhiThreshold();
+        this.arrivalWindow = new ArrivalWindow(settings.getPhiWindowSize(),
+                                               settings.getFailureDetectorIntervalInMs(),
+                                               settings.getPhiMinStdDeviationMs(),
+                                               settings.getPhiAcceptableHeartbeatPauseMs(), System.nanoTime());
+        this.probeMessage = RapidRequest.newBuilder().setProbeMessage(
+                ProbeMessage.newBuilder().setSender(address).build()).build();
+    }
+
+    @Override
+    public void run() {
+        if (notified) {
+            return;
+        }
+        final double phi = arrivalWindow.phi(System.nanoTime());
+        if (phi >= threshold) {
+            LOG.debug("{} suspects {} with phi {}", address, subject, phi);
+            notified = true;
+            notifier.run();
+        }
+        else {
+            LOG.trace("{} sending probe to {}", address, subject);
+            Futures.addCallback(rpcClient.sendMessageBestEffort(subject, probeMessage),
+                    new ProbeCallback());
+        }
+    }
+
+    private class ProbeCallback implements FutureCallback<RapidResponse> {
+        @Override
+        public void onSuccess(@Nullable final RapidResponse response) {
+            if (response == null) {
+                return;
+            }
+            if (response.getProbeResponse().getStatus().equals(NodeStatus.BOOTSTRAPPING)
+                    && bootstrapResponseCount.incrementAndGet() > BOOTSTRAP_COUNT_THRESHOLD) {
+                return;
+            }
+            arrivalWindow.heartbeat(System.nanoTime());
+        }
+
+        @Override
+        public void onFailure(final Throwable throwable) {
+            LOG.trace("Probe failed at {} from {}: {}", address, subject, throwable.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * The intervals between the most recent heartbeats, kept in a ring buffer along with their running sum and
+     * sum of squares, so that adding an interval and computing phi are O(1).
+     */
+    @VisibleForTesting
+    static final class ArrivalWindow {
+        private final long[] intervalsMs;
+        private final double minStdDeviationMs;
+        private final long acceptablePauseMs;
+        @GuardedBy("this") private int next = 0;
+        @GuardedBy("this") private int count = 0;
+        @GuardedBy("this") private long sum = 0;
+        @GuardedBy("this") private long sumOfSquares = 0;
+        @GuardedBy("this") private long lastHeartbeatNanos;
+        @GuardedBy("this") private boolean hasHeartbeat = false;
+
+        /**
+         * The window starts out with two intervals around the expected one, so that a subject that never
+         * answers a probe is suspected within a few intervals. Until the first heartbeat, the time elapsed
+         * is measured from the creation of the window.
+         */
+        ArrivalWindow(final int size, final long expectedIntervalMs, final long minStdDeviationMs,
+                      final long acceptablePauseMs, final long nowNanos) {
+            if (size < 2) {
+                throw new IllegalArgumentException("Phi window size must be at least 2 (size: " + size + ")");
+            }
+            this.intervalsMs = new long[size];
+            this.minStdDeviationMs = minStdDeviationMs;
+            this.acceptablePauseMs = acceptablePauseMs;
+            this.lastHeartbeatNanos = nowNanos;
+            final long deviationMs = expectedIntervalMs / 4;
+            add(expectedIntervalMs - deviationMs);
+            add(expectedIntervalMs + deviationMs);
+        }
+
+        synchronized void heartbeat(final long nowNanos) {
+            // The time until the first heartbeat is a round-trip time rather than an interval between heartbeats
+            if (hasHeartbeat) {
+                add(TimeUnit.NANOSECONDS.toMillis(nowNanos - lastHeartbeatNanos));
+            }
+            hasHeartbeat = true;
+            lastHeartbeatNanos = nowNanos;
+        }
+
+        synchronized double phi(final long nowNanos) {
+            final double elapsedMs = TimeUnit.NANOSECONDS.toMillis(nowNanos - lastHeartbeatNanos);
+            final double mean = (double) sum / count;
+            final double variance = Math.max(0, (double) sumOfSquares / count - mean * mean);
+            final double stdDeviation = Math.max(minStdDeviationMs, Math.sqrt(variance));
+            return phi(elapsedMs, mean + acceptablePauseMs, stdDeviation);
+        }
+
+        @GuardedBy("this")
+        private void add(final long intervalMs) {
+            if (count == intervalsMs.length) {
+                final long evicted = intervalsMs[next];
+                sum -= evicted;
+                sumOfSquares -= evicted * evicted;
+            } else {
+                count++;
+            }
+            intervalsMs[next] = intervalMs;
+            sum += intervalMs;
+            sumOfSquares += intervalMs * intervalMs;
+            next = (next + 1) % intervalsMs.length;
+        }
+
+        /**
+         * -log10 of the probability that a normally distributed interval exceeds elapsedMs, using the logistic
+         * approximation of the normal CDF, which stays finite far into the tail.
+         */
+        private static double phi(final double elapsedMs, final double mean, final double stdDeviation) {
+            final double y = (elapsedMs - mean) / stdDeviation;
+            final double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            if (elapsedMs > mean) {
+                return -Math.log10(e / (1.0 + e));
+            }
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+    }
+
+    public static class Factory implements IEdgeFailureDetectorFactory {
+        private final Endpoint address;
+        private final IMessagingClient messagingClient;
+        private final ISettings settings;
+
+        public Factory(final Endpoint address, final IMessagingClient messagingClient, final ISettings settings) {
+            this.address = address;
+            this.messagingClient = messagingClient;
+            this.settings = settings;
+        }
+
+        @Override
+        public Runnable createInstance(final Endpoint subject, final Runnable notifier) {
+            return new PhiAccrualFailureDetector(address, subject, messagingClient, notifier, settings);
+        }
+    }
+
+    public interface ISettings {
+        boolean getUsePhiAccrualFailureDetector();
+
+        int getFailureDetectorIntervalInMs();
+
+        double getPhiThreshold();
+
+        int getPhiWindowSize();
+
+        int getPhiMinStdDeviationMs();
+
+        int getPhiAcceptableHeartbeatPauseMs();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.messaging.IBroadcaster;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.monitoring.impl.PingPongFailureDetector;
+import com.vrg.rapid.pb.AlertMessage;
+import com.vrg.rapid.pb.BatchedAlertMessage;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.JoinMessage;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the batching of the alerts a node broadcasts, driven by join requests that a single node cluster
+ * answers with alerts.
+ */
+public class AlertBatchingTest {
+    private static final int K = 10;
+    private static final int H = 9;
+    private static final int L = 4;
+    private final Endpoint myAddr = Utils.hostFromParts("127.0.0.1", 1234);
+    private final Settings settings = new Settings();
+    private final RecordingBroadcaster broadcaster = new RecordingBroadcaster();
+    private final SharedResources resources = new SharedResources(myAddr);
+    private final MembershipView view = new MembershipView(K);
+    // Joins are only answered once a view change admits the joiners, which never happens here
+    private final List<ListenableFuture<RapidResponse>> pendingJoins = new ArrayList<>();
+    private final List<MembershipService> services = new ArrayList<>();
+
+    @Before
+    public void prepare() {
+        view.ringAdd(myAddr, Utils.nodeIdFromUUID(UUID.randomUUID()));
+    }
+
+    @After
+    public void cleanup() {
+        services.forEach(MembershipService::shutdown);
+        resources.shutdown();
+    }
+
+    /**
+     * A batch is broadcast as soon as it holds as many alerts as the maximum batch size, long before the
+     * batching window would close it.
+     */
+    @Test(timeout = 10000)
+    public void fullBatchesAreFlushedRightAway() throws InterruptedException {
+        settings.setAlertBatchingWindowInMs(60000);
+        settings.setAlertBatchingMaxDelayInMs(60000);
+        settings.setAlertBatchingMaxSize(8);
+        final MembershipService service = createService();
+        for (int i = 0; i < 20; i++) {
+            sendJoin(service, i);
+        }
+        for (int i = 0; i < 2; i++) {
+            final Batch batch = broadcaster.batches.poll(5, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            assertEquals(8, batch.message.getMessagesCount());
+        }
+        // The last four alerts wait for the window
+        assertNull(broadcaster.batches.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Alerts that keep arriving within the batching window are broadcast no later than the maximum delay after
+     * the first of them was queued, instead of once they stop arriving.
+     */
+    @Test(timeout = 10000)
+    public void batchesAreFlushedWithinMaxDelay() throws InterruptedException {
+        final int windowInMs = 200;
+        final int maxDelayInMs = 500;
+        final int numAlerts = 15;
+        settings.setAlertBatchingWindowInMs(windowInMs);
+        settings.setAlertBatchingMaxDelayInMs(maxDelayInMs);
+        settings.setAlertBatchingMaxSize(1000);
+        final MembershipService service = createService();
+        final Map<Endpoint, Long> sentAt = new HashMap<>();
+        for (int i = 0; i < numAlerts; i++) {
+            sentAt.put(sendJoin(service, i), System.currentTimeMillis());
+            Thread.sleep(windowInMs / 2);
+        }
+        int numBatches = 0;
+        int numBatchedAlerts = 0;
+        while (numBatchedAlerts < numAlerts) {
+            final Batch batch = broadcaster.batches.poll(5, TimeUnit.SECONDS);
+            assertNotNull(batch);
+            long firstSentAt = Long.MAX_VALUE;
+            for (final AlertMessage alert : batch.message.getMessagesList()) {
+                firstSentAt = Math.min(firstSentAt, sentAt.get(alert.getEdgeDst()));
+            }
+            // Leaves room for scheduling delays, but not for the whole stream of alerts
+            assertTrue(batch.broadcastAt - firstSentAt < maxDelayInMs + windowInMs);
+            numBatches++;
+            numBatchedAlerts += batch.message.getMessagesCount();
+        }
+        assertEquals(numAlerts, numBatchedAlerts);
+        assertTrue(numBatches > 1);
+    }
+
+    private MembershipService createService() {
+        final IMessagingClient client = new NoOpClient();
+        final MembershipService service = new MembershipService(myAddr, new MultiNodeCutDetector(K, H, L), view,
+                resources, settings, client, broadcaster, new PingPongFailureDetector.Factory(myAddr, client),
+                null, Collections.emptyMap(), new HashMap<>());
+        services.add(service);
+        return service;
+    }
+
+    /**
+     * Sends a join request that the node answers with an alert about the joiner.
+     *
+     * @return the joiner
+     */
+    private Endpoint sendJoin(final MembershipService service, final int i) {
+        final Endpoint joiner = Utils.hostFromParts("127.0.0.1", 2000 + i);
+        final JoinMessage join = JoinMessage.newBuilder()
+                .setSender(joiner)
+                .setNodeId(Utils.nodeIdFromUUID(UUID.randomUUID()))
+                .setConfigurationId(view.getCurrentConfigurationId())
+                .addRingNumber(0)
+                .build();
+        pendingJoins.add(service.handleMessage(Utils.toRapidRequest(join)));
+        return joiner;
+    }
+
+    private static final class Batch {
+        private final BatchedAlertMessage message;
+        private final long broadcastAt;
+
+        private Batch(final BatchedAlertMessage message, final long broadcastAt) {
+            this.message = message;
+            this.broadcastAt = broadcastAt;
+        }
+    }
+
+    private static class RecordingBroadcaster implements IBroadcaster {
+        private final BlockingQueue<Batch> batches = new LinkedBlockingQueue<>();
+
+        @Override
+        public List<ListenableFuture<RapidResponse>> broadcast(final RapidRequest rapidRequest) {
+            if (rapidRequest.hasBatchedAlertMessage()) {
+                batches.add(new Batch(rapidRequest.getBatchedAlertMessage(), System.currentTimeMillis()));
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void setMembership(final List<Endpoint> recipients) {
+        }
+    }
+
+    private static class NoOpClient implements IMessagingClient {
+        @Override
+        public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
+            return Futures.immediateFuture(null);
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg) {
+            return Futures.immediateFuture(null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.AlertMessage;
+import com.vrg.rapid.pb.EdgeStatus;
+import com.vrg.rapid.pb.Endpoint;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the AlertPiggyback, which buffers the alerts that are piggybacked on probes.
+ */
+public class AlertPiggybackTest {
+    private static final long CONFIGURATION_ID = 42;
+    private static final int MAX_ALERTS_PER_PROBE = 4;
+    private static final int RETRANSMIT_MULTIPLIER = 2;
+    private static final int MEMBERSHIP_SIZE = 7;     // Alerts are piggybacked 2 * 3 times
+    private final Endpoint sender = Utils.hostFromParts("127.0.0.1", 1);
+
+    /**
+     * Every alert is piggybacked a bounded number of times, at most a given number of alerts at a time.
+     */
+    @Test
+    public void alertsArePiggybackedBoundedNumberOfTimes() {
+        final AlertPiggyback piggyback = createPiggyback();
+        piggyback.add(createAlert(1, CONFIGURATION_ID));
+        piggyback.add(createAlert(2, CONFIGURATION_ID));
+        for (int i = 0; i < 6; i++) {
+            assertEquals(2, piggyback.take(CONFIGURATION_ID).size());
+        }
+        assertTrue(piggyback.take(CONFIGURATION_ID).isEmpty());
+    }
+
+    /**
+     * Alerts that were piggybacked the fewest times go first, so every alert makes progress even if there are
+     * more alerts than fit on a probe.
+     */
+    @Test
+    public void leastPiggybackedAlertsGoFirst() {
+        final AlertPiggyback piggyback = createPiggyback();
+        for (int i = 0; i < MAX_ALERTS_PER_PROBE * 2; i++) {
+            piggyback.add(createAlert(i, CONFIGURATION_ID));
+        }
+        final Set<AlertMessage> seen = new HashSet<>();
+        seen.addAll(piggyback.take(CONFIGURATION_ID));
+        seen.addAll(piggyback.take(CONFIGURATION_ID));
+        assertEquals(MAX_ALERTS_PER_PROBE * 2, seen.size());
+    }
+
+    /**
+     * Duplicate alerts and alerts from other configurations are not buffered, and alerts are only
+     * piggybacked for peers in the same configuration.
+     */
+    @Test
+    public void onlyAlertsOfTheCurrentConfigurationArePiggybacked() {
+        final AlertPiggyback piggyback = createPiggyback();
+        piggyback.add(createAlert(1, CONFIGURATION_ID));
+        piggyback.add(createAlert(1, CONFIGURATION_ID));
+        piggyback.add(createAlert(2, CONFIGURATION_ID + 1));
+        assertTrue(piggyback.take(CONFIGURATION_ID + 1).isEmpty());
+        assertEquals(1, piggyback.take(CONFIGURATION_ID).size());
+
+        piggyback.reset(CONFIGURATION_ID + 1, MEMBERSHIP_SIZE);
+        assertTrue(piggyback.take(CONFIGURATION_ID + 1).isEmpty());
+    }
+
+    /**
+     * Piggybacked alerts are only handed to the receiver if they are from the current configuration.
+     */
+    @Test
+    public void receivedAlertsAreFilteredByConfiguration() {
+        final AlertPiggyback piggyback = createPiggyback();
+        final List<AlertMessage> received = new ArrayList<>();
+        piggyback.setReceiver((endpoint, alerts) -> received.addAll(alerts));
+        final List<AlertMessage> alerts = new ArrayList<>();
+        alerts.add(createAlert(1, CONFIGURATION_ID));
+        piggyback.receive(sender, CONFIGURATION_ID + 1, alerts);
+        assertTrue(received.isEmpty());
+        piggyback.receive(sender, CONFIGURATION_ID, alerts);
+        assertEquals(alerts, received);
+    }
+
+    /**
+     * An alert is only handed to the receiver the first time it arrives, and not at all if the node buffered
+     * it already.
+     */
+    @Test
+    public void receivedAlertsAreHandedOnce() {
+        final AlertPiggyback piggyback = createPiggyback();
+        final List<AlertMessage> received = new ArrayList<>();
+        piggyback.setReceiver((endpoint, alerts) -> received.addAll(alerts));
+        piggyback.add(createAlert(1, CONFIGURATION_ID));
+        final List<AlertMessage> alerts = new ArrayList<>();
+        alerts.add(createAlert(1, CONFIGURATION_ID));
+        alerts.add(createAlert(2, CONFIGURATION_ID));
+        piggyback.receive(sender, CONFIGURATION_ID, alerts);
+        piggyback.receive(sender, CONFIGURATION_ID, alerts);
+        assertEquals(alerts.subList(1, 2), received);
+
+        // Alerts can be received again in the next configuration
+        piggyback.reset(CONFIGURATION_ID, MEMBERSHIP_SIZE);
+        received.clear();
+        piggyback.receive(sender, CONFIGURATION_ID, alerts);
+        assertEquals(alerts, received);
+    }
+
+    /**
+     * An alert that was dropped after its last transmission is not buffered again when it comes back from
+     * another node.
+     */
+    @Test
+    public void droppedAlertsAreNotBufferedAgain() {
+        final AlertPiggyback piggyback = createPiggyback();
+        piggyback.add(createAlert(1, CONFIGURATION_ID));
+        for (int i = 0; i < 6; i++) {
+            assertEquals(1, piggyback.take(CONFIGURATION_ID).size());
+        }
+        piggyback.add(createAlert(1, CONFIGURATION_ID));
+        assertTrue(piggyback.take(CONFIGURATION_ID).isEmpty());
+    }
+
+    private AlertPiggyback createPiggyback() {
+        final AlertPiggyback piggyback = new AlertPiggyback(MAX_ALERTS_PER_PROBE, RETRANSMIT_MULTIPLIER);
+        piggyback.reset(CONFIGURATION_ID, MEMBERSHIP_SIZE);
+        return piggyback;
+    }
+
+    private AlertMessage createAlert(final int port, final long configurationId) {
+        return AlertMessage.newBuilder()
+                .setEdgeSrc(sender)
+                .setEdgeDst(Utils.hostFromParts("127.0.0.1", 1000 + port))
+                .setEdgeStatus(EdgeStatus.DOWN)
+                .setConfigurationId(configurationId)
+                .addRingNumber(0)
+                .build();
+    }
+}
@@ -16,8 +16,13 @@ package com.vrg.rapid;
 import com.google.common.net.HostAndPort;
 import com.google.protobuf.ByteString;
 import com.vrg.rapid.messaging.impl.GrpcClient;
+import com.vrg.rapid.monitoring.impl.PassiveFailureDetector;
+import com.vrg.rapid.monitoring.impl.PhiAccrualFailureDetector;
 import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.pb.RapidRequest;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -48,8 +53,10 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * Test public API
@@ -61,6 +68,7 @@ public class ClusterTest {
     private final Map<Endpoint, StaticFailureDetector.Factory> staticFds = new ConcurrentHashMap<>();
     private final Map<Endpoint, List<ServerDropInterceptors.FirstN>> serverInterceptors = new ConcurrentHashMap<>();
     private final Map<Endpoint, List<ClientInterceptors.Delayer>> clientInterceptors = new ConcurrentHashMap<>();
+    @Nullable private RequestRecorder recorder = null;
     private boolean useStaticFd = false;
     private boolean addMetadata = true;
     @Nullable private Random random = null;
@@ -101,6 +109,7 @@ public class ClusterTest {
         // Tests need to set more aggressive frequent failure detection intervals if required
         settings.setFailureDetectorIntervalInMs(1000);
         useStaticFd = false;
+        recorder = null;
         addMetadata = true;
         staticFds.clear();
         serverInterceptors.clear();
@@ -205,6 +214,25 @@ public class ClusterTest {
         waitAndVerifyAgreement(numNodesPhase1 + numNodesPhase2, 10, 1000);
     }
 
+    /**
+     * Same as fiftyNodesJoinTwentyNodeCluster, but with alert batches that are capped in size and latency, so that
+     * the wave of joins is disseminated in several batches. The sizes and delays of the batches are checked by
+     * AlertBatchingTest.
+     */
+    @Test(timeout = 30000)
+    public void fiftyNodesJoinWithBoundedAlertBatches() throws IOException, InterruptedException {
+        settings.setAlertBatchingWindowInMs(20);
+        settings.setAlertBatchingMaxDelayInMs(50);
+        settings.setAlertBatchingMaxSize(8);
+        final int numNodesPhase1 = 20;
+        final int numNodesPhase2 = 50;
+        final Endpoint seedEndpoint = Utils.hostFromParts("127.0.0.1", basePort);
+        createCluster(numNodesPhase1, seedEndpoint);
+        waitAndVerifyAgreement(numNodesPhase1, 10, 100);
+        extendCluster(numNodesPhase2, seedEndpoint);
+        waitAndVerifyAgreement(numNodesPhase1 + numNodesPhase2, 10, 1000);
+    }
+
     /**
      * This test starts with a 4 node cluster. We then fail a single node to see if the monitoring mechanism
      * identifies the failing node and arrives at a decision to remove it.
@@ -222,6 +250,19 @@ public class ClusterTest {
         verifyNumClusterInstances(numNodes - 1);
     }
 
+    /**
+     * Same as concurrentNodeJoinsAndFails, but with multi-threaded messaging and failure detection lanes. The sizes
+     * of the lanes and the lane the failure detectors run on are checked by SharedResourcesTest.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsAndFailsWithThreadPools() throws IOException, InterruptedException {
+        settings.setServerExecutorThreads(4);
+        settings.setClientExecutorThreads(4);
+        settings.setBackgroundExecutorThreads(2);
+        settings.setFailureDetectorThreads(4);
+        concurrentNodeJoinsAndFails();
+    }
+
     /**
      * This test starts with a 30 node cluster, then fails 5 nodes while an additional 10 join.
      */
@@ -267,6 +308,158 @@ public class ClusterTest {
         verifyNumClusterInstances(numNodes + phaseOneJoiners + phaseTwojoiners);
     }
 
+    /**
+     * Same as concurrentNodeJoinsAndFails, but with requests to the same destination coalesced into batches.
+     * Whether two requests to the same destination fall into the same window depends on timing here, so the
+     * batching itself is covered by CoalescingMessagingClientTest.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsAndFailsWithCoalescing() throws IOException, InterruptedException {
+        settings.setUseMessageCoalescing(true);
+        concurrentNodeJoinsAndFails();
+    }
+
+    /**
+     * Same as concurrentNodeJoinsAndFails, but with requests multiplexed over one stream per peer.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsAndFailsWithStreams() throws IOException, InterruptedException {
+        final RequestRecorder requests = recordRequests();
+        settings.setUseGrpcStreams(true);
+        concurrentNodeJoinsAndFails();
+        assertTrue(requests.getStreamCalls() > 0);
+        assertEquals(0, requests.getUnaryCalls());
+    }
+
+    /**
+     * Same as concurrentNodeJoinsNetty, but with requests multiplexed over one stream per peer.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsNettyWithStreams() throws IOException, InterruptedException {
+        final RequestRecorder requests = recordRequests();
+        settings.setUseGrpcStreams(true);
+        concurrentNodeJoinsNetty();
+        assertTrue(requests.getStreamCalls() > 0);
+        assertEquals(0, requests.getUnaryCalls());
+    }
+
+    /**
+     * Same as concurrentNodeJoinsAndFails, but with timeouts derived from round-trip time estimates.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsAndFailsWithAdaptiveTimeouts() throws IOException, InterruptedException {
+        final RequestRecorder requests = recordRequests();
+        settings.setUseAdaptiveGrpcTimeouts(true);
+        concurrentNodeJoinsAndFails();
+        // Round-trips within the process are fast, so the derived timeouts stay well below the static one
+        assertTrue(requests.getShortestDeadlineMs(RapidRequest.ContentCase.BATCHEDALERTMESSAGE)
+                   < settings.getGrpcTimeoutMs() / 2);
+    }
+
+    /**
+     * Same as concurrentNodeJoinsAndFails, but with requests handled in priority order from bounded queues.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsAndFailsWithRequestPriorities() throws IOException, InterruptedException {
+        settings.setUseRequestPriorities(true);
+        concurrentNodeJoinsAndFails();
+        assertTrue(instances.values().stream()
+                            .mapToLong(cluster -> cluster.getSharedResources().getPrioritizedRequestCount())
+                            .sum() > 0);
+    }
+
+    /**
+     * Same as concurrentNodeJoinsAndFails, but with the phi-accrual failure detector.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsAndFailsWithPhiAccrual() throws IOException, InterruptedException {
+        settings.setUsePhiAccrualFailureDetector(true);
+        concurrentNodeJoinsAndFails();
+        assertEdgeFailureDetectors(PhiAccrualFailureDetector.class);
+    }
+
+    /**
+     * Same as oneFailureOutOfFiveNodes, but with the phi-accrual failure detector.
+     */
+    @Test(timeout = 30000)
+    public void oneFailureOutOfFiveNodesWithPhiAccrual() throws IOException, InterruptedException {
+        settings.setUsePhiAccrualFailureDetector(true);
+        oneFailureOutOfFiveNodes();
+        assertEdgeFailureDetectors(PhiAccrualFailureDetector.class);
+    }
+
+    /**
+     * Same as concurrentNodeJoinsAndFails, but with alerts piggybacked on probes.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsAndFailsWithPiggybacking() throws IOException, InterruptedException {
+        final RequestRecorder requests = recordRequests();
+        settings.setUseProbePiggybacking(true);
+        concurrentNodeJoinsAndFails();
+        assertTrue(requests.countSent(request -> request.getProbeMessage().getAlertsCount() > 0) > 0);
+    }
+
+    /**
+     * Same as oneFailureOutOfFiveNodes, but with alerts piggybacked on probes.
+     */
+    @Test(timeout = 30000)
+    public void oneFailureOutOfFiveNodesWithPiggybacking() throws IOException, InterruptedException {
+        final RequestRecorder requests = recordRequests();
+        settings.setUseProbePiggybacking(true);
+        oneFailureOutOfFiveNodes();
+        assertTrue(requests.countSent(request -> request.getProbeMessage().getAlertsCount() > 0) > 0);
+    }
+
+    /**
+     * Same as concurrentNodeJoinsAndFails, but with the indirect probing failure detector.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsAndFailsWithIndirectProbing() throws IOException, InterruptedException {
+        final RequestRecorder requests = recordRequests();
+        settings.setUseIndirectProbingFailureDetector(true);
+        concurrentNodeJoinsAndFails();
+        // The failed nodes are probed indirectly through their other observers
+        assertTrue(requests.countSent(request -> request.getProbeMessage().hasTarget()) > 0);
+    }
+
+    /**
+     * Same as concurrentNodeJoinsAndFails, but with passive failure detection.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsAndFailsWithPassiveDetection() throws IOException, InterruptedException {
+        settings.setUsePassiveFailureDetection(true);
+        concurrentNodeJoinsAndFails();
+        assertEdgeFailureDetectors(PassiveFailureDetector.class);
+    }
+
+    /**
+     * Same as oneFailureOutOfFiveNodes, but with passive failure detection.
+     */
+    @Test(timeout = 30000)
+    public void oneFailureOutOfFiveNodesWithPassiveDetection() throws IOException, InterruptedException {
+        settings.setUsePassiveFailureDetection(true);
+        oneFailureOutOfFiveNodes();
+        assertEdgeFailureDetectors(PassiveFailureDetector.class);
+    }
+
+    /**
+     * Same as concurrentNodeJoinsNetty, but with the epoll transport. Skipped where epoll is unavailable.
+     */
+    @Test(timeout = 30000)
+    public void concurrentNodeJoinsEpoll() throws IOException, InterruptedException {
+        assumeTrue(Epoll.isAvailable());
+        settings.setUseEpollTransport(true);
+        final SharedResources resources = new SharedResources(Utils.hostFromParts("127.0.0.1", basePort),
+                                                                  settings);
+        try {
+            assertEquals(EpollSocketChannel.class, resources.getClientChannelType());
+            assertEquals(EpollServerSocketChannel.class, resources.getServerChannelType());
+        } finally {
+            resources.shutdown();
+        }
+        concurrentNodeJoinsNetty();
+    }
+
     /**
      * This test starts with a 50 node cluster. We then fail 12 nodes to see if the monitoring mechanism
      * identifies the crashed nodes, and arrives at a decision.
@@ -315,6 +508,17 @@ public class ClusterTest {
     }
 
 
+    /**
+     * Fails a third of a 50 node cluster while alerts and consensus messages are relayed over gossip trees,
+     * so that many relays are down. The survivors only agree if the parents of failed relays make up for them.
+     */
+    @Test(timeout = 30000)
+    public void failRandomThirdOfNodesWithGossip() throws IOException, InterruptedException {
+        settings.setUseGossipBroadcaster(true);
+        failRandomThirdOfNodes();
+    }
+
+
     /**
      * This test starts with a 50 node cluster. We then use the static failure detector to fail
      * all edges to 10 nodes.
@@ -357,6 +561,26 @@ public class ClusterTest {
         verifyNumClusterInstances(numNodes);
     }
 
+    /**
+     * Same as injectAsymmetricDrops, but with the indirect probing failure detector. The failing nodes drop all
+     * probes instead of the first 100, which the direct probes alone would use up, so that the probes relayed
+     * by other observers do not reach them either, and they are still removed.
+     */
+    @Test(timeout = 30000)
+    public void injectAsymmetricDropsWithIndirectProbing() throws IOException, InterruptedException {
+        settings.setUseIndirectProbingFailureDetector(true);
+        useFastFailureDetectionTimeouts();
+        final int numNodes = 50;
+        final int numFailingNodes = 10;
+        final Endpoint seedEndpoint = Utils.hostFromParts("127.0.0.1", basePort);
+        final Set<Endpoint> failedNodes =
+                getRandomHosts(basePort + 1, basePort + numNodes, numFailingNodes);
+        failedNodes.forEach(host -> dropFirstNAtServer(host, Integer.MAX_VALUE, RapidRequest.ContentCase.PROBEMESSAGE));
+        createCluster(numNodes, seedEndpoint);
+        waitAndVerifyAgreement(numNodes - failedNodes.size(), 10, 1000);
+        verifyNumClusterInstances(numNodes);
+    }
+
     /**
      * This test starts with a node joining a 1 node cluster. We drop phase 2 messages at the seed
      * such that RPC-level retries of the first join attempt eventually get through.
@@ -750,6 +974,11 @@ public class ClusterTest {
                             Collections.emptyList(),
                             settings.getUseInProcessTransport()));
         }
+        if (recorder != null) {
+            builder = builder.setMessagingClientAndServer(new TestingGrpcClient(endpoint, settings,
+                                                                                Collections.emptyList(), recorder),
+                                                          new TestingGrpcServer(endpoint, settings, recorder));
+        }
         if (addMetadata) {
             final ByteString byteString = ByteString.copyFrom(endpoint.toString(), Charset.defaultCharset());
             builder = builder.setMetadata(Collections.singletonMap("Key", byteString));
@@ -758,6 +987,23 @@ public class ClusterTest {
         return builder;
     }
 
+    /**
+     * Checks that the nodes monitor their subjects with edge failure detectors of the given type.
+     */
+    private void assertEdgeFailureDetectors(final Class<?> detectorType) {
+        final List<Runnable> detectors = instances.values().stream()
+                                                  .flatMap(cluster -> cluster.getEdgeFailureDetectors().stream())
+                                                  .collect(Collectors.toList());
+        assertFalse(detectors.isEmpty());
+        assertTrue(detectors.stream().allMatch(detectorType::isInstance));
+    }
+
+    // Helper that records the requests exchanged by the nodes created from here on
+    private RequestRecorder recordRequests() {
+        recorder = new RequestRecorder();
+        return recorder;
+    }
+
     // Helper that drops the first N requests at a server of a given type
     private <T, E> void dropFirstNAtServer(final Endpoint endpoint, final int N,
                                            final RapidRequest.ContentCase contentCase) {
@@ -784,4 +1030,4 @@ public class ClusterTest {
         settings.setGrpcProbeTimeoutMs(10);
         settings.setFailureDetectorIntervalInMs(50);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.messaging.impl.CoalescingMessagingClient;
+import com.vrg.rapid.pb.AlertMessage;
+import com.vrg.rapid.pb.BatchedAlertMessage;
+import com.vrg.rapid.pb.BatchedResponse;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.JoinResponse;
+import com.vrg.rapid.pb.ProbeMessage;
+import com.vrg.rapid.pb.ProbeResponse;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the CoalescingMessagingClient.
+ */
+public class CoalescingMessagingClientTest {
+    private final List<RapidRequest> sent = new ArrayList<>();
+    private final List<RapidRequest> sentBestEffort = new ArrayList<>();
+    private final Endpoint dst = Utils.hostFromParts("127.0.0.1", 1234);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Settings settings = new Settings();
+
+    @Before
+    public void beforeTest() {
+        sent.clear();
+        sentBestEffort.clear();
+        settings.setMessageCoalescingWindowInMs(500);
+        settings.setMessageCoalescingMaxBatchSize(10);
+    }
+
+    @After
+    public void afterTest() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Requests to the same destination are sent as a single batch, and each request gets its own response.
+     */
+    @Test
+    public void requestsAreCoalesced() throws InterruptedException, ExecutionException {
+        final IMessagingClient client = new CoalescingMessagingClient(new EchoClient(), scheduler, settings);
+        final List<ListenableFuture<RapidResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(client.sendMessageBestEffort(dst, createAlert(i)));
+        }
+        final List<RapidResponse> responses = Futures.allAsList(futures).get();
+        synchronized (sent) {
+            assertEquals(1, sent.size());
+            assertEquals(5, sent.get(0).getBatchedRequest().getRequestsCount());
+            assertEquals(1, sentBestEffort.size());
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, responses.get(i).getJoinResponse().getConfigurationId());
+        }
+    }
+
+    /**
+     * A batch is sent out as soon as it reaches the maximum batch size.
+     */
+    @Test
+    public void fullBatchesAreSentImmediately() {
+        settings.setMessageCoalescingWindowInMs(60000);
+        final IMessagingClient client = new CoalescingMessagingClient(new EchoClient(), scheduler, settings);
+        for (int i = 0; i < 25; i++) {
+            client.sendMessage(dst, createAlert(i));
+        }
+        synchronized (sent) {
+            assertEquals(2, sent.size());
+            sent.forEach(request -> assertEquals(10, request.getBatchedRequest().getRequestsCount()));
+        }
+        client.shutdown();
+        synchronized (sent) {
+            assertEquals(3, sent.size());
+            assertEquals(5, sent.get(2).getBatchedRequest().getRequestsCount());
+        }
+    }
+
+    /**
+     * A batch that is sent out because it is full no longer waits for its window to elapse.
+     */
+    @Test
+    public void fullBatchesCancelTheirWindow() {
+        settings.setMessageCoalescingWindowInMs(60000);
+        final ScheduledThreadPoolExecutor windows = new ScheduledThreadPoolExecutor(1);
+        try {
+            final IMessagingClient client = new CoalescingMessagingClient(new EchoClient(), windows, settings);
+            for (int i = 0; i < 15; i++) {
+                client.sendMessage(dst, createAlert(i));
+            }
+            final List<Runnable> pending = new ArrayList<>(windows.getQueue());
+            assertEquals(2, pending.size());
+            assertTrue(((Future<?>) pending.get(0)).isCancelled());
+            assertFalse(((Future<?>) pending.get(1)).isCancelled());
+        } finally {
+            windows.shutdownNow();
+        }
+    }
+
+    /**
+     * Probes are not delayed by the coalescing window.
+     */
+    @Test
+    public void probesAreNotCoalesced() throws InterruptedException, ExecutionException {
+        settings.setMessageCoalescingWindowInMs(60000);
+        final IMessagingClient client = new CoalescingMessagingClient(new EchoClient(), scheduler, settings);
+        final RapidResponse response =
+                client.sendMessageBestEffort(dst, Utils.toRapidRequest(ProbeMessage.getDefaultInstance())).get();
+        assertTrue(response.hasProbeResponse());
+    }
+
+    /**
+     * Best-effort requests are not batched together with requests that are sent with retries.
+     */
+    @Test
+    public void bestEffortRequestsAreBatchedSeparately() {
+        settings.setMessageCoalescingWindowInMs(60000);
+        final IMessagingClient client = new CoalescingMessagingClient(new EchoClient(), scheduler, settings);
+        for (int i = 0; i < 3; i++) {
+            client.sendMessage(dst, createAlert(i));
+            client.sendMessageBestEffort(dst, createAlert(i));
+        }
+        client.shutdown();
+        synchronized (sent) {
+            assertEquals(2, sent.size());
+            assertEquals(1, sentBestEffort.size());
+            sent.forEach(request -> assertEquals(3, request.getBatchedRequest().getRequestsCount()));
+        }
+    }
+
+    private static RapidRequest createAlert(final long configurationId) {
+        return Utils.toRapidRequest(BatchedAlertMessage.newBuilder()
+                                                       .addMessages(AlertMessage.newBuilder()
+                                                                                .setConfigurationId(configurationId))
+                                                       .build());
+    }
+
+    /**
+     * Records requests, and answers alerts and Phase1aMessages with a JoinResponse carrying the same
+     * configuration ID.
+     */
+    private class EchoClient implements IMessagingClient {
+        @Override
+        public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
+            synchronized (sent) {
+                sent.add(msg);
+            }
+            return Futures.immediateFuture(respond(msg));
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote,
+                                                                     final RapidRequest msg) {
+            synchronized (sent) {
+                sentBestEffort.add(msg);
+            }
+            return sendMessage(remote, msg);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        private RapidResponse respond(final RapidRequest msg) {
+            switch (msg.getContentCase()) {
+                case BATCHEDREQUEST:
+                    final BatchedResponse.Builder builder = BatchedResponse.newBuilder();
+                    msg.getBatchedRequest().getRequestsList().forEach(req -> builder.addResponses(respond(req)));
+                    return RapidResponse.newBuilder().setBatchedResponse(builder).build();
+                case PHASE1AMESSAGE:
+                    return Utils.toRapidResponse(JoinResponse.newBuilder()
+                                                             .setConfigurationId(msg.getPhase1AMessage()
+                                                                                    .getConfigurationId())
+                                                             .build());
+                case BATCHEDALERTMESSAGE:
+                    return Utils.toRapidResponse(JoinResponse.newBuilder()
+                                                             .setConfigurationId(msg.getBatchedAlertMessage()
+                                                                                    .getMessages(0)
+                                                                                    .getConfigurationId())
+                                                             .build());
+                default:
+                    return Utils.toRapidResponse(ProbeResponse.getDefaultInstance());
+            }
+        }
+    }
+}
@@ -16,7 +16,10 @@ package com.vrg.rapid;
 import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.pb.EdgeStatus;
 import com.vrg.rapid.pb.AlertMessage;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
 import org.junit.Test;
+import org.junit.runner.RunWith;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -28,8 +31,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
- * Tests for multi node cut detection
+ * Tests for multi node cut detection, run against both cut detector implementations
  */
+@RunWith(JUnitParamsRunner.class)
 public class CutDetectionTest {
     private static final int K = 10;
     private static final int H = 8;
@@ -40,8 +44,9 @@ public class CutDetectionTest {
      * A series of updates with the right ring indexes
      */
     @Test
-    public void cutDetectionTest() {
-        final MultiNodeCutDetector wb = new MultiNodeCutDetector(K, H, L);
+    @Parameters({"false", "true"})
+    public void cutDetectionTest(final boolean useDenseCutDetector) {
+        final ICutDetector wb = createCutDetector(useDenseCutDetector, new MembershipView(K));
         final Endpoint dst = Utils.hostFromParts("127.0.0.2", 2);
         List<Endpoint> ret;
 
@@ -59,8 +64,9 @@ public class CutDetectionTest {
     }
 
     @Test
-    public void cutDetectionTestBlockingOneBlocker() {
-        final MultiNodeCutDetector wb = new MultiNodeCutDetector(K, H, L);
+    @Parameters({"false", "true"})
+    public void cutDetectionTestBlockingOneBlocker(final boolean useDenseCutDetector) {
+        final ICutDetector wb = createCutDetector(useDenseCutDetector, new MembershipView(K));
         final Endpoint dst1 = Utils.hostFromParts("127.0.0.2", 2);
         final Endpoint dst2 = Utils.hostFromParts("127.0.0.3", 2);
         List<Endpoint> ret;
@@ -92,8 +98,9 @@ public class CutDetectionTest {
 
 
     @Test
-    public void cutDetectionTestBlockingThreeBlockers() {
-        final MultiNodeCutDetector wb = new MultiNodeCutDetector(K, H, L);
+    @Parameters({"false", "true"})
+    public void cutDetectionTestBlockingThreeBlockers(final boolean useDenseCutDetector) {
+        final ICutDetector wb = createCutDetector(useDenseCutDetector, new MembershipView(K));
         final Endpoint dst1 = Utils.hostFromParts("127.0.0.2", 2);
         final Endpoint dst2 = Utils.hostFromParts("127.0.0.3", 2);
         final Endpoint dst3 = Utils.hostFromParts("127.0.0.4", 2);
@@ -137,8 +144,9 @@ public class CutDetectionTest {
     }
 
     @Test
-    public void cutDetectionTestBlockingMultipleBlockersPastH() {
-        final MultiNodeCutDetector wb = new MultiNodeCutDetector(K, H, L);
+    @Parameters({"false", "true"})
+    public void cutDetectionTestBlockingMultipleBlockersPastH(final boolean useDenseCutDetector) {
+        final ICutDetector wb = createCutDetector(useDenseCutDetector, new MembershipView(K));
         final Endpoint dst1 = Utils.hostFromParts("127.0.0.2", 2);
         final Endpoint dst2 = Utils.hostFromParts("127.0.0.3", 2);
         final Endpoint dst3 = Utils.hostFromParts("127.0.0.4", 2);
@@ -189,8 +197,9 @@ public class CutDetectionTest {
     }
 
     @Test
-    public void cutDetectionTestBelowL() {
-        final MultiNodeCutDetector wb = new MultiNodeCutDetector(K, H, L);
+    @Parameters({"false", "true"})
+    public void cutDetectionTestBelowL(final boolean useDenseCutDetector) {
+        final ICutDetector wb = createCutDetector(useDenseCutDetector, new MembershipView(K));
         final Endpoint dst1 = Utils.hostFromParts("127.0.0.2", 2);
         final Endpoint dst2 = Utils.hostFromParts("127.0.0.3", 2);
         final Endpoint dst3 = Utils.hostFromParts("127.0.0.4", 2);
@@ -231,8 +240,9 @@ public class CutDetectionTest {
 
 
     @Test
-    public void cutDetectionTestBatch() {
-        final MultiNodeCutDetector wb = new MultiNodeCutDetector(K, H, L);
+    @Parameters({"false", "true"})
+    public void cutDetectionTestBatch(final boolean useDenseCutDetector) {
+        final ICutDetector wb = createCutDetector(useDenseCutDetector, new MembershipView(K));
         final int numNodes = 3;
         final List<Endpoint> endpoints = new ArrayList<>();
         for (int i = 0; i < numNodes; i++) {
@@ -252,9 +262,10 @@ public class CutDetectionTest {
     }
 
     @Test
-    public void cutDetectionTestLinkInvalidation() {
+    @Parameters({"false", "true"})
+    public void cutDetectionTestLinkInvalidation(final boolean useDenseCutDetector) {
         final MembershipView mView = new MembershipView(K);
-        final MultiNodeCutDetector wb = new MultiNodeCutDetector(K, H, L);
+        final ICutDetector wb = createCutDetector(useDenseCutDetector, mView);
         final int numNodes = 30;
         final List<Endpoint> endpoints = new ArrayList<>();
         for (int i = 0; i < numNodes; i++) {
@@ -300,6 +311,61 @@ public class CutDetectionTest {
         }
     }
 
+    /**
+     * Same as cutDetectionTestLinkInvalidation, but with edges invalidated after every alert, the way
+     * MembershipService does for every batch of alerts it receives.
+     */
+    @Test
+    @Parameters({"false", "true"})
+    public void cutDetectionTestLinkInvalidationAcrossBatches(final boolean useDenseCutDetector) {
+        final MembershipView mView = new MembershipView(K);
+        final ICutDetector wb = createCutDetector(useDenseCutDetector, mView);
+        final int numNodes = 30;
+        final List<Endpoint> endpoints = new ArrayList<>();
+        for (int i = 0; i < numNodes; i++) {
+            final Endpoint node = Utils.hostFromParts("127.0.0.2", 2 + i);
+            endpoints.add(node);
+            mView.ringAdd(node, Utils.nodeIdFromUUID(UUID.randomUUID()));
+        }
+
+        final Endpoint dst = endpoints.get(0);
+        final List<Endpoint> observers = mView.getObserversOf(dst);
+        assertEquals(K, observers.size());
+
+        final List<Endpoint> ret = new ArrayList<>();
+
+        // This adds alerts from the observers[0, H - 1) of node dst.
+        for (int i = 0; i < H - 1; i++) {
+            ret.addAll(wb.aggregateForProposal(createAlertMessage(observers.get(i), dst,
+                                                                  EdgeStatus.DOWN, CONFIGURATION_ID, i)));
+            ret.addAll(wb.invalidateFailingEdges(mView));
+            assertEquals(0, ret.size());
+            assertEquals(0, wb.getNumProposals());
+        }
+
+        // Next, we add alerts *about* observers[H - 1, K) of node dst, one round of alerts at a time. These cross
+        // L after dst did, so the edges between them and dst have to be found when they are examined as observers.
+        final Set<Endpoint> failedObservers = new HashSet<>(observers.subList(H - 1, K));
+        for (int j = 0; j < K; j++) {
+            for (final Endpoint failedObserver : failedObservers) {
+                ret.addAll(wb.aggregateForProposal(createAlertMessage(mView.getObserversOf(failedObserver).get(j),
+                        failedObserver, EdgeStatus.DOWN, CONFIGURATION_ID, j)));
+                ret.addAll(wb.invalidateFailingEdges(mView));
+            }
+        }
+
+        // The implicit edges push dst past H, and the proposal is output once all failed observers are past H.
+        assertEquals(4, ret.size());
+        assertEquals(1, wb.getNumProposals());
+        for (final Endpoint node: ret) {
+            assertTrue(failedObservers.contains(node) || node.equals(dst));
+        }
+    }
+
+    private ICutDetector createCutDetector(final boolean useDenseCutDetector, final MembershipView view) {
+        return useDenseCutDetector ? new DenseMultiNodeCutDetector(K, H, L, view) : new MultiNodeCutDetector(K, H, L);
+    }
+
     private AlertMessage createAlertMessage(final Endpoint src,
                                                       final Endpoint dst,
                                                       final EdgeStatus status,
@@ -22,6 +22,8 @@ import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit tests for the MembershipService class without the messaging.
@@ -31,6 +33,7 @@ public class FastPaxosWithoutFallbackTests {
     private static final int K = 10;
     private static final int H = 8;
     private static final int L = 3;
+    private static final int BASE_PORT = 1234;
     private final List<MembershipService> services = new ArrayList<>();
 
     @After
@@ -50,7 +53,7 @@ public class FastPaxosWithoutFallbackTests {
     @TestCaseName("{method}[N={0},Q={1}]")
     public void fastQuorumTestNoConflicts(final int N, final int quorum) throws InterruptedException,
             ExecutionException {
-        final int serverPort = 1234;
+        final int serverPort = BASE_PORT;
         final Endpoint node = Utils.hostFromParts("127.0.0.1", serverPort);
         final Endpoint proposalNode = Utils.hostFromParts("127.0.0.1", serverPort + 1);
         final MembershipView view = createView(serverPort, N);
@@ -61,10 +64,10 @@ public class FastPaxosWithoutFallbackTests {
                 getProposal(currentId, Collections.singletonList(proposalNode));
 
         for (int i = 0; i < quorum - 1; i++) {
-            service.handleMessage(asRapidMessage(proposal.setSender(addrForBase(i)).build())).get();
+            service.handleMessage(asRapidMessage(proposal.setSender(memberAddr(i)).build())).get();
             assertEquals(N, service.getMembershipSize());
         }
-        service.handleMessage(asRapidMessage(proposal.setSender(addrForBase(quorum - 1)).build()))
+        service.handleMessage(asRapidMessage(proposal.setSender(memberAddr(quorum - 1)).build()))
                .get();
         assertEquals(N - 1, service.getMembershipSize());
     }
@@ -87,7 +90,7 @@ public class FastPaxosWithoutFallbackTests {
     public void fastQuorumTestWithConflicts(final int N, final int quorum, final int numConflicts,
                                             final boolean changeExpected)
             throws InterruptedException, IOException, ExecutionException {
-        final int serverPort = 1234;
+        final int serverPort = BASE_PORT;
         final Endpoint node = Utils.hostFromParts("127.0.0.1", serverPort);
         final Endpoint proposalNode = Utils.hostFromParts("127.0.0.1", serverPort + 1);
         final Endpoint proposalNodeConflict = Utils.hostFromParts("127.0.0.1", serverPort + 2);
@@ -101,15 +104,15 @@ public class FastPaxosWithoutFallbackTests {
         final FastRoundPhase2bMessage.Builder proposalConflict =
                 getProposal(currentId, Collections.singletonList(proposalNodeConflict));
         for (int i = 0; i < numConflicts; i++) {
-            service.handleMessage(asRapidMessage(proposalConflict.setSender(addrForBase(i)).build())).get();
+            service.handleMessage(asRapidMessage(proposalConflict.setSender(memberAddr(i)).build())).get();
             assertEquals(N, service.getMembershipSize());
         }
         final int nonConflictCount = Math.min(numConflicts + quorum - 1, N - 1);
         for (int i = numConflicts; i < nonConflictCount; i++) {
-            service.handleMessage(asRapidMessage(proposal.setSender(addrForBase(i)).build())).get();
+            service.handleMessage(asRapidMessage(proposal.setSender(memberAddr(i)).build())).get();
             assertEquals(N, service.getMembershipSize());
         }
-        service.handleMessage(asRapidMessage(proposal.setSender(addrForBase(nonConflictCount)).build())).get();
+        service.handleMessage(asRapidMessage(proposal.setSender(memberAddr(nonConflictCount)).build())).get();
         assertEquals(changeExpected ? N - 1 : N, service.getMembershipSize());
     }
 
@@ -134,6 +137,38 @@ public class FastPaxosWithoutFallbackTests {
         return params;
     }
 
+    /**
+     * Verifies that votes for different proposals are not counted together even if they carry the same
+     * proposal digest, and that the node decides on the proposal that reached a quorum.
+     */
+    @Test
+    public void fastQuorumTestWithDigestCollision() throws InterruptedException, ExecutionException {
+        final int N = 6;
+        final int quorum = 5;
+        final int serverPort = BASE_PORT;
+        final Endpoint node = Utils.hostFromParts("127.0.0.1", serverPort);
+        final Endpoint proposalNode = Utils.hostFromParts("127.0.0.1", serverPort + 1);
+        final Endpoint proposalNodeConflict = Utils.hostFromParts("127.0.0.1", serverPort + 2);
+        final MembershipView view = createView(serverPort, N);
+        final MembershipService service = createAndStartMembershipService(node, view);
+        final long currentId = view.getCurrentConfigurationId();
+
+        final long digest = 42;
+        final FastRoundPhase2bMessage.Builder proposal =
+                getProposal(currentId, Collections.singletonList(proposalNode)).setProposalDigest(digest);
+        final FastRoundPhase2bMessage.Builder proposalConflict =
+                getProposal(currentId, Collections.singletonList(proposalNodeConflict)).setProposalDigest(digest);
+        service.handleMessage(asRapidMessage(proposalConflict.setSender(memberAddr(0)).build())).get();
+        for (int i = 1; i < quorum; i++) {
+            service.handleMessage(asRapidMessage(proposal.setSender(memberAddr(i)).build())).get();
+            assertEquals(N, service.getMembershipSize());
+        }
+        service.handleMessage(asRapidMessage(proposal.setSender(memberAddr(quorum)).build())).get();
+        assertEquals(N - 1, service.getMembershipSize());
+        assertFalse(service.getMembershipView().contains(proposalNode));
+        assertTrue(service.getMembershipView().contains(proposalNodeConflict));
+    }
+
     /**
      * Create a membership service listening on serverAddr
      */
@@ -170,8 +205,11 @@ public class FastPaxosWithoutFallbackTests {
                 .addAllEndpoints(proposal);
     }
 
-    private Endpoint addrForBase(final int port) {
-        return Utils.hostFromParts("127.0.0.1", port);
+    /**
+     * Returns the i-th member of a view created with createView(BASE_PORT, N)
+     */
+    private Endpoint memberAddr(final int i) {
+        return Utils.hostFromParts("127.0.0.1", BASE_PORT + i);
     }
 
     private RapidRequest asRapidMessage(final FastRoundPhase2bMessage proposal) {
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.GossipMessage;
+import com.vrg.rapid.pb.GossipResponse;
+import com.vrg.rapid.pb.ProbeMessage;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import junitparams.naming.TestCaseName;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the GossipBroadcaster, where messages are delivered synchronously between broadcasters.
+ */
+@RunWith(JUnitParamsRunner.class)
+public class GossipBroadcasterTest {
+    private static final int K = 10;
+    private final Map<Endpoint, GossipBroadcaster> broadcasters = new HashMap<>();
+    private final Map<Endpoint, Integer> deliveries = new HashMap<>();
+    private final Map<Endpoint, Integer> messagesSent = new HashMap<>();
+    private final Set<Endpoint> failedNodes = new HashSet<>();
+
+    /**
+     * Every member receives a broadcast exactly once, and no member sends more than fanout messages per tree.
+     */
+    @Test
+    @Parameters(method = "gossipParameters")
+    @TestCaseName("{method}[N={0},fanout={1},redundancy={2}]")
+    public void broadcastReachesAllMembersOnce(final int numNodes, final int fanout, final int redundancy) {
+        final MembershipView view = createView(numNodes);
+        createBroadcasters(view, fanout, redundancy);
+        final RapidRequest msg = createPayload();
+        for (final Endpoint origin : view.getRing(0)) {
+            deliveries.clear();
+            messagesSent.clear();
+            broadcasters.get(origin).broadcast(msg);
+            for (final Endpoint node : view.getRing(0)) {
+                assertEquals(1, (int) deliveries.getOrDefault(node, 0));
+                final int maxMessages = redundancy * fanout + (node.equals(origin) ? 1 : 0);
+                assertTrue(messagesSent.getOrDefault(node, 0) <= maxMessages);
+            }
+            final int totalMessages = messagesSent.values().stream().mapToInt(Integer::intValue).sum();
+            assertEquals(redundancy * (numNodes - 1) + 1, totalMessages);
+        }
+    }
+
+    /**
+     * Every live member receives a broadcast exactly once even when many relays have failed, because the
+     * parents of failed relays send to their children instead.
+     */
+    @Test
+    @Parameters(method = "gossipParameters")
+    @TestCaseName("{method}[N={0},fanout={1},redundancy={2}]")
+    public void broadcastReachesAllLiveMembersWithFailures(final int numNodes, final int fanout,
+                                                           final int redundancy) {
+        final MembershipView view = createView(numNodes);
+        createBroadcasters(view, fanout, redundancy);
+        final List<Endpoint> members = view.getRing(0);
+        final Endpoint origin = members.get(0);
+        // Fail every third member other than the origin
+        for (int i = 1; i < numNodes; i += 3) {
+            failedNodes.add(members.get(i));
+        }
+        broadcasters.get(origin).broadcast(createPayload());
+        for (final Endpoint node : members) {
+            assertEquals(failedNodes.contains(node) ? 0 : 1, (int) deliveries.getOrDefault(node, 0));
+        }
+    }
+
+    /**
+     * A member whose configuration differs from the origin's delivers the message but does not relay it, and
+     * says so in its response.
+     */
+    @Test
+    public void noRelayOnConfigurationMismatch() {
+        final int numNodes = 20;
+        final MembershipView view = createView(numNodes);
+        createBroadcasters(view, 4, 1);
+        final Endpoint origin = view.getRing(0).get(0);
+        final Endpoint relay = view.getRing(0).get(1);
+        final GossipMessage gossipMessage = GossipMessage.newBuilder()
+                                                         .setOrigin(origin)
+                                                         .setConfigurationId(view.getCurrentConfigurationId() + 1)
+                                                         .setRingNumber(0)
+                                                         .setMessageId(1)
+                                                         .setPayload(createPayload())
+                                                         .build();
+        assertFalse(broadcasters.get(relay).relay(gossipMessage));
+        assertEquals(0, (int) messagesSent.getOrDefault(relay, 0));
+        assertTrue(broadcasters.get(relay).deliver(gossipMessage));
+        assertFalse(broadcasters.get(relay).deliver(gossipMessage));
+    }
+
+    /**
+     * Members that are in a different configuration than the origin do not cut off their subtrees, because
+     * their parents send to their children instead.
+     */
+    @Test
+    public void broadcastReachesAllMembersAcrossConfigurations() {
+        final int numNodes = 50;
+        final MembershipView view = createView(numNodes);
+        createBroadcasters(view, 2, 1);
+        final List<Endpoint> members = view.getRing(0);
+        final MembershipView nextView = createView(numNodes + 1);
+        for (int i = 1; i < numNodes; i += 2) {
+            final Endpoint node = members.get(i);
+            final GossipBroadcaster broadcaster =
+                    new GossipBroadcaster(node, new DirectMessagingClient(node), nextView, 2, 1);
+            broadcaster.setMembership(nextView.getRing(0));
+            broadcasters.put(node, broadcaster);
+        }
+        broadcasters.get(members.get(0)).broadcast(createPayload());
+        for (final Endpoint node : members) {
+            assertEquals(1, (int) deliveries.getOrDefault(node, 0));
+        }
+    }
+
+    /**
+     * There is a tree per ring, so the redundancy cannot exceed K.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void redundancyMustNotExceedK() {
+        final MembershipView view = createView(5);
+        final Endpoint node = view.getRing(0).get(0);
+        new GossipBroadcaster(node, new DirectMessagingClient(node), view, 4, K + 1);
+    }
+
+    private void createBroadcasters(final MembershipView view, final int fanout, final int redundancy) {
+        broadcasters.clear();
+        for (final Endpoint node : view.getRing(0)) {
+            final GossipBroadcaster broadcaster =
+                    new GossipBroadcaster(node, new DirectMessagingClient(node), view, fanout, redundancy);
+            broadcaster.setMembership(view.getRing(0));
+            broadcasters.put(node, broadcaster);
+        }
+    }
+
+    private MembershipView createView(final int numNodes) {
+        final MembershipView view = new MembershipView(K);
+        for (int i = 0; i < numNodes; i++) {
+            view.ringAdd(Utils.hostFromParts("127.0.0.1", 1000 + i), Utils.nodeIdFromUUID(UUID.randomUUID()));
+        }
+        return view;
+    }
+
+    private static RapidRequest createPayload() {
+        return Utils.toRapidRequest(ProbeMessage.getDefaultInstance());
+    }
+
+    public static Iterable<Object[]> gossipParameters() {
+        final List<Object[]> params = new ArrayList<>();
+        for (final int numNodes : new int[]{1, 2, 5, 17, 100}) {
+            for (final int fanout : new int[]{1, 2, 4}) {
+                for (final int redundancy : new int[]{1, 2, K}) {
+                    params.add(new Object[]{numNodes, fanout, redundancy});
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Delivers messages to the destination's broadcaster on the sending thread.
+     */
+    private class DirectMessagingClient implements IMessagingClient {
+        private final Endpoint sender;
+
+        DirectMessagingClient(final Endpoint sender) {
+            this.sender = sender;
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
+            return sendMessageBestEffort(remote, msg);
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote,
+                                                                     final RapidRequest msg) {
+            messagesSent.merge(sender, 1, Integer::sum);
+            if (failedNodes.contains(remote)) {
+                return Futures.immediateFailedFuture(new IOException("Failed node: " + remote));
+            }
+            if (msg.getContentCase() != RapidRequest.ContentCase.GOSSIPMESSAGE) {
+                deliveries.merge(remote, 1, Integer::sum);
+                return Futures.immediateFuture(RapidResponse.getDefaultInstance());
+            }
+            // Relay and deliver the way MembershipService does
+            final GossipBroadcaster broadcaster = broadcasters.get(remote);
+            final boolean relayed = broadcaster.relay(msg.getGossipMessage());
+            if (broadcaster.deliver(msg.getGossipMessage())) {
+                deliveries.merge(remote, 1, Integer::sum);
+            }
+            return Futures.immediateFuture(Utils.toRapidResponse(GossipResponse.newBuilder()
+                                                                               .setRelayed(relayed)
+                                                                               .build()));
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
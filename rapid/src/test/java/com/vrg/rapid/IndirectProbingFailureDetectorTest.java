@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.monitoring.impl.IndirectProbingFailureDetector;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.ProbeResponse;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the IndirectProbingFailureDetector, which confirms failures through other observers of the subject.
+ */
+public class IndirectProbingFailureDetectorTest {
+    private static final int RUNS = 30;
+    // Relays that probe the subject answer with its response marked as relayed
+    private static final RapidResponse REACHED = Utils.toRapidResponse(ProbeResponse.newBuilder()
+                                                                                 .setRelayed(true)
+                                                                                 .build());
+    private final Endpoint address = Utils.hostFromParts("127.0.0.1", 1);
+    private final Endpoint subject = Utils.hostFromParts("127.0.0.1", 2);
+    private final List<Endpoint> observers = Arrays.asList(address, Utils.hostFromParts("127.0.0.1", 3),
+                                                           Utils.hostFromParts("127.0.0.1", 4));
+    private final AtomicInteger notifications = new AtomicInteger(0);
+    private final Settings settings = new Settings();
+
+    /**
+     * A subject that the relays reach is not reported, even though this node cannot reach it.
+     */
+    @Test
+    public void linkFailureIsNotReported() {
+        final ProbingClient client = new ProbingClient(REACHED);
+        final Runnable detector = createDetector(client, observers);
+        for (int i = 0; i < RUNS; i++) {
+            detector.run();
+        }
+        assertEquals(0, notifications.get());
+        assertTrue(client.relayedProbes > 0);
+        assertTrue(client.relays.stream().allMatch(relay -> observers.contains(relay) && !relay.equals(address)));
+    }
+
+    /**
+     * A subject that the relays cannot reach either is reported once.
+     */
+    @Test
+    public void failureConfirmedByRelaysIsReported() {
+        final ProbingClient client = new ProbingClient(null);
+        final Runnable detector = createDetector(client, observers);
+        for (int i = 0; i < RUNS; i++) {
+            detector.run();
+        }
+        assertEquals(1, notifications.get());
+        assertEquals(observers.size() - 1, client.relayedProbes);
+    }
+
+    /**
+     * Relays that answer without probing the subject, because they do not observe it in their configuration,
+     * do not cancel the failure.
+     */
+    @Test
+    public void declinedRelaysDoNotCancelFailure() {
+        final ProbingClient client =
+                new ProbingClient(Utils.toRapidResponse(ProbeResponse.getDefaultInstance()));
+        final Runnable detector = createDetector(client, observers);
+        for (int i = 0; i < RUNS; i++) {
+            detector.run();
+        }
+        assertEquals(1, notifications.get());
+        assertEquals(observers.size() - 1, client.relayedProbes);
+    }
+
+    /**
+     * A subject without other observers is reported without relaying probes.
+     */
+    @Test
+    public void failureWithoutRelaysIsReported() {
+        final ProbingClient client = new ProbingClient(REACHED);
+        final Runnable detector = createDetector(client, Collections.singletonList(address));
+        for (int i = 0; i < RUNS; i++) {
+            detector.run();
+        }
+        assertEquals(1, notifications.get());
+        assertEquals(0, client.relayedProbes);
+    }
+
+    private Runnable createDetector(final IMessagingClient client, final List<Endpoint> observersOfSubject) {
+        return new IndirectProbingFailureDetector.Factory(address, client, node -> observersOfSubject, settings)
+                .createInstance(subject, notifications::incrementAndGet);
+    }
+
+    /**
+     * Fails all direct probes, and answers relayed probes with the given response, or fails them if there is none.
+     */
+    private static class ProbingClient implements IMessagingClient {
+        @Nullable private final RapidResponse relayResponse;
+        private final List<Endpoint> relays = new ArrayList<>();
+        private int relayedProbes = 0;
+
+        ProbingClient(@Nullable final RapidResponse relayResponse) {
+            this.relayResponse = relayResponse;
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
+            return sendMessageBestEffort(remote, msg);
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg) {
+            if (!msg.getProbeMessage().hasTarget()) {
+                return Futures.immediateFailedFuture(new RuntimeException("probe dropped"));
+            }
+            relayedProbes++;
+            relays.add(remote);
+            return relayResponse != null
+                    ? Futures.immediateFuture(relayResponse)
+                    : Futures.immediateFailedFuture(new RuntimeException("relayed probe dropped"));
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
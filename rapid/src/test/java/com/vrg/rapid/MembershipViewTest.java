@@ -20,6 +20,7 @@ import org.junit.Test;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -497,4 +498,115 @@ public class MembershipViewTest {
         }
         assertEquals(iter1.next(), iter2.next());
     }
-}
\ No newline at end of file
+
+    /**
+     * The sorted array ring index must produce the same rings, observers and subjects
+     * as the TreeSet based ring index across additions and deletions.
+     */
+    @Test
+    public void sortedArrayRingsMatchTreeSetRings() {
+        final Settings settings = new Settings();
+        settings.setUseSortedArrayRings(true);
+        final MembershipView treeSetView = new MembershipView(K);
+        final MembershipView sortedArrayView = new MembershipView(K, settings);
+        final int numNodes = 1000;
+        final List<Endpoint> endpoints = new ArrayList<>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            final Endpoint n = Utils.hostFromParts("127.0.0.1", i);
+            final NodeId nodeId = Utils.nodeIdFromUUID(UUID.randomUUID());
+            treeSetView.ringAdd(n, nodeId);
+            sortedArrayView.ringAdd(n, nodeId);
+            endpoints.add(n);
+        }
+        for (int i = 0; i < numNodes; i += 3) {
+            treeSetView.ringDelete(endpoints.get(i));
+            sortedArrayView.ringDelete(endpoints.get(i));
+        }
+        assertEquals(treeSetView.getMembershipSize(), sortedArrayView.getMembershipSize());
+        for (int k = 0; k < K; k++) {
+            assertEquals(treeSetView.getRing(k), sortedArrayView.getRing(k));
+        }
+        for (int i = 0; i < numNodes; i++) {
+            final Endpoint n = endpoints.get(i);
+            assertEquals(treeSetView.isHostPresent(n), sortedArrayView.isHostPresent(n));
+            assertEquals(treeSetView.getExpectedObserversOf(n), sortedArrayView.getExpectedObserversOf(n));
+            if (treeSetView.isHostPresent(n)) {
+                assertEquals(treeSetView.getObserversOf(n), sortedArrayView.getObserversOf(n));
+                assertEquals(treeSetView.getSubjectsOf(n), sortedArrayView.getSubjectsOf(n));
+            }
+        }
+        assertEquals(treeSetView.getCurrentConfigurationId(), sortedArrayView.getCurrentConfigurationId());
+    }
+
+    /**
+     * Bootstrapping a sorted array ring index in a single batch must yield the same rings
+     * as adding the same endpoints one at a time.
+     */
+    @Test
+    public void sortedArrayRingsBatchedBootstrap() {
+        final Settings settings = new Settings();
+        settings.setUseSortedArrayRings(true);
+        final int numNodes = 1000;
+        final List<Endpoint> endpoints = new ArrayList<>(numNodes);
+        final List<NodeId> nodeIds = new ArrayList<>(numNodes);
+        final MembershipView incrementalView = new MembershipView(K, settings);
+        for (int i = 0; i < numNodes; i++) {
+            final Endpoint n = Utils.hostFromParts("127.0.0.1", i);
+            final NodeId nodeId = Utils.nodeIdFromUUID(UUID.randomUUID());
+            incrementalView.ringAdd(n, nodeId);
+            endpoints.add(n);
+            nodeIds.add(nodeId);
+        }
+        final MembershipView batchedView = new MembershipView(K, nodeIds, endpoints, settings);
+        for (int k = 0; k < K; k++) {
+            assertEquals(incrementalView.getRing(k), batchedView.getRing(k));
+        }
+        assertEquals(incrementalView.getCurrentConfigurationId(), batchedView.getCurrentConfigurationId());
+    }
+
+    /**
+     * The incrementally maintained configuration ID must match the ID computed from scratch over the
+     * materialized configuration, and over a view bootstrapped from that configuration.
+     */
+    @Test
+    public void incrementalConfigurationIdMatchesConfiguration() {
+        final MembershipView mview = new MembershipView(K);
+        final int numNodes = 100;
+        for (int i = 0; i < numNodes; i++) {
+            mview.ringAdd(Utils.hostFromParts("127.0.0.1", i), Utils.nodeIdFromUUID(UUID.randomUUID()));
+        }
+        for (int i = 0; i < numNodes; i += 2) {
+            mview.ringDelete(Utils.hostFromParts("127.0.0.1", i));
+            final MembershipView.Configuration configuration = mview.getConfiguration();
+            assertEquals(mview.getCurrentConfigurationId(), configuration.getConfigurationId());
+            assertEquals(mview.getCurrentConfigurationId(),
+                    MembershipView.Configuration.getConfigurationId(configuration.nodeIds, configuration.endpoints));
+            final MembershipView bootstrapped = new MembershipView(K, configuration.nodeIds, configuration.endpoints);
+            assertEquals(mview.getCurrentConfigurationId(), bootstrapped.getCurrentConfigurationId());
+        }
+    }
+
+    /**
+     * Snapshots are only updated when published, and each published snapshot has a new version.
+     */
+    @Test
+    public void membershipSnapshotPublication() {
+        final MembershipView mview = new MembershipView(K);
+        final MembershipSnapshot initial = mview.getSnapshot();
+        final int numNodes = 10;
+        for (int i = 0; i < numNodes; i++) {
+            mview.ringAdd(Utils.hostFromParts("127.0.0.1", i), Utils.nodeIdFromUUID(UUID.randomUUID()));
+        }
+        assertEquals(initial, mview.getSnapshot());
+        assertEquals(0, mview.getSnapshot().getMembershipSize());
+
+        final MembershipSnapshot published = mview.publishSnapshot(Collections.emptyMap());
+        assertEquals(published, mview.getSnapshot());
+        assertTrue(published.hasChangedSince(initial.getVersion()));
+        assertEquals(numNodes, published.getMembershipSize());
+        assertEquals(mview.getCurrentConfigurationId(), published.getConfigurationId());
+        for (int k = 0; k < K; k++) {
+            assertEquals(mview.getRing(k), published.getRing(k));
+        }
+    }
+}
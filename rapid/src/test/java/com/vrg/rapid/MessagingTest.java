@@ -32,6 +32,7 @@ import com.vrg.rapid.pb.PreJoinMessage;
 import com.vrg.rapid.pb.ProbeMessage;
 import com.vrg.rapid.pb.RapidRequest;
 import com.vrg.rapid.pb.RapidResponse;
+import io.grpc.Status;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -50,6 +51,7 @@ import java.util.stream.Collectors;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
@@ -106,6 +108,29 @@ public class MessagingTest {
         assertEquals(K, result.getEndpointsCount());
     }
 
+    /**
+     * Same as joinFirstNode, but with join messages hedged almost immediately, so that two copies of
+     * each request are in flight.
+     */
+    @Test
+    public void joinFirstNodeWithHedging() throws InterruptedException, IOException,
+            MembershipView.NodeAlreadyInRingException, ExecutionException {
+        final int serverPort = 1234;
+        final int clientPort = 1235;
+        final Endpoint serverAddr = Utils.hostFromParts(LOCALHOST_IP, serverPort);
+        createAndStartMembershipService(serverAddr);
+
+        final Endpoint clientAddr = Utils.hostFromParts(LOCALHOST_IP, clientPort);
+        final Settings settings = new Settings();
+        settings.setGrpcHedgeDelayMs(1);
+        final GrpcClient client = new GrpcClient(clientAddr, settings);
+        final JoinResponse result = sendPreJoinMessage(client, serverAddr, clientAddr,
+                                                       Utils.nodeIdFromUUID(UUID.randomUUID()));
+        assertNotNull(result);
+        assertEquals(JoinStatusCode.SAFE_TO_JOIN, result.getStatusCode());
+        assertEquals(K, result.getEndpointsCount());
+    }
+
     /**
      * Single node gets a join request from a peer with conflicting
      * hostnames and UUID
@@ -366,6 +391,67 @@ public class MessagingTest {
         assertEquals(NodeStatus.BOOTSTRAPPING, probeResponse2.getProbeResponse().getStatus());
     }
 
+    /**
+     * A probe with a target is only relayed if its sender observes the target. The response to a relayed probe
+     * is the response of the target, which answers with BOOTSTRAPPING here, marked as relayed.
+     */
+    @Test
+    public void probeIsRelayedOnlyForObserversOfTarget()
+            throws InterruptedException, IOException, MembershipView.NodeAlreadyInRingException, ExecutionException {
+        final Endpoint relayAddr = Utils.hostFromParts(LOCALHOST_IP, SERVER_PORT_BASE);
+        final Endpoint targetAddr = Utils.hostFromParts(LOCALHOST_IP, SERVER_PORT_BASE + 1);
+        final Endpoint observerAddr = Utils.hostFromParts(LOCALHOST_IP, SERVER_PORT_BASE + 2);
+        final Endpoint outsiderAddr = Utils.hostFromParts(LOCALHOST_IP, SERVER_PORT_BASE + 3);
+        final IMessagingServer rpcServer = new GrpcServer(targetAddr, resources, false);
+        rpcServer.start();
+        rpcServers.add(rpcServer);
+        final MembershipView membershipView = new MembershipView(K);
+        membershipView.ringAdd(relayAddr, Utils.nodeIdFromUUID(UUID.randomUUID()));
+        membershipView.ringAdd(targetAddr, Utils.nodeIdFromUUID(UUID.randomUUID()));
+        membershipView.ringAdd(observerAddr, Utils.nodeIdFromUUID(UUID.randomUUID()));
+        assertTrue(membershipView.getObserversOf(targetAddr).contains(observerAddr));
+        createAndStartMembershipService(relayAddr, membershipView);
+
+        final GrpcClient client = new GrpcClient(observerAddr);
+        final RapidResponse relayed = client.sendMessage(relayAddr, Utils.toRapidRequest(
+                ProbeMessage.newBuilder().setSender(observerAddr).setTarget(targetAddr).build())).get();
+        assertEquals(NodeStatus.BOOTSTRAPPING, relayed.getProbeResponse().getStatus());
+        assertTrue(relayed.getProbeResponse().getRelayed());
+
+        final RapidResponse notRelayed = client.sendMessage(relayAddr, Utils.toRapidRequest(
+                ProbeMessage.newBuilder().setSender(outsiderAddr).setTarget(targetAddr).build())).get();
+        assertFalse(notRelayed.getProbeResponse().getRelayed());
+        client.shutdown();
+    }
+
+
+    /**
+     * A request on a stream whose handler throws fails on its own, without breaking the stream for the requests
+     * that follow it.
+     */
+    @Test
+    public void streamRequestFailsAlone() throws InterruptedException, IOException,
+            MembershipView.NodeAlreadyInRingException, ExecutionException {
+        final int serverPort = 1234;
+        final Endpoint serverAddr = Utils.hostFromParts(LOCALHOST_IP, serverPort);
+        createAndStartMembershipService(serverAddr);
+
+        final Endpoint clientAddr = Utils.hostFromParts(LOCALHOST_IP, serverPort + 1);
+        final Settings settings = new Settings();
+        settings.setUseGrpcStreams(true);
+        final IMessagingClient client = new GrpcClient(clientAddr, settings);
+        try {
+            // The membership service throws for requests without content
+            client.sendMessageBestEffort(serverAddr, RapidRequest.getDefaultInstance()).get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertEquals(Status.Code.INTERNAL, Status.fromThrowable(e.getCause()).getCode());
+        }
+        final RapidResponse response =
+                client.sendMessageBestEffort(serverAddr, Utils.toRapidRequest(ProbeMessage.getDefaultInstance())).get();
+        assertTrue(response.hasProbeResponse());
+        client.shutdown();
+    }
 
     /**
      * Test to ensure that injecting message drops works.
@@ -442,6 +528,56 @@ public class MessagingTest {
     }
 
 
+    /**
+     * Same as rpcClientErrorHandling, but with a backoff before every retry.
+     */
+    @Test
+    public void rpcClientErrorHandlingWithBackoff() throws InterruptedException {
+        final int basePort = 1234;
+        final Endpoint clientAddr = Utils.hostFromParts(LOCALHOST_IP, basePort);
+        final Endpoint dst = Utils.hostFromParts(LOCALHOST_IP, 4321);
+        final Settings settings = new Settings();
+        settings.setGrpcRetryBackoffBaseMs(10);
+        settings.setGrpcRetryBackoffMaxMs(100);
+        final SharedResources resources = new SharedResources(clientAddr);
+        final IMessagingClient client = new GrpcClient(clientAddr, resources, settings);
+        try {
+            client.sendMessage(dst, Utils.toRapidRequest(ProbeMessage.getDefaultInstance())).get();
+            fail("sendProbeMessage did not throw an exception");
+        } catch (final ExecutionException | GrpcClient.ShuttingDownException ignored) {
+        }
+        client.shutdown();
+        resources.shutdown();
+    }
+
+    /**
+     * Tests that best-effort messages to an endpoint that does not exist fail through the returned future,
+     * both before and after the client is shut down.
+     */
+    @Test
+    public void rpcClientBestEffortErrorHandling() throws InterruptedException {
+        final int basePort = 1234;
+        final Endpoint clientAddr = Utils.hostFromParts(LOCALHOST_IP, basePort);
+        final Endpoint dst = Utils.hostFromParts(LOCALHOST_IP, 4321);
+        final Settings settings = new Settings();
+        final SharedResources resources = new SharedResources(clientAddr);
+        final IMessagingClient client = new GrpcClient(clientAddr, resources, settings);
+        final RapidRequest probe = Utils.toRapidRequest(ProbeMessage.getDefaultInstance());
+        try {
+            client.sendMessageBestEffort(dst, probe).get();
+            fail("sendMessageBestEffort did not fail");
+        } catch (final ExecutionException ignored) {
+        }
+        client.shutdown();
+        resources.shutdown();
+        try {
+            client.sendMessageBestEffort(dst, probe).get();
+            fail("sendMessageBestEffort did not fail after shutdown");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof GrpcClient.ShuttingDownException);
+        }
+    }
+
     /**
      * Tests all GrpcClient request types to an endpoint that exists, but after shutdown is invoked.
      */
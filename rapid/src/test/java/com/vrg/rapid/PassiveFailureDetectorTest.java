@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.messaging.PeerActivity;
+import com.vrg.rapid.monitoring.IEdgeFailureDetectorFactory;
+import com.vrg.rapid.monitoring.impl.PassiveFailureDetector;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the PassiveFailureDetector, which only probes subjects that have not responded recently.
+ */
+public class PassiveFailureDetectorTest {
+    private static final int INTERVAL_IN_MS = 100;
+    private final Endpoint subject = Utils.hostFromParts("127.0.0.1", 1);
+    private final AtomicInteger probes = new AtomicInteger(0);
+    private final IEdgeFailureDetectorFactory activeDetectorFactory = (node, notifier) -> probes::incrementAndGet;
+    private final Settings settings = new Settings();
+
+    @Before
+    public void beforeTest() {
+        settings.setFailureDetectorIntervalInMs(INTERVAL_IN_MS);
+    }
+
+    /**
+     * A subject that responded within the last interval is not probed, and is probed again once its link goes
+     * quiet.
+     */
+    @Test
+    public void recentlyActiveSubjectsAreNotProbed() throws InterruptedException {
+        final PeerActivity activity = new PeerActivity();
+        final Runnable detector = new PassiveFailureDetector.Factory(activeDetectorFactory, new Client(activity),
+                                                                     settings).createInstance(subject, () -> { });
+        detector.run();
+        assertEquals(1, probes.get());
+        activity.recordResponse(subject);
+        detector.run();
+        detector.run();
+        assertEquals(1, probes.get());
+        Thread.sleep(INTERVAL_IN_MS * 2);
+        detector.run();
+        assertEquals(2, probes.get());
+    }
+
+    /**
+     * Without response tracking in the messaging client, every run probes the subject.
+     */
+    @Test
+    public void subjectsAreAlwaysProbedWithoutActivity() {
+        final Runnable detector = new PassiveFailureDetector.Factory(activeDetectorFactory, new Client(null),
+                                                                     settings).createInstance(subject, () -> { });
+        detector.run();
+        detector.run();
+        assertEquals(2, probes.get());
+    }
+
+    private static class Client implements IMessagingClient {
+        @Nullable private final PeerActivity activity;
+
+        Client(@Nullable final PeerActivity activity) {
+            this.activity = activity;
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
+            return Futures.immediateFailedFuture(new UnsupportedOperationException());
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg) {
+            return Futures.immediateFailedFuture(new UnsupportedOperationException());
+        }
+
+        @Override
+        @Nullable
+        public PeerActivity getPeerActivity() {
+            return activity;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -6,8 +6,10 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.vrg.rapid.messaging.IBroadcaster;
 import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.pb.CompactProposal;
 import com.vrg.rapid.pb.ConsensusResponse;
 import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.FastRoundPhase2bMessage;
 import com.vrg.rapid.pb.Phase1bMessage;
 import com.vrg.rapid.pb.Rank;
 import com.vrg.rapid.pb.RapidRequest;
@@ -109,6 +111,141 @@ public class PaxosTests {
         waitAndVerifyAgreement(numNodes, 20, 50, decisions);
     }
 
+    /**
+     * Fast and classic rounds must reach agreement when proposals are sent as compact proposals.
+     */
+    @Test
+    @Parameters(method = "nValues")
+    @TestCaseName("{method}[N={0}]")
+    public void testCompactConsensusMessages(final int numNodes) throws InterruptedException {
+        final ExecutorService executorService = Executors.newFixedThreadPool(numNodes);
+        final LinkedBlockingDeque<List<Endpoint>> decisions = new LinkedBlockingDeque<>();
+        final Consumer<List<Endpoint>> onDecide = decisions::add;
+        final Settings settings = new Settings();
+        settings.setUseCompactConsensusMessages(true);
+        final Map<Endpoint, FastPaxos> instances = createNFastPaxosInstances(numNodes, onDecide, settings);
+        final List<Endpoint> proposal = ImmutableList.of(Utils.hostFromString("127.0.0.1:1235"),
+                                                         Utils.hostFromString("172.14.12.3:1234"));
+
+        // Fast round
+        instances.forEach((host, fp) -> executorService.execute(() -> fp.propose(proposal)));
+        waitAndVerifyAgreement(numNodes, 20, 50, decisions);
+        assertAll(proposal, decisions);
+
+        // Classic round, after the fast round messages were lost
+        final Map<Endpoint, FastPaxos> classicInstances = createNFastPaxosInstances(numNodes, onDecide, settings);
+        decisions.clear();
+        messageTypeToDrop.add(RapidRequest.ContentCase.FASTROUNDPHASE2BMESSAGE);
+        classicInstances.forEach((host, fp) -> executorService.execute(() -> fp.propose(proposal)));
+        waitAndVerifyAgreement(0, 20, 50, decisions);
+        classicInstances.forEach((host, fp) -> executorService.execute(fp::startClassicPaxosRound));
+        waitAndVerifyAgreement(numNodes, 20, 50, decisions);
+        assertAll(proposal, decisions);
+    }
+
+    /**
+     * A compact proposal encodes members by their index and joiners in full, and decodes to the
+     * same proposal in the same order.
+     */
+    @Test
+    public void testCompactProposalEncoding() {
+        final List<Endpoint> memberlist = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            memberlist.add(Utils.hostFromParts("127.0.0.1", 1234 + i));
+        }
+        final ProposalCodec proposalCodec = new ProposalCodec(memberlist, true);
+        final List<Endpoint> proposal = ImmutableList.of(Utils.hostFromParts("127.0.0.1", 1240),
+                                                         Utils.hostFromParts("172.14.12.3", 1234),
+                                                         Utils.hostFromParts("127.0.0.1", 1234),
+                                                         Utils.hostFromParts("172.14.12.4", 1234));
+        final CompactProposal compactProposal = proposalCodec.encode(proposal);
+        assertEquals(ImmutableList.of(6, 10, 0, 11), compactProposal.getIndicesList());
+        assertEquals(ImmutableList.of(proposal.get(1), proposal.get(3)), compactProposal.getEndpointsList());
+        assertEquals(proposal, proposalCodec.decode(compactProposal));
+        assertEquals(memberlist.size(), proposalCodec.getMembershipSize());
+        assertEquals(6, proposalCodec.indexOf(Utils.hostFromParts("127.0.0.1", 1240)));
+        assertEquals(-1, proposalCodec.indexOf(Utils.hostFromParts("172.14.12.3", 1234)));
+    }
+
+    /**
+     * Duplicate votes and votes from nodes outside the configuration must not count towards a fast quorum.
+     */
+    @Test
+    public void testFastRoundIgnoresDuplicateAndNonMemberVotes() {
+        final int numNodes = 5; // A fast quorum is 4 votes
+        final List<Endpoint> memberlist = new ArrayList<>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            memberlist.add(Utils.hostFromParts("127.0.0.1", 1234 + i));
+        }
+        final Map<Endpoint, FastPaxos> instances = new ConcurrentHashMap<>();
+        final DirectMessagingClient messagingClient = new DirectMessagingClient(instances, new ConcurrentHashMap<>());
+        final DirectBroadcaster directBroadcaster = new DirectBroadcaster(instances, messagingClient);
+        final LinkedBlockingDeque<List<Endpoint>> decisions = new LinkedBlockingDeque<>();
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final FastPaxos paxos = new FastPaxos(memberlist.get(0), 1, memberlist, messagingClient, directBroadcaster,
+                                              scheduler, decisions::add, new Settings());
+        final List<Endpoint> proposal = Collections.singletonList(Utils.hostFromString("172.14.12.3:1234"));
+
+        for (int i = 0; i < 3; i++) {
+            paxos.handleMessages(createFastRoundVote(memberlist.get(1), proposal));
+        }
+        paxos.handleMessages(createFastRoundVote(memberlist.get(2), proposal));
+        paxos.handleMessages(createFastRoundVote(memberlist.get(3), proposal));
+        paxos.handleMessages(createFastRoundVote(Utils.hostFromString("172.14.12.4:1234"), proposal));
+        assertTrue(decisions.isEmpty());
+
+        paxos.handleMessages(createFastRoundVote(memberlist.get(4), proposal));
+        assertEquals(1, decisions.size());
+        assertEquals(proposal, decisions.getFirst());
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * A vote with a compact proposal that cannot be decoded is answered and dropped without being counted,
+     * so the voter can still vote afterwards.
+     */
+    @Test
+    public void testFastRoundDropsInvalidCompactProposal() {
+        final int numNodes = 5; // A fast quorum is 4 votes
+        final List<Endpoint> memberlist = new ArrayList<>(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            memberlist.add(Utils.hostFromParts("127.0.0.1", 1234 + i));
+        }
+        final Map<Endpoint, FastPaxos> instances = new ConcurrentHashMap<>();
+        final DirectMessagingClient messagingClient = new DirectMessagingClient(instances, new ConcurrentHashMap<>());
+        final DirectBroadcaster directBroadcaster = new DirectBroadcaster(instances, messagingClient);
+        final LinkedBlockingDeque<List<Endpoint>> decisions = new LinkedBlockingDeque<>();
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final FastPaxos paxos = new FastPaxos(memberlist.get(0), 1, memberlist, messagingClient, directBroadcaster,
+                                              scheduler, decisions::add, new Settings());
+        final List<Endpoint> proposal = Collections.singletonList(Utils.hostFromString("172.14.12.3:1234"));
+
+        final RapidRequest invalidVote = Utils.toRapidRequest(FastRoundPhase2bMessage.newBuilder()
+                .setSender(memberlist.get(1))
+                .setConfigurationId(1)
+                .setCompactEndpoints(CompactProposal.newBuilder().addIndices(numNodes + 1))
+                .build());
+        assertEquals(RapidResponse.ContentCase.CONSENSUSRESPONSE,
+                     paxos.handleMessages(invalidVote).getContentCase());
+        for (int i = 1; i < 4; i++) {
+            paxos.handleMessages(createFastRoundVote(memberlist.get(i), proposal));
+        }
+        assertTrue(decisions.isEmpty());
+
+        paxos.handleMessages(createFastRoundVote(memberlist.get(4), proposal));
+        assertEquals(1, decisions.size());
+        assertEquals(proposal, decisions.getFirst());
+        scheduler.shutdownNow();
+    }
+
+    private RapidRequest createFastRoundVote(final Endpoint sender, final List<Endpoint> proposal) {
+        return Utils.toRapidRequest(FastRoundPhase2bMessage.newBuilder()
+                                                           .setSender(sender)
+                                                           .setConfigurationId(1)
+                                                           .addAllEndpoints(proposal)
+                                                           .build());
+    }
+
     public static Iterable<Object[]> nValues() {
         // Format: (N, proposal-1, proposal-2, votes for proposal-2 (p2votes), expected value to be chosen)
         // proposal-1 gets all the remaining votes (N - p2votes).
@@ -193,7 +330,8 @@ public class PaxosTests {
             final Consumer<List<Endpoint>> onDecide = (k) -> { };
             final Endpoint addr = Utils.hostFromParts("127.0.0.1", 1234);
 
-            final Paxos paxos = new Paxos(addr, 1, N, new NoOpClient(), new NoOpBroadcaster(), onDecide);
+            final Paxos paxos = new Paxos(addr, 1, N, new NoOpClient(), new NoOpBroadcaster(),
+                                          new ProposalCodec(Collections.emptyList(), false), onDecide);
             final List<Phase1bMessage> messages = new ArrayList<>();
 
             // Highest ranked proposal, proposals[0]
@@ -300,7 +438,8 @@ public class PaxosTests {
             final Consumer<List<Endpoint>> onDecide = (k) -> { };
             final Endpoint addr = Utils.hostFromParts("127.0.0.1", 1234);
 
-            final Paxos paxos = new Paxos(addr, 1, N, new NoOpClient(), new NoOpBroadcaster(), onDecide);
+            final Paxos paxos = new Paxos(addr, 1, N, new NoOpClient(), new NoOpBroadcaster(),
+                                          new ProposalCodec(Collections.emptyList(), false), onDecide);
             final List<Phase1bMessage> messages = new ArrayList<>();
 
             final Rank rank1 = Rank.newBuilder().setNodeIndex(1).setRound(1).build();
@@ -389,16 +528,25 @@ public class PaxosTests {
      */
     private Map<Endpoint, FastPaxos> createNFastPaxosInstances(final int numNodes,
                                                                final Consumer<List<Endpoint>> onDecide) {
+        return createNFastPaxosInstances(numNodes, onDecide, new Settings());
+    }
+
+    private Map<Endpoint, FastPaxos> createNFastPaxosInstances(final int numNodes,
+                                                               final Consumer<List<Endpoint>> onDecide,
+                                                               final Settings settings) {
         final Map<Endpoint, FastPaxos> instances = new ConcurrentHashMap<>();
         final Map<Endpoint, ExecutorService> executorServiceMap = new ConcurrentHashMap<>();
         final DirectMessagingClient messagingClient = new DirectMessagingClient(instances, executorServiceMap);
         final DirectBroadcaster directBroadcaster = new DirectBroadcaster(instances, messagingClient);
         final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(numNodes);
+        final List<Endpoint> memberlist = new ArrayList<>(numNodes);
         for (int i = 0; i < numNodes; i++) {
-            final Endpoint addr = Utils.hostFromParts("127.0.0.1", 1234 + i);
+            memberlist.add(Utils.hostFromParts("127.0.0.1", 1234 + i));
+        }
+        for (final Endpoint addr : memberlist) {
             executorServiceMap.put(addr, Executors.newSingleThreadExecutor());
-            final FastPaxos paxos = new FastPaxos(addr, 1, numNodes, messagingClient, directBroadcaster,
-                                                  scheduler, onDecide);
+            final FastPaxos paxos = new FastPaxos(addr, 1, memberlist, messagingClient, directBroadcaster,
+                                                  scheduler, onDecide, settings);
             instances.put(addr, paxos);
         }
         return instances;
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the priority order and load shedding of requests in PrioritizedExecutor.
+ */
+public class PrioritizedExecutorTest {
+    private final ExecutorService delegate = Executors.newSingleThreadExecutor();
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void cleanup() {
+        unblock.countDown();
+        delegate.shutdownNow();
+    }
+
+    /**
+     * Requests queued behind a busy executor run from the highest priority class down, and in arrival order
+     * within a class.
+     */
+    @Test(timeout = 5000)
+    public void requestsRunInPriorityOrder() throws InterruptedException {
+        final PrioritizedExecutor executor = createExecutor(SharedResources.LoadSheddingPolicy.SHED_BY_CLASS, 10);
+        blockDelegate();
+        executor.execute(PrioritizedExecutor.Priority.LOW, record("join1"));
+        executor.execute(PrioritizedExecutor.Priority.MEDIUM, record("alert1"));
+        executor.execute(PrioritizedExecutor.Priority.LOW, record("join2"));
+        executor.execute(PrioritizedExecutor.Priority.HIGH, record("consensus1"));
+        executor.execute(PrioritizedExecutor.Priority.HIGH, record("consensus2"));
+        unblock.countDown();
+        awaitDelegate();
+        final List<String> expected = new ArrayList<>();
+        Collections.addAll(expected, "consensus1", "consensus2", "alert1", "join1", "join2");
+        assertEquals(expected, executed);
+    }
+
+    /**
+     * With SHED_BY_CLASS, a join is only shed when the queue of low-priority requests is full.
+     */
+    @Test(timeout = 5000)
+    public void shedByClass() throws InterruptedException {
+        final PrioritizedExecutor executor = createExecutor(SharedResources.LoadSheddingPolicy.SHED_BY_CLASS, 2);
+        blockDelegate();
+        executor.execute(PrioritizedExecutor.Priority.HIGH, record("consensus1"));
+        executor.execute(PrioritizedExecutor.Priority.HIGH, record("consensus2"));
+        executor.execute(PrioritizedExecutor.Priority.LOW, record("join1"));
+        executor.execute(PrioritizedExecutor.Priority.LOW, record("join2"));
+        assertShed(executor, PrioritizedExecutor.Priority.LOW);
+        executor.execute(PrioritizedExecutor.Priority.MEDIUM, record("alert1"));
+        unblock.countDown();
+        awaitDelegate();
+        assertEquals(5, executed.size());
+
+        // Capacity is released once requests have run
+        executor.execute(PrioritizedExecutor.Priority.LOW, record("join3"));
+        awaitDelegate();
+        assertEquals(6, executed.size());
+    }
+
+    /**
+     * With SHED_BY_PRIORITY, higher-priority requests count against the low-priority capacity, so that joins
+     * are shed as soon as the executor falls behind.
+     */
+    @Test(timeout = 5000)
+    public void shedByPriority() throws InterruptedException {
+        final PrioritizedExecutor executor = createExecutor(SharedResources.LoadSheddingPolicy.SHED_BY_PRIORITY,
+                                                            2);
+        blockDelegate();
+        executor.execute(PrioritizedExecutor.Priority.LOW, record("join1"));
+        executor.execute(PrioritizedExecutor.Priority.HIGH, record("consensus1"));
+        assertShed(executor, PrioritizedExecutor.Priority.LOW);
+        unblock.countDown();
+        awaitDelegate();
+        assertEquals(2, executed.size());
+        assertTrue(executed.indexOf("consensus1") < executed.indexOf("join1"));
+    }
+
+    /**
+     * Alerts and consensus messages are never shed, however far behind the executor is.
+     */
+    @Test(timeout = 5000)
+    public void highAndMediumPriorityAreNeverShed() throws InterruptedException {
+        for (final SharedResources.LoadSheddingPolicy policy : SharedResources.LoadSheddingPolicy.values()) {
+            final PrioritizedExecutor executor = createExecutor(policy, 1);
+            final int executedBefore = executed.size();
+            final CountDownLatch blocked = new CountDownLatch(1);
+            blockDelegate(blocked);
+            executor.execute(PrioritizedExecutor.Priority.LOW, record("join"));
+            for (int i = 0; i < 100; i++) {
+                executor.execute(PrioritizedExecutor.Priority.HIGH, record("consensus" + i));
+                executor.execute(PrioritizedExecutor.Priority.MEDIUM, record("alert" + i));
+            }
+            assertShed(executor, PrioritizedExecutor.Priority.LOW);
+            blocked.countDown();
+            awaitDelegate();
+            assertEquals(executedBefore + 201, executed.size());
+        }
+    }
+
+    private PrioritizedExecutor createExecutor(final SharedResources.LoadSheddingPolicy policy,
+                                               final int lowPriorityCapacity) {
+        return new PrioritizedExecutor(delegate, policy, lowPriorityCapacity);
+    }
+
+    private Runnable record(final String name) {
+        return () -> executed.add(name);
+    }
+
+    private void assertShed(final PrioritizedExecutor executor, final PrioritizedExecutor.Priority priority) {
+        try {
+            executor.execute(priority, record("shed"));
+            fail("Expected a " + priority + " priority request to be shed");
+        } catch (final RejectedExecutionException ignored) {
+        }
+    }
+
+    /**
+     * Keeps the delegate busy until unblock is counted down, so that requests queue up behind it.
+     */
+    private void blockDelegate() throws InterruptedException {
+        blockDelegate(unblock);
+    }
+
+    /**
+     * Keeps the delegate busy until {@code latch} is counted down.
+     */
+    private void blockDelegate(final CountDownLatch latch) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        delegate.execute(() -> {
+            started.countDown();
+            try {
+                latch.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+    }
+
+    private void awaitDelegate() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        delegate.execute(done::countDown);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.monitoring.IEdgeFailureDetectorFactory;
+import com.vrg.rapid.pb.Endpoint;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the ProbeScheduler, which runs all edge failure detectors of a node from a single task.
+ */
+public class ProbeSchedulerTest {
+    private static final int INTERVAL_IN_MS = 100;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Map<Endpoint, AtomicInteger> instancesCreated = new ConcurrentHashMap<>();
+    private final Map<Endpoint, AtomicInteger> probesSent = new ConcurrentHashMap<>();
+    private final Map<Endpoint, Runnable> notifiers = new ConcurrentHashMap<>();
+    private final List<Endpoint> notifications = Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void cleanup() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Every subject is probed once per interval.
+     */
+    @Test(timeout = 5000)
+    public void everySubjectIsProbedEveryInterval() throws InterruptedException {
+        final List<Endpoint> subjects = createSubjects(0, 25);
+        final ProbeScheduler scheduler = createScheduler();
+        scheduler.setSubjects(subjects);
+        scheduler.start();
+        Thread.sleep(INTERVAL_IN_MS * 10);
+        scheduler.shutdown();
+        for (final Endpoint subject : subjects) {
+            final int probes = probesSent.get(subject).get();
+            assertTrue("Subject probed " + probes + " times", probes >= 7 && probes <= 12);
+        }
+    }
+
+    /**
+     * A configuration change keeps the detectors of the subjects that are still monitored, and a subject that
+     * precedes the node on several rings is monitored by a single detector.
+     */
+    @Test(timeout = 5000)
+    public void subjectsAreUpdatedIncrementally() {
+        final ProbeScheduler scheduler = createScheduler();
+        final List<Endpoint> subjects = createSubjects(0, 10);
+        final List<Endpoint> withDuplicates = new ArrayList<>(subjects);
+        withDuplicates.addAll(subjects.subList(0, 3));
+        scheduler.setSubjects(withDuplicates);
+        subjects.forEach(subject -> assertEquals(1, instancesCreated.get(subject).get()));
+
+        final List<Endpoint> nextSubjects = new ArrayList<>(subjects.subList(5, 10));
+        nextSubjects.addAll(createSubjects(10, 15));
+        scheduler.setSubjects(nextSubjects);
+        nextSubjects.forEach(subject -> assertEquals(1, instancesCreated.get(subject).get()));
+    }
+
+    /**
+     * A detector that has reported its subject is replaced on the next configuration change, so that the subject
+     * can be reported again in the new configuration.
+     */
+    @Test(timeout = 5000)
+    public void notifiedDetectorsAreReplaced() {
+        final ProbeScheduler scheduler = createScheduler();
+        final List<Endpoint> subjects = createSubjects(0, 2);
+        scheduler.setSubjects(subjects);
+        notifiers.get(subjects.get(0)).run();
+        assertEquals(Collections.singletonList(subjects.get(0)), notifications);
+
+        scheduler.setSubjects(subjects);
+        assertEquals(2, instancesCreated.get(subjects.get(0)).get());
+        assertEquals(1, instancesCreated.get(subjects.get(1)).get());
+    }
+
+    private ProbeScheduler createScheduler() {
+        final IEdgeFailureDetectorFactory factory = (subject, notifier) -> {
+            instancesCreated.computeIfAbsent(subject, k -> new AtomicInteger(0)).incrementAndGet();
+            notifiers.put(subject, notifier);
+            probesSent.putIfAbsent(subject, new AtomicInteger(0));
+            return () -> probesSent.get(subject).incrementAndGet();
+        };
+        return new ProbeScheduler(executor, INTERVAL_IN_MS, factory, subject -> () -> notifications.add(subject));
+    }
+
+    private List<Endpoint> createSubjects(final int from, final int to) {
+        final Endpoint[] subjects = new Endpoint[to - from];
+        for (int i = from; i < to; i++) {
+            subjects[i - from] = Utils.hostFromParts("127.0.0.1", 2000 + i);
+        }
+        return Arrays.asList(subjects);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.pb.RapidRequest;
+import io.grpc.Deadline;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Records the requests exchanged by the nodes of a test cluster, so that tests can check that the feature
+ * they enable was exercised. Used with TestingGrpcClient and TestingGrpcServer.
+ */
+class RequestRecorder {
+    private final Queue<RapidRequest> sentRequests = new ConcurrentLinkedQueue<>();
+    private final Map<RapidRequest.ContentCase, Long> shortestDeadlinesMs = new ConcurrentHashMap<>();
+    private final AtomicInteger unaryCalls = new AtomicInteger(0);
+    private final AtomicInteger streamCalls = new AtomicInteger(0);
+
+    void recordSent(final RapidRequest request) {
+        sentRequests.add(request);
+    }
+
+    void recordUnaryCall(final RapidRequest request, @Nullable final Deadline deadline) {
+        unaryCalls.incrementAndGet();
+        if (deadline != null) {
+            shortestDeadlinesMs.merge(request.getContentCase(), deadline.timeRemaining(TimeUnit.MILLISECONDS),
+                                      Math::min);
+        }
+    }
+
+    void recordStreamCall() {
+        streamCalls.incrementAndGet();
+    }
+
+    /**
+     * @return the number of requests sent by the messaging clients that match {@code predicate}
+     */
+    long countSent(final Predicate<RapidRequest> predicate) {
+        return sentRequests.stream().filter(predicate).count();
+    }
+
+    /**
+     * @return the number of unary calls received by the messaging servers
+     */
+    int getUnaryCalls() {
+        return unaryCalls.get();
+    }
+
+    /**
+     * @return the number of streams opened to the messaging servers
+     */
+    int getStreamCalls() {
+        return streamCalls.get();
+    }
+
+    /**
+     * @return the shortest time left until the deadline of a unary call of a given type when the call was
+     *         received, or Long.MAX_VALUE if no such call had a deadline
+     */
+    long getShortestDeadlineMs(final RapidRequest.ContentCase contentCase) {
+        return shortestDeadlinesMs.getOrDefault(contentCase, Long.MAX_VALUE);
+    }
+}
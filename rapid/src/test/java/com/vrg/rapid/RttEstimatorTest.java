@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+
+package com.vrg.rapid;
+
+import com.vrg.rapid.messaging.RttEstimator;
+import com.vrg.rapid.pb.Endpoint;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the round-trip time estimates and the timeouts derived from them.
+ */
+public class RttEstimatorTest {
+    private static final double DELTA = 0.001;
+    private static final long MIN_TIMEOUT_MS = 10;
+    private static final long MAX_TIMEOUT_MS = 1000;
+    private final Endpoint peer = Utils.hostFromParts("127.0.0.1", 1234);
+
+    /**
+     * Without samples there is no estimate, and the timeout is the upper bound.
+     */
+    @Test
+    public void noSamples() {
+        final RttEstimator estimator = new RttEstimator();
+        assertEquals(-1, estimator.getSmoothedRttMs(peer), DELTA);
+        assertEquals(-1, estimator.getRttVariationMs(peer), DELTA);
+        assertEquals(MAX_TIMEOUT_MS, estimator.getTimeoutMs(peer, MIN_TIMEOUT_MS, MAX_TIMEOUT_MS));
+        estimator.recordTimeout(peer);
+        assertEquals(MAX_TIMEOUT_MS, estimator.getTimeoutMs(peer, MIN_TIMEOUT_MS, MAX_TIMEOUT_MS));
+    }
+
+    /**
+     * The first sample initializes the estimates as in RFC 6298, and later samples are smoothed into them.
+     */
+    @Test
+    public void samplesAreSmoothed() {
+        final RttEstimator estimator = new RttEstimator();
+        estimator.recordSample(peer, 40, TimeUnit.MILLISECONDS);
+        assertEquals(40, estimator.getSmoothedRttMs(peer), DELTA);
+        assertEquals(20, estimator.getRttVariationMs(peer), DELTA);
+        assertEquals(120, estimator.getTimeoutMs(peer, MIN_TIMEOUT_MS, MAX_TIMEOUT_MS));
+
+        estimator.recordSample(peer, 80, TimeUnit.MILLISECONDS);
+        assertEquals(45, estimator.getSmoothedRttMs(peer), DELTA);
+        assertEquals(25, estimator.getRttVariationMs(peer), DELTA);
+        assertEquals(145, estimator.getTimeoutMs(peer, MIN_TIMEOUT_MS, MAX_TIMEOUT_MS));
+
+        // A steady round-trip time lets the timeout converge towards it, down to the lower bound
+        for (int i = 0; i < 200; i++) {
+            estimator.recordSample(peer, 2, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(2, estimator.getSmoothedRttMs(peer), 0.1);
+        assertEquals(MIN_TIMEOUT_MS, estimator.getTimeoutMs(peer, MIN_TIMEOUT_MS, MAX_TIMEOUT_MS));
+    }
+
+    /**
+     * Every consecutive timeout doubles the timeout, up to the upper bound, until the next sample arrives.
+     */
+    @Test
+    public void timeoutsBackOff() {
+        final RttEstimator estimator = new RttEstimator();
+        estimator.recordSample(peer, 40, TimeUnit.MILLISECONDS);
+        estimator.recordTimeout(peer);
+        assertEquals(240, estimator.getTimeoutMs(peer, MIN_TIMEOUT_MS, MAX_TIMEOUT_MS));
+        estimator.recordTimeout(peer);
+        assertEquals(480, estimator.getTimeoutMs(peer, MIN_TIMEOUT_MS, MAX_TIMEOUT_MS));
+        for (int i = 0; i < 10; i++) {
+            estimator.recordTimeout(peer);
+        }
+        assertEquals(MAX_TIMEOUT_MS, estimator.getTimeoutMs(peer, MIN_TIMEOUT_MS, MAX_TIMEOUT_MS));
+        estimator.recordSample(peer, 40, TimeUnit.MILLISECONDS);
+        assertTrue(estimator.getTimeoutMs(peer, MIN_TIMEOUT_MS, MAX_TIMEOUT_MS) < 240);
+    }
+
+    /**
+     * Estimates are kept per peer, and can be forgotten.
+     */
+    @Test
+    public void estimatesArePerPeer() {
+        final RttEstimator estimator = new RttEstimator();
+        final Endpoint otherPeer = Utils.hostFromParts("127.0.0.1", 1235);
+        estimator.recordSample(peer, 40, TimeUnit.MILLISECONDS);
+        assertEquals(-1, estimator.getSmoothedRttMs(otherPeer), DELTA);
+        estimator.remove(peer);
+        assertEquals(-1, estimator.getSmoothedRttMs(peer), DELTA);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.vrg.rapid.messaging.IMessagingClient;
+import com.vrg.rapid.monitoring.IEdgeFailureDetectorFactory;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.RapidRequest;
+import com.vrg.rapid.pb.RapidResponse;
+import io.netty.channel.MultithreadEventLoopGroup;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the executors of SharedResources, which make up the messaging, failure detection and protocol lanes.
+ */
+public class SharedResourcesTest {
+    private static final int K = 10;
+    private static final int H = 9;
+    private static final int L = 4;
+    private final Endpoint myAddr = Utils.hostFromParts("127.0.0.1", 1234);
+    private final Settings settings = new Settings();
+    private final List<SharedResources> resources = new ArrayList<>();
+    private final List<MembershipService> services = new ArrayList<>();
+
+    @After
+    public void cleanup() {
+        services.forEach(MembershipService::shutdown);
+        resources.forEach(SharedResources::shutdown);
+    }
+
+    /**
+     * The messaging and failure detection lanes have as many threads as configured, and the protocol lane
+     * has a single thread.
+     */
+    @Test
+    public void lanesHaveConfiguredSizes() throws InterruptedException {
+        settings.setServerExecutorThreads(4);
+        settings.setClientExecutorThreads(3);
+        settings.setBackgroundExecutorThreads(2);
+        settings.setEventLoopThreads(2);
+        settings.setFailureDetectorThreads(5);
+        final SharedResources shared = createResources();
+        assertPoolSize(4, shared.getServerExecutor());
+        assertPoolSize(3, shared.getClientChannelExecutor());
+        assertPoolSize(2, shared.getBackgroundExecutor());
+        assertEquals(2, ((MultithreadEventLoopGroup) shared.getEventLoopGroup()).executorCount());
+        assertEquals(5, ((ScheduledThreadPoolExecutor) shared.getFailureDetectorExecutor()).getCorePoolSize());
+        // The protocol executor runs tasks one at a time, in order
+        final BlockingQueue<Integer> order = new LinkedBlockingQueue<>();
+        for (int i = 0; i < 100; i++) {
+            final int task = i;
+            shared.getProtocolExecutor().execute(() -> order.add(task));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), order.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * The edge failure detectors of MembershipService run on the failure detection lane.
+     */
+    @Test(timeout = 10000)
+    public void failureDetectorsRunOnFailureDetectionLane() throws InterruptedException {
+        settings.setFailureDetectorThreads(2);
+        settings.setFailureDetectorIntervalInMs(10);
+        final SharedResources shared = createResources();
+        final MembershipView view = new MembershipView(K);
+        view.ringAdd(myAddr, Utils.nodeIdFromUUID(UUID.randomUUID()));
+        for (int i = 1; i <= 3; i++) {
+            view.ringAdd(Utils.hostFromParts("127.0.0.1", 1234 + i), Utils.nodeIdFromUUID(UUID.randomUUID()));
+        }
+        final BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+        final IEdgeFailureDetectorFactory fdFactory =
+                (subject, notifier) -> () -> threads.add(Thread.currentThread().getName());
+        services.add(new MembershipService(myAddr, new MultiNodeCutDetector(K, H, L), view, shared, settings,
+                                           new NoOpClient(), fdFactory));
+        for (int i = 0; i < 10; i++) {
+            final String thread = threads.poll(5, TimeUnit.SECONDS);
+            assertNotNull(thread);
+            assertTrue(thread, thread.startsWith("fd-127.0.0.1:1234-"));
+        }
+    }
+
+    private SharedResources createResources() {
+        final SharedResources shared = new SharedResources(myAddr, settings);
+        resources.add(shared);
+        return shared;
+    }
+
+    private static void assertPoolSize(final int threads, final ExecutorService executor) {
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        assertEquals(threads, pool.getCorePoolSize());
+        assertEquals(threads, pool.getMaximumPoolSize());
+    }
+
+    private static class NoOpClient implements IMessagingClient {
+        @Override
+        public ListenableFuture<RapidResponse> sendMessage(final Endpoint remote, final RapidRequest msg) {
+            return Futures.immediateFuture(null);
+        }
+
+        @Override
+        public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg) {
+            return Futures.immediateFuture(null);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.vrg.rapid.messaging.impl.GrpcClient;
 import com.vrg.rapid.pb.RapidRequest;
 import com.vrg.rapid.pb.RapidResponse;
 
+import javax.annotation.Nullable;
 import java.util.List;
 
 /**
@@ -14,11 +15,18 @@ import java.util.List;
  */
 class TestingGrpcClient extends GrpcClient {
     private final List<ClientInterceptors.Delayer> interceptors;
+    @Nullable private final RequestRecorder recorder;
 
     TestingGrpcClient(final Endpoint address, final ISettings settings,
                       final List<ClientInterceptors.Delayer> interceptors) {
+        this(address, settings, interceptors, null);
+    }
+
+    TestingGrpcClient(final Endpoint address, final ISettings settings,
+                      final List<ClientInterceptors.Delayer> interceptors, @Nullable final RequestRecorder recorder) {
         super(address, settings);
         this.interceptors = interceptors;
+        this.recorder = recorder;
     }
 
     /**
@@ -31,6 +39,20 @@ class TestingGrpcClient extends GrpcClient {
                 return Futures.immediateFuture(RapidResponse.getDefaultInstance());
             }
         }
+        if (recorder != null) {
+            recorder.recordSent(msg);
+        }
         return super.sendMessage(remote, msg);
     }
+
+    /**
+     * From IMessagingClient
+     */
+    @Override
+    public ListenableFuture<RapidResponse> sendMessageBestEffort(final Endpoint remote, final RapidRequest msg) {
+        if (recorder != null) {
+            recorder.recordSent(msg);
+        }
+        return super.sendMessageBestEffort(remote, msg);
+    }
 }
@@ -4,20 +4,40 @@ import com.vrg.rapid.pb.Endpoint;
 import com.vrg.rapid.messaging.impl.GrpcServer;
 import com.vrg.rapid.pb.RapidRequest;
 import com.vrg.rapid.pb.RapidResponse;
+import com.vrg.rapid.pb.StreamRequest;
+import com.vrg.rapid.pb.StreamResponse;
+import io.grpc.Context;
 import io.grpc.stub.StreamObserver;
 
+import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * A wrapper around GrpcServer that is used for testing.
  */
 public class TestingGrpcServer extends GrpcServer {
+    private final SharedResources resources;
     private final List<ServerDropInterceptors.FirstN> interceptors;
+    @Nullable private final RequestRecorder recorder;
 
     TestingGrpcServer(final Endpoint address, final List<ServerDropInterceptors.FirstN> interceptors,
                       final boolean useInProcessTransport) {
-        super(address, new SharedResources(address), useInProcessTransport);
+        this(address, new SharedResources(address), interceptors, null, useInProcessTransport);
+    }
+
+    TestingGrpcServer(final Endpoint address, final Settings settings, final RequestRecorder recorder) {
+        this(address, new SharedResources(address, settings), Collections.emptyList(), recorder,
+             settings.getUseInProcessTransport());
+    }
+
+    private TestingGrpcServer(final Endpoint address, final SharedResources resources,
+                              final List<ServerDropInterceptors.FirstN> interceptors,
+                              @Nullable final RequestRecorder recorder, final boolean useInProcessTransport) {
+        super(address, resources, useInProcessTransport);
+        this.resources = resources;
         this.interceptors = interceptors;
+        this.recorder = recorder;
     }
 
     /**
@@ -31,6 +51,29 @@ public class TestingGrpcServer extends GrpcServer {
                 return;
             }
         }
+        if (recorder != null) {
+            recorder.recordUnaryCall(rapidRequest, Context.current().getDeadline());
+        }
         super.sendRequest(rapidRequest, responseObserver);
     }
+
+    /**
+     * Defined in rapid.proto.
+     */
+    @Override
+    public StreamObserver<StreamRequest> sendRequestStream(final StreamObserver<StreamResponse> responseObserver) {
+        if (recorder != null) {
+            recorder.recordStreamCall();
+        }
+        return super.sendRequestStream(responseObserver);
+    }
+
+    /**
+     * Also shuts down the resources that were created for this server.
+     */
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        resources.shutdown();
+    }
 }
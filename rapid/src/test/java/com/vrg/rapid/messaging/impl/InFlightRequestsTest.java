@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid.messaging.impl;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.vrg.rapid.pb.ProbeResponse;
+import com.vrg.rapid.pb.RapidResponse;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the table of in-flight requests, with deadlines that only expire when a test fires them.
+ */
+public class InFlightRequestsTest {
+    private static final RapidResponse RESPONSE = RapidResponse.newBuilder()
+                                                               .setProbeResponse(ProbeResponse.getDefaultInstance())
+                                                               .build();
+    private final ManualTimer timer = new ManualTimer();
+
+    /**
+     * Request numbers keep wrapping around a small table while an early request is still outstanding, which
+     * the later requests have to probe past.
+     */
+    @Test
+    public void wraparoundWithOutstandingRequest() throws InterruptedException, ExecutionException {
+        final InFlightRequests requests = new InFlightRequests(4, timer);
+        final SettableFuture<RapidResponse> outstanding = requests.register(0, 1, TimeUnit.SECONDS);
+        for (long requestNo = 1; requestNo < 100; requestNo++) {
+            final SettableFuture<RapidResponse> future = requests.register(requestNo, 1, TimeUnit.SECONDS);
+            assertTrue(requests.complete(requestNo, RESPONSE));
+            assertEquals(RESPONSE, future.get());
+            assertFalse(requests.complete(requestNo, RESPONSE));
+        }
+        assertFalse(outstanding.isDone());
+        assertTrue(requests.complete(0, RESPONSE));
+        assertEquals(RESPONSE, outstanding.get());
+    }
+
+    /**
+     * Requests that find no free slot go to the overflow map, and are completed from there.
+     */
+    @Test
+    public void overflowInsertionAndRemoval() throws InterruptedException, ExecutionException {
+        final InFlightRequests requests = new InFlightRequests(2, timer);
+        final List<SettableFuture<RapidResponse>> futures = new ArrayList<>();
+        for (long requestNo = 0; requestNo < 6; requestNo++) {
+            futures.add(requests.register(requestNo, 1, TimeUnit.SECONDS));
+        }
+        // Complete the overflowed requests first, then those in the table
+        for (int requestNo = 5; requestNo >= 0; requestNo--) {
+            assertTrue(requests.complete(requestNo, RESPONSE));
+            assertFalse(requests.complete(requestNo, RESPONSE));
+            assertEquals(RESPONSE, futures.get(requestNo).get());
+        }
+        assertTrue(timer.pending().stream().allMatch(Timeout::isCancelled));
+    }
+
+    /**
+     * A request that timed out cannot be completed anymore, and a completed request cannot time out.
+     */
+    @Test
+    public void completionAndTimeout() throws Exception {
+        final InFlightRequests requests = new InFlightRequests(4, timer);
+        final SettableFuture<RapidResponse> timedOut = requests.register(0, 1, TimeUnit.SECONDS);
+        final ManualTimeout deadline = timer.last();
+        deadline.fire();
+        assertFalse(requests.complete(0, RESPONSE));
+        assertTimedOut(timedOut);
+
+        final SettableFuture<RapidResponse> completed = requests.register(1, 1, TimeUnit.SECONDS);
+        final ManualTimeout completedDeadline = timer.last();
+        assertTrue(requests.complete(1, RESPONSE));
+        assertTrue(completedDeadline.isCancelled());
+        completedDeadline.fire();
+        assertEquals(RESPONSE, completed.get());
+    }
+
+    /**
+     * When a response and the deadline of a request race, exactly one of them completes the request.
+     */
+    @Test
+    public void completionRacesTimeout() throws InterruptedException, ExecutionException {
+        final InFlightRequests requests = new InFlightRequests(16, timer);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (long requestNo = 0; requestNo < 2000; requestNo++) {
+                final long no = requestNo;
+                final SettableFuture<RapidResponse> future = requests.register(no, 1, TimeUnit.SECONDS);
+                final ManualTimeout deadline = timer.last();
+                final CountDownLatch start = new CountDownLatch(1);
+                final Future<Boolean> completion = executor.submit(() -> {
+                    start.await();
+                    return requests.complete(no, RESPONSE);
+                });
+                final Future<?> expiry = executor.submit(() -> {
+                    start.await();
+                    deadline.fire();
+                    return null;
+                });
+                start.countDown();
+                expiry.get();
+                if (completion.get()) {
+                    assertEquals(RESPONSE, future.get());
+                }
+                else {
+                    assertTimedOut(future);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Failing all requests reaches the requests in the table as well as those in the overflow map.
+     */
+    @Test
+    public void failAllCoversTableAndOverflow() throws InterruptedException {
+        final InFlightRequests requests = new InFlightRequests(2, timer);
+        final List<SettableFuture<RapidResponse>> futures = new ArrayList<>();
+        for (long requestNo = 0; requestNo < 6; requestNo++) {
+            futures.add(requests.register(requestNo, 1, TimeUnit.SECONDS));
+        }
+        final IOException cause = new IOException("Connection lost");
+        requests.failAll(cause);
+        for (int requestNo = 0; requestNo < 6; requestNo++) {
+            try {
+                futures.get(requestNo).get();
+                fail();
+            } catch (final ExecutionException e) {
+                assertEquals(cause, e.getCause());
+            }
+            assertFalse(requests.complete(requestNo, RESPONSE));
+        }
+        assertTrue(timer.pending().stream().allMatch(Timeout::isCancelled));
+
+        // The table is usable again afterwards
+        final SettableFuture<RapidResponse> future = requests.register(6, 1, TimeUnit.SECONDS);
+        assertTrue(requests.complete(6, RESPONSE));
+        assertTrue(future.isDone());
+    }
+
+    /**
+     * Failing a single request leaves the other outstanding requests untouched.
+     */
+    @Test
+    public void failSingleRequest() throws InterruptedException, ExecutionException {
+        final InFlightRequests requests = new InFlightRequests(4, timer);
+        final SettableFuture<RapidResponse> failed = requests.register(0, 1, TimeUnit.SECONDS);
+        final ManualTimeout failedDeadline = timer.last();
+        final SettableFuture<RapidResponse> other = requests.register(1, 1, TimeUnit.SECONDS);
+        final IOException cause = new IOException("Request failed at the peer");
+        assertTrue(requests.fail(0, cause));
+        assertTrue(failedDeadline.isCancelled());
+        assertFalse(requests.fail(0, cause));
+        assertFalse(requests.complete(0, RESPONSE));
+        try {
+            failed.get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertEquals(cause, e.getCause());
+        }
+        assertFalse(other.isDone());
+        assertTrue(requests.complete(1, RESPONSE));
+        assertEquals(RESPONSE, other.get());
+    }
+
+    private static void assertTimedOut(final SettableFuture<RapidResponse> future) throws InterruptedException {
+        try {
+            future.get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    /**
+     * A timer whose timeouts only expire when they are fired.
+     */
+    private static final class ManualTimer implements Timer {
+        private final List<ManualTimeout> timeouts = new ArrayList<>();
+
+        @Override
+        public synchronized Timeout newTimeout(final TimerTask task, final long delay, final TimeUnit unit) {
+            final ManualTimeout timeout = new ManualTimeout(this, task);
+            timeouts.add(timeout);
+            return timeout;
+        }
+
+        @Override
+        public Set<Timeout> stop() {
+            throw new UnsupportedOperationException();
+        }
+
+        synchronized ManualTimeout last() {
+            return timeouts.get(timeouts.size() - 1);
+        }
+
+        synchronized List<ManualTimeout> pending() {
+            return new ArrayList<>(timeouts);
+        }
+    }
+
+    private static final class ManualTimeout implements Timeout {
+        private final Timer timer;
+        private final TimerTask task;
+        private volatile boolean cancelled = false;
+        private volatile boolean expired = false;
+
+        ManualTimeout(final Timer timer, final TimerTask task) {
+            this.timer = timer;
+            this.task = task;
+        }
+
+        /**
+         * Runs the task like the timer would at the deadline, even if the timeout was cancelled in the meantime.
+         */
+        void fire() throws Exception {
+            expired = true;
+            task.run(this);
+        }
+
+        @Override
+        public Timer timer() {
+            return timer;
+        }
+
+        @Override
+        public TimerTask task() {
+            return task;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean cancel() {
+            cancelled = true;
+            return !expired;
+        }
+    }
+}
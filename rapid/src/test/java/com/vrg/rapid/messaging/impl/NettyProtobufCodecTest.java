@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid.messaging.impl;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.vrg.rapid.pb.Endpoint;
+import com.vrg.rapid.pb.ProbeMessage;
+import com.vrg.rapid.pb.RapidRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.protobuf.ProtobufVarint32FrameDecoder;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips of frames through the encoder and decoder of NettyProtobufCodec, with inbound frames in heap and
+ * direct buffers.
+ */
+public class NettyProtobufCodecTest {
+    // Request numbers whose varints take one, two, three and ten bytes
+    private static final long[] REQUEST_NUMBERS = {0, 1, 127, 128, 300, 16384, Long.MAX_VALUE, -1};
+    // Payload sizes for which the length prefix takes one, two and three bytes
+    private static final int[] PAYLOAD_SIZES = {0, 100, 127, 128, 1000, 20000};
+
+    /**
+     * A frame is written to a heap buffer, prefixed with the length of the request number and the message.
+     */
+    @Test
+    public void framesAreLengthPrefixed() throws IOException {
+        for (final long requestNo : REQUEST_NUMBERS) {
+            for (final int payloadSize : PAYLOAD_SIZES) {
+                final RapidRequest request = createRequest(payloadSize);
+                final ByteBuf frame = encode(requestNo, request);
+                try {
+                    assertTrue(frame.hasArray());
+                    final CodedInputStream input = CodedInputStream.newInstance(ByteBufUtil.getBytes(frame));
+                    final int bodySize = input.readUInt32();
+                    assertEquals(frame.readableBytes() - input.getTotalBytesRead(), bodySize);
+                    assertEquals(requestNo, input.readUInt64());
+                    assertEquals(request, RapidRequest.parser().parseFrom(input));
+                    assertTrue(input.isAtEnd());
+                } finally {
+                    frame.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Frames read into heap buffers are decoded from their backing array.
+     */
+    @Test
+    public void roundTripWithHeapBuffers() {
+        roundTrip(frame -> Unpooled.copiedBuffer(frame));
+    }
+
+    /**
+     * Frames read into direct buffers are decoded as well, whether or not protobuf can read them in place.
+     */
+    @Test
+    public void roundTripWithDirectBuffers() {
+        roundTrip(frame -> Unpooled.directBuffer(frame.readableBytes()).writeBytes(frame));
+    }
+
+    /**
+     * Frames that arrive in several reads and several frames that arrive in a single read are split apart by the
+     * frame decoder before they are decoded.
+     */
+    @Test
+    public void framesSplitAcrossReads() {
+        final EmbeddedChannel channel = createDecoderChannel();
+        final ByteBuf first = encode(300, createRequest(20000));
+        final ByteBuf second = encode(Long.MAX_VALUE, createRequest(100));
+        final int firstSize = first.readableBytes();
+        final ByteBuf stream = Unpooled.directBuffer().writeBytes(first).writeBytes(second);
+        // Cut through the length prefix of the first frame, then through the body of the second frame
+        final int[] cuts = {1, firstSize + 50, stream.readableBytes()};
+        int start = 0;
+        for (final int cut : cuts) {
+            channel.writeInbound(stream.retainedSlice(start, cut - start));
+            start = cut;
+        }
+        stream.release();
+        first.release();
+        second.release();
+        assertDecoded(channel, 300, createRequest(20000));
+        assertDecoded(channel, Long.MAX_VALUE, createRequest(100));
+        assertFalse(channel.finish());
+    }
+
+    private void roundTrip(final Function<ByteBuf, ByteBuf> inbound) {
+        final EmbeddedChannel channel = createDecoderChannel();
+        for (final long requestNo : REQUEST_NUMBERS) {
+            for (final int payloadSize : PAYLOAD_SIZES) {
+                final ByteBuf frame = encode(requestNo, createRequest(payloadSize));
+                channel.writeInbound(inbound.apply(frame));
+                frame.release();
+                assertDecoded(channel, requestNo, createRequest(payloadSize));
+            }
+        }
+        assertFalse(channel.finish());
+    }
+
+    private static void assertDecoded(final EmbeddedChannel channel, final long requestNo,
+                                      final RapidRequest request) {
+        final NettyProtobufCodec.Frame decoded = channel.readInbound();
+        assertEquals(requestNo, decoded.requestNo);
+        assertEquals(request, decoded.message);
+    }
+
+    private static ByteBuf encode(final long requestNo, final RapidRequest request) {
+        final EmbeddedChannel channel = new EmbeddedChannel(new NettyProtobufCodec.Encoder());
+        assertTrue(channel.writeOutbound(new NettyProtobufCodec.Frame(requestNo, request)));
+        final ByteBuf frame = channel.readOutbound();
+        assertFalse(channel.finish());
+        return frame;
+    }
+
+    private static EmbeddedChannel createDecoderChannel() {
+        return new EmbeddedChannel(new ProtobufVarint32FrameDecoder(),
+                                   new NettyProtobufCodec.Decoder(RapidRequest.parser()));
+    }
+
+    private static RapidRequest createRequest(final int payloadSize) {
+        final byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 0x5a);
+        return RapidRequest.newBuilder()
+                           .setProbeMessage(ProbeMessage.newBuilder()
+                                                        .setSender(Endpoint.newBuilder()
+                                                                           .setHostname("127.0.0.1")
+                                                                           .setPort(1234))
+                                                        .addPayload(ByteString.copyFrom(payload)))
+                           .build();
+    }
+}
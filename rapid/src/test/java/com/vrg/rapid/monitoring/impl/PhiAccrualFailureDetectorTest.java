@@ -0,0 +1,144 @@
+/*
+ * Copyright © 2016 - 2017 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an “AS IS” BASIS, without warranties or conditions of any kind,
+ * EITHER EXPRESS OR IMPLIED. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.vrg.rapid.monitoring.impl;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the arrival window of the phi-accrual failure detector, with heartbeat times given explicitly.
+ */
+public class PhiAccrualFailureDetectorTest {
+    private static final double THRESHOLD = PhiAccrualFailureDetector.DEFAULT_PHI_THRESHOLD;
+    private static final double DELTA = 1e-9;
+
+    /**
+     * A new window is seeded around the expected interval, so that a subject that never answers is suspected
+     * within a few intervals of the window's creation.
+     */
+    @Test
+    public void seededWindowSuspectsSilentSubject() {
+        // Seeded with 750ms and 1250ms, so the mean is 1000ms and the standard deviation 250ms
+        final PhiAccrualFailureDetector.ArrivalWindow window = createWindow(10, 1000, 100, 0, 0);
+        assertTrue(window.phi(nanos(500)) < 1.0);
+        assertEquals(-Math.log10(0.5), window.phi(nanos(1000)), 0.01);
+        assertTrue(window.phi(nanos(1000 + 4 * 250)) < THRESHOLD);
+        assertTrue(window.phi(nanos(1000 + 6 * 250)) >= THRESHOLD);
+    }
+
+    /**
+     * The time until the first heartbeat is a round-trip time rather than an interval, so it resets the
+     * elapsed time without changing the distribution.
+     */
+    @Test
+    public void firstHeartbeatIsNotAnInterval() {
+        final PhiAccrualFailureDetector.ArrivalWindow window = createWindow(10, 1000, 100, 0, 0);
+        final PhiAccrualFailureDetector.ArrivalWindow reference = createWindow(10, 1000, 100, 0, 0);
+        window.heartbeat(nanos(5000));
+        for (final long elapsedMs : new long[]{0, 500, 1500, 2500}) {
+            assertEquals(reference.phi(nanos(elapsedMs)), window.phi(nanos(5000 + elapsedMs)), DELTA);
+        }
+    }
+
+    /**
+     * Once the window is full, new intervals evict the oldest ones, including the seeded intervals.
+     */
+    @Test
+    public void oldIntervalsAreEvicted() {
+        final PhiAccrualFailureDetector.ArrivalWindow window = createWindow(2, 1000, 100, 0, 0);
+        window.heartbeat(nanos(10));
+        window.heartbeat(nanos(110));
+        window.heartbeat(nanos(210));
+
+        // Seeded with 75ms and 125ms, which has the same mean and, with the minimum standard deviation of 100ms,
+        // the same standard deviation as two intervals of 100ms
+        final PhiAccrualFailureDetector.ArrivalWindow reference = createWindow(2, 100, 100, 0, 0);
+        for (final long elapsedMs : new long[]{0, 100, 300, 600}) {
+            assertEquals(reference.phi(nanos(elapsedMs)), window.phi(nanos(210 + elapsedMs)), DELTA);
+        }
+    }
+
+    /**
+     * Phi grows while the subject stays silent and crosses the threshold a few standard deviations past the
+     * mean interval.
+     */
+    @Test
+    public void phiCrossesThresholdWhileSilent() {
+        final PhiAccrualFailureDetector.ArrivalWindow window = createWindow(10, 100, 10, 0, 0);
+        final long lastHeartbeatMs = heartbeatRegularly(window, 100, 20);
+        double previous = 0;
+        boolean crossed = false;
+        for (long elapsedMs = 0; elapsedMs <= 200; elapsedMs += 5) {
+            final double phi = window.phi(nanos(lastHeartbeatMs + elapsedMs));
+            assertTrue(phi >= previous);
+            if (phi >= THRESHOLD) {
+                assertTrue(elapsedMs > 100);
+                crossed = true;
+            }
+            previous = phi;
+        }
+        assertTrue(crossed);
+    }
+
+    /**
+     * With regular heartbeats, a single late heartbeat pushes phi past the threshold unless an acceptable
+     * pause is added to the mean interval.
+     */
+    @Test
+    public void acceptablePauseToleratesLateHeartbeat() {
+        final PhiAccrualFailureDetector.ArrivalWindow withoutPause = createWindow(10, 100, 10, 0, 0);
+        final PhiAccrualFailureDetector.ArrivalWindow withPause = createWindow(10, 100, 10, 1000, 0);
+        final long lastHeartbeatMs = heartbeatRegularly(withoutPause, 100, 20);
+        heartbeatRegularly(withPause, 100, 20);
+
+        // One probe interval late
+        assertTrue(withoutPause.phi(nanos(lastHeartbeatMs + 200)) >= THRESHOLD);
+        assertTrue(withPause.phi(nanos(lastHeartbeatMs + 200)) < 1.0);
+
+        // A subject that stays silent is still suspected once the pause has passed
+        assertEquals(-Math.log10(0.5), withPause.phi(nanos(lastHeartbeatMs + 1100)), 0.01);
+        assertTrue(withPause.phi(nanos(lastHeartbeatMs + 1100 + 6 * 10)) >= THRESHOLD);
+    }
+
+    private static PhiAccrualFailureDetector.ArrivalWindow createWindow(final int size,
+                                                                        final long expectedIntervalMs,
+                                                                        final long minStdDeviationMs,
+                                                                        final long acceptablePauseMs,
+                                                                        final long nowMs) {
+        return new PhiAccrualFailureDetector.ArrivalWindow(size, expectedIntervalMs, minStdDeviationMs,
+                                                           acceptablePauseMs, nanos(nowMs));
+    }
+
+    /**
+     * Records {@code count} heartbeats {@code intervalMs} apart, starting one interval after the creation of
+     * the window, and returns the time of the last one.
+     */
+    private static long heartbeatRegularly(final PhiAccrualFailureDetector.ArrivalWindow window,
+                                           final long intervalMs, final int count) {
+        long nowMs = 0;
+        for (int i = 0; i < count; i++) {
+            nowMs += intervalMs;
+            window.heartbeat(nanos(nowMs));
+        }
+        return nowMs;
+    }
+
+    private static long nanos(final long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+}